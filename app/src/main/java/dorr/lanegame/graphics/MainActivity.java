@@ -2,13 +2,26 @@ package dorr.lanegame.graphics;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.util.Log;
 
+import dorr.lanegame.BuildConfig;
 import dorr.lanegame.R;
 import dorr.lanegame.core.Agent;
 import dorr.lanegame.core.Game;
 import dorr.lanegame.core.Simulation;
+import dorr.lanegame.core.Utility;
 
 public class MainActivity extends Activity {
+    static {
+        Utility.setLogger(new Utility.Logger() {
+            @Override
+            public void debug(String message) {
+                Log.d("LaneGame", message);
+            }
+        });
+        Utility.setChecksEnabled(BuildConfig.DEBUG);
+    }
+
     private Simulation mSimulation;
 
     @Override
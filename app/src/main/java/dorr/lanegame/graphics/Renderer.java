@@ -3,11 +3,12 @@ package dorr.lanegame.graphics;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 
 import java.nio.FloatBuffer;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -76,6 +77,9 @@ public class Renderer implements GLSurfaceView.Renderer {
             int yposition;
             boolean parity;
             public Particle(int offset, int npoints, int xposition, int yposition, boolean parity) {
+                reset(offset, npoints, xposition, yposition, parity);
+            }
+            void reset(int offset, int npoints, int xposition, int yposition, boolean parity) {
                 this.offset = offset;
                 this.npoints = npoints;
                 this.xposition = xposition;
@@ -92,7 +96,6 @@ public class Renderer implements GLSurfaceView.Renderer {
         private static final float POINT_SIZE = 4.0f; // pixels
 
         // Logical
-        private final Game mGame;
         private final Game.Owner mOwner;
 
         // Drawing
@@ -107,13 +110,19 @@ public class Renderer implements GLSurfaceView.Renderer {
         // State
         private boolean mParity = false;
         private float mLastGameTime;
-        private final Map<Integer, Particle> mParticles = new HashMap<>();
+        private float mGameTime;
+        // Live particles by unit id, and a free list of dead particles to reuse (so that armies
+        // growing & dying doesn't churn the heap)
+        private final SparseArray<Particle> mParticles = new SparseArray<>();
+        private final List<Particle> mFreeParticles = new ArrayList<>();
+        // Unit positions in the previous tick's state, by unit id
+        private final SparseIntArray mPreviousPositions = new SparseIntArray();
         private final Utility.FastRandom mRandom = new Utility.FastRandom();
 
         Particles(Game game, Game.Owner owner, int laneWidth, float[] color) {
-            mGame = game;
             mOwner = owner;
             mLastGameTime = game.time;
+            mGameTime = game.time;
 
             mLaneWidth = laneWidth;
             mMargin = (int) (MARGIN * laneWidth);
@@ -149,26 +158,34 @@ public class Renderer implements GLSurfaceView.Renderer {
         }
         private float randomDelta() {
             return (2 * mRandom.nextFloat() - 1) *
-                    (mLastGameTime - mGame.time) *
+                    (mLastGameTime - mGameTime) *
                     RANDOM_DELTA_SCALE * mLaneWidth;
         }
-        private int updateParticle(Game.Unit unit, int lane, int offset) {
+        private int updateParticle(Game.Unit unit, int lane, int offset, float alpha) {
             Particle particle = mParticles.get(unit.id);
             if (particle == null) {
-                particle = new Particle(0, 0, lane * mLaneWidth, unit.position, false);
+                if (mFreeParticles.isEmpty()) {
+                    particle = new Particle(0, 0, lane * mLaneWidth, unit.position, false);
+                } else {
+                    particle = mFreeParticles.remove(mFreeParticles.size() - 1);
+                    particle.reset(0, 0, lane * mLaneWidth, unit.position, false);
+                }
                 mParticles.put(unit.id, particle);
             }
+            // Blend between the last two ticks (units that are new this tick start where they are)
+            int previous = mPreviousPositions.get(unit.id, unit.position);
+            int yposition = previous + Math.round(alpha * (unit.position - previous));
 
             // TODO: MAX_VERTICES overflow handling
             int nPoints = countPoints(unit);
             int copyPoints = Math.min(nPoints, particle.npoints);
             int dx = (lane * mLaneWidth) - particle.xposition;
-            int dy = unit.position - particle.yposition;
+            int dy = yposition - particle.yposition;
             int cursor = particle.offset;
             particle.offset = offset;
             particle.npoints = nPoints;
             particle.xposition = lane * mLaneWidth;
-            particle.yposition = unit.position;
+            particle.yposition = yposition;
             particle.parity = mParity;
             final int xmin = particle.xposition + mMargin;
             final int xmax = particle.xposition + mLaneWidth - mMargin;
@@ -189,13 +206,26 @@ public class Renderer implements GLSurfaceView.Renderer {
             }
             return offset;
         }
-        void draw(float[] projection) {
+        void draw(float[] projection, Game game, Game previous, float alpha) {
             // 1. update vertex buffer
+            mGameTime = game.time;
+            mPreviousPositions.clear();
+            for (int laneIndex = 0; laneIndex < previous.lanes.size(); ++laneIndex) {
+                List<Game.Unit> units = previous.lanes.get(laneIndex).units;
+                for (int i = 0; i < units.size(); ++i) {
+                    Game.Unit unit = units.get(i);
+                    if (unit.owner == mOwner) {
+                        mPreviousPositions.put(unit.id, unit.position);
+                    }
+                }
+            }
             int offset = 0;
-            for (int laneIndex = 0; laneIndex < mGame.lanes.size(); ++laneIndex) {
-                for (Game.Unit unit : mGame.lanes.get(laneIndex).units) {
+            for (int laneIndex = 0; laneIndex < game.lanes.size(); ++laneIndex) {
+                List<Game.Unit> units = game.lanes.get(laneIndex).units;
+                for (int i = 0; i < units.size(); ++i) {
+                    Game.Unit unit = units.get(i);
                     if (unit.owner == mOwner) {
-                        offset = updateParticle(unit, laneIndex, offset);
+                        offset = updateParticle(unit, laneIndex, offset, alpha);
                     }
                 }
             }
@@ -218,19 +248,19 @@ public class Renderer implements GLSurfaceView.Renderer {
             float[] tmp = mOldData;
             mOldData = mData;
             mData = tmp;
-            Iterator<Particle> values = mParticles.values().iterator();
-            while (values.hasNext()) {
-                if (values.next().parity != mParity) {
-                    values.remove();
+            for (int i = mParticles.size() - 1; 0 <= i; --i) {
+                Particle particle = mParticles.valueAt(i);
+                if (particle.parity != mParity) {
+                    mParticles.removeAt(i);
+                    mFreeParticles.add(particle);
                 }
             }
             mParity = !mParity;
-            mLastGameTime = mGame.time;
+            mLastGameTime = mGameTime;
         }
     }
 
     private Simulation mSimulation;
-    private Game mGame;
     private float[] mProjection;
     private Background mBackground;
     private Particles mFriendlyParticles, mEnemyParticles;
@@ -260,7 +290,7 @@ public class Renderer implements GLSurfaceView.Renderer {
         debug("onSurfaceChanged()");
         GLES20.glViewport(0, 0, width, height);
 
-        mGame = mSimulation.getState(null);
+        Game game = mSimulation.getState();
         Game.GameSpec spec = mSimulation.spec();
         int laneWidth = getLaneWidth(spec);
         int gameWidth = laneWidth * spec.lanes;
@@ -279,16 +309,19 @@ public class Renderer implements GLSurfaceView.Renderer {
                 0);
 
         mBackground = new Background(gameWidth, gameHeight);
-        mFriendlyParticles = new Particles(mGame, Game.Owner.FRIENDLY, laneWidth, new float[] { 0, 0, 1, 1 });
-        mEnemyParticles = new Particles(mGame, Game.Owner.ENEMY, laneWidth, new float[] { 1, 0, 0, 1 });
+        mFriendlyParticles = new Particles(game, Game.Owner.FRIENDLY, laneWidth, new float[] { 0, 0, 1, 1 });
+        mEnemyParticles = new Particles(game, Game.Owner.ENEMY, laneWidth, new float[] { 1, 0, 0, 1 });
     }
 
     @Override
     public void onDrawFrame(GL10 gl10) {
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
-        mSimulation.getState(mGame);
+        // The latest snapshot (never blocks the simulation thread), and the tick before it
+        Game game = mSimulation.getState();
+        Game previous = mSimulation.getPreviousState();
+        float alpha = mSimulation.alpha();
         mBackground.draw(mProjection);
-        mFriendlyParticles.draw(mProjection);
-        mEnemyParticles.draw(mProjection);
+        mFriendlyParticles.draw(mProjection, game, previous, alpha);
+        mEnemyParticles.draw(mProjection, game, previous, alpha);
     }
 }
@@ -0,0 +1,72 @@
+package dorr.lanegame.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running mid-game states forward "ticks" ticks without placements (e.g. between agent decisions),
+ * in states per second: "tick" calls tickMicros for every tick, and "advance" calls advanceUntil.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AdvanceBenchmark {
+    private static final int GAMES = 64;
+    private static final int DT_MICROS = 10000;
+
+    /**
+     * Ticks to run from each state.
+     */
+    @Param({"10", "100", "1000"})
+    public int ticks;
+
+    private Game[] mInitial;
+    private Game mGame;
+
+    @Setup
+    public void setup() {
+        Game.GameSpec spec = Game.EXAMPLE;
+        mInitial = new Game[GAMES];
+        for (int g = 0; g < GAMES; ++g) {
+            Game game = new Game(spec);
+            Agent friendly = new Agent.RandomAgent(spec, 2 * g);
+            Agent enemy = new Agent.RandomAgent(spec, 2 * g + 1);
+            for (int t = 0; t < 50 * g; ++t) {
+                game.tickMicros(DT_MICROS, friendly.place(game), enemy.place(game));
+            }
+            mInitial[g] = game;
+        }
+        mGame = new Game(spec);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public Game tick() {
+        for (int g = 0; g < GAMES; ++g) {
+            mGame.copyFrom(mInitial[g]);
+            for (int t = 0; t < ticks; ++t) {
+                mGame.tickMicros(DT_MICROS, null, null);
+            }
+        }
+        return mGame;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public Game advance() {
+        for (int g = 0; g < GAMES; ++g) {
+            mGame.copyFrom(mInitial[g]);
+            mGame.advanceUntil(mInitial[g].timeMicros + (long) ticks * DT_MICROS, DT_MICROS);
+        }
+        return mGame;
+    }
+}
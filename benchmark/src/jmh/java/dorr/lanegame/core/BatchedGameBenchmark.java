@@ -0,0 +1,106 @@
+package dorr.lanegame.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Self-play style stepping of many small matches, in game-ticks per second: "games" steps GAMES
+ * separate Game objects, and "batched" steps the same games (with the same random placements &
+ * starting states) as BatchedGames of "batch" games each.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BatchedGameBenchmark {
+    private static final int GAMES = 256;
+    private static final int TICKS = 50;
+    private static final int DT_MICROS = 10000;
+
+    @Param({"16", "256"})
+    public int batch;
+
+    private Game[] mInitial;
+    private Game[] mGames;
+    private BatchedGame[] mBatches;
+    private int[] mDt;
+    // [batch][tick][game in batch], packed (or BatchedGame.NONE)
+    private int[][][] mFriendly;
+    private int[][][] mEnemy;
+    private final Game.Placement[][] mFriendlyPlacements = new Game.Placement[TICKS][GAMES];
+    private final Game.Placement[][] mEnemyPlacements = new Game.Placement[TICKS][GAMES];
+
+    @Setup
+    public void setup() {
+        Game.GameSpec spec = Game.EXAMPLE;
+        mInitial = new Game[GAMES];
+        mGames = new Game[GAMES];
+        mBatches = new BatchedGame[GAMES / batch];
+        for (int b = 0; b < mBatches.length; ++b) {
+            mBatches[b] = new BatchedGame(spec, batch);
+        }
+        mDt = new int[batch];
+        Arrays.fill(mDt, DT_MICROS);
+        mFriendly = new int[GAMES / batch][TICKS][batch];
+        mEnemy = new int[GAMES / batch][TICKS][batch];
+        for (int g = 0; g < GAMES; ++g) {
+            // Mid-game positions
+            Game game = new Game(spec);
+            Agent friendly = new Agent.RandomAgent(spec, 2 * g);
+            Agent enemy = new Agent.RandomAgent(spec, 2 * g + 1);
+            for (int t = 0; t < 500; ++t) {
+                game.tickMicros(DT_MICROS, friendly.place(game), enemy.place(game));
+            }
+            mInitial[g] = game;
+            mGames[g] = new Game(spec);
+            for (int t = 0; t < TICKS; ++t) {
+                mFriendlyPlacements[t][g] = friendly.place(game);
+                mEnemyPlacements[t][g] = enemy.place(game);
+                mFriendly[g / batch][t][g % batch] = pack(spec, mFriendlyPlacements[t][g]);
+                mEnemy[g / batch][t][g % batch] = pack(spec, mEnemyPlacements[t][g]);
+            }
+        }
+    }
+
+    private static int pack(Game.GameSpec spec, Game.Placement placement) {
+        return placement == null ? BatchedGame.NONE
+                : Game.Placements.pack(spec.unitIndex(placement.unit), placement.lane);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES * TICKS)
+    public Game[] games() {
+        for (int g = 0; g < GAMES; ++g) {
+            Game game = mGames[g];
+            game.copyFrom(mInitial[g]);
+            for (int t = 0; t < TICKS; ++t) {
+                game.tickMicros(DT_MICROS, mFriendlyPlacements[t][g], mEnemyPlacements[t][g]);
+            }
+        }
+        return mGames;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES * TICKS)
+    public BatchedGame[] batched() {
+        for (int b = 0; b < mBatches.length; ++b) {
+            BatchedGame games = mBatches[b];
+            for (int g = 0; g < batch; ++g) {
+                games.set(g, mInitial[b * batch + g]);
+            }
+            for (int t = 0; t < TICKS; ++t) {
+                games.tick(mDt, mFriendly[b][t], mEnemy[b][t]);
+            }
+        }
+        return mBatches;
+    }
+}
@@ -0,0 +1,67 @@
+package dorr.lanegame.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Games to benchmark (these live in dorr.lanegame.core, in order to build states directly).
+ */
+class BenchmarkGames {
+    static final float DT = 0.01f;
+    private static final int SPACING = 1500;
+
+    /**
+     * A spec like Game.EXAMPLE, with "lanes" lanes, each long enough for "unitsPerLane" units.
+     */
+    static Game.GameSpec spec(int lanes, int unitsPerLane) {
+        return spec(lanes, unitsPerLane, Game.EXAMPLE.units);
+    }
+
+    private static Game.GameSpec spec(int lanes, int unitsPerLane, List<Game.UnitSpec> units) {
+        int length = Math.max(Game.EXAMPLE.length, 2 * SPACING * (unitsPerLane + 1));
+        List<Game.ObjectiveSpec> objectives = new ArrayList<>();
+        for (int lane = 0; lane < lanes; ++lane) {
+            objectives.add(new Game.ObjectiveSpec(lane, length / 2, 200));
+        }
+        return new Game.GameSpec(lanes, length, objectives,
+                Game.EXAMPLE.startingBalance, Game.EXAMPLE.income, units);
+    }
+
+    /**
+     * Like spec(), but every unit is stationary, with no range (so nothing moves or fights).
+     */
+    static Game.GameSpec stationarySpec(int lanes, int unitsPerLane) {
+        List<Game.UnitSpec> units = new ArrayList<>();
+        for (Game.UnitSpec unit : Game.EXAMPLE.units) {
+            units.add(new Game.UnitSpec(unit.name, unit.height, 0, unit.health, unit.attack,
+                    unit.minAttack, unit.cost, unit.merge, 0, false));
+        }
+        return spec(lanes, unitsPerLane, units);
+    }
+
+    /**
+     * A game where each lane holds "unitsPerLane" units (of mixed types), with friendly units in the
+     * bottom half and enemy units in the top half.
+     */
+    static Game create(int lanes, int unitsPerLane) {
+        return create(spec(lanes, unitsPerLane), unitsPerLane);
+    }
+
+    static Game create(Game.GameSpec spec, int unitsPerLane) {
+        Game game = new Game(spec);
+        int id = 0;
+        for (Game.Lane lane : game.lanes) {
+            int friendly = (unitsPerLane + 1) / 2;
+            for (int i = 0; i < unitsPerLane; ++i) {
+                int specIndex = i % spec.units.size();
+                Game.UnitSpec unitSpec = spec.units.get(specIndex);
+                Game.Owner owner = i < friendly ? Game.Owner.FRIENDLY : Game.Owner.ENEMY;
+                int position = i < friendly
+                        ? i * SPACING
+                        : spec.length - 1 - unitSpec.height - (unitsPerLane - 1 - i) * SPACING;
+                lane.insert(lane.size, specIndex, id++, owner.flag(), position, unitSpec.health);
+            }
+        }
+        return game;
+    }
+}
@@ -0,0 +1,66 @@
+package dorr.lanegame.core;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GameCodec throughput, in states per second (and bytes per second, via the "bytes" counter).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CodecBenchmark {
+    @Param({"5"})
+    public int lanes;
+
+    @Param({"0", "10", "100"})
+    public int unitsPerLane;
+
+    private Game mGame;
+    private Game mCopy;
+    private GameCodec mCodec;
+    private ByteBuffer mBuffer;
+    private int mSize;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long bytes;
+    }
+
+    @Setup
+    public void setup() {
+        mGame = BenchmarkGames.create(lanes, unitsPerLane);
+        mCopy = new Game(mGame.spec);
+        mCodec = new GameCodec(mGame.spec);
+        mBuffer = ByteBuffer.allocateDirect(mCodec.maxSize(mGame));
+        mCodec.write(mGame, mBuffer);
+        mSize = mBuffer.position();
+    }
+
+    @Benchmark
+    public ByteBuffer write(Bytes bytes) {
+        mBuffer.clear();
+        mCodec.write(mGame, mBuffer);
+        bytes.bytes += mSize;
+        return mBuffer;
+    }
+
+    @Benchmark
+    public Game read(Bytes bytes) {
+        mBuffer.clear();
+        mCodec.read(mBuffer, mCopy);
+        bytes.bytes += mSize;
+        return mCopy;
+    }
+}
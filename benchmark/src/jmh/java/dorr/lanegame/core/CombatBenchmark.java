@@ -0,0 +1,91 @@
+package dorr.lanegame.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Finding combat targets in a lane of "n" randomly owned & spaced units: "sweep" is
+ * Game.findTargets, and "scan" is the O(n^2) scan it replaced (see CombatTest).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CombatBenchmark {
+    private static final int HEIGHT = 10;
+    private static final int RANGE = 25;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int n;
+
+    private Game mGame;
+    private Game.Lane mLane;
+    private int[] mTarget;
+
+    @Setup
+    public void setup() {
+        Game.GameSpec spec = new Game.GameSpec(
+                1,
+                n * 4 * HEIGHT,
+                Collections.<Game.ObjectiveSpec>emptyList(),
+                0,
+                0,
+                asList(
+                        new Game.UnitSpec("sword", HEIGHT, 1, 100, 10, 1, 1, true, 0, false),
+                        new Game.UnitSpec("arrow", HEIGHT, 1, 100, 10, 1, 1, false, RANGE, false)
+                )
+        );
+        mGame = new Game(spec);
+        mLane = mGame.lanes.get(0);
+        Random random = new Random(2000);
+        int position = 0;
+        for (int i = 0; i < n; ++i) {
+            position += random.nextInt(3 * HEIGHT);
+            mLane.insert(i, random.nextInt(2), i, random.nextInt(2), position, 100);
+            position += HEIGHT;
+        }
+        mTarget = new int[n];
+    }
+
+    @Benchmark
+    public int[] scan() {
+        Game.Lane lane = mLane;
+        for (int i = 0; i < lane.size; ++i) {
+            Game.UnitSpec spec = mGame.spec.units.get(lane.specIndex[i]);
+            int closest = -1;
+            int closestDistance = Integer.MAX_VALUE;
+            for (int other = 0; other < lane.size; ++other) {
+                if (Game.Owner.fromFlags(lane.flags[i]) != Game.Owner.fromFlags(lane.flags[other])) {
+                    int distance = Math.max(
+                            lane.position[i] - lane.position[other]
+                                    - mGame.spec.units.get(lane.specIndex[other]).height,
+                            lane.position[other] - lane.position[i] - spec.height
+                    );
+                    if (distance < closestDistance) {
+                        closest = other;
+                        closestDistance = distance;
+                    }
+                }
+            }
+            mTarget[i] = closestDistance <= spec.range ? closest : -1;
+        }
+        return mTarget;
+    }
+
+    @Benchmark
+    public int[] sweep() {
+        mGame.findTargets(mLane);
+        return mLane.target;
+    }
+}
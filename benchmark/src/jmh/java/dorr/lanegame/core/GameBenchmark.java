@@ -0,0 +1,134 @@
+package dorr.lanegame.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GameBenchmark {
+    // Ticks are run in batches from the same starting state, so that the state doesn't drift
+    private static final int TICKS = 100;
+
+    @Param({"1", "5", "20"})
+    public int lanes;
+
+    @Param({"0", "10", "100"})
+    public int unitsPerLane;
+
+    private Game mInitial;
+    private Game mGame;
+    private Game mSnapshot;
+    private Game[] mSources;
+    private Game mStationary;
+    private Game mStationarySnapshot;
+    private int mSource = 0;
+    private Agent mFriendly, mEnemy;
+    private final Game.Placements mFriendlyPlacements = new Game.Placements();
+    private final Game.Placements mEnemyPlacements = new Game.Placements();
+
+    @Setup
+    public void setup() {
+        mInitial = BenchmarkGames.create(lanes, unitsPerLane);
+        mGame = new Game(mInitial.spec);
+        mGame.copyFrom(mInitial);
+        mSnapshot = new Game(mInitial.spec);
+        // Two copies of the same state, with different lane versions
+        mSources = new Game[] { new Game(mInitial.spec), new Game(mInitial.spec) };
+        for (Game source : mSources) {
+            source.copyFrom(mInitial);
+            source.invert();
+            source.invert();
+        }
+        mStationary = BenchmarkGames.create(
+                BenchmarkGames.stationarySpec(lanes, unitsPerLane), unitsPerLane);
+        mStationarySnapshot = new Game(mStationary.spec);
+        mFriendly = new Agent.RandomAgent(mInitial.spec, 1);
+        mEnemy = new Agent.RandomAgent(mInitial.spec, 2);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public Game tick() {
+        mGame.copyFrom(mInitial);
+        for (int i = 0; i < TICKS; ++i) {
+            mGame.tick(BenchmarkGames.DT, null, null);
+        }
+        return mGame;
+    }
+
+    /**
+     * Agent placements by name (Agent.place(Game) & tick).
+     */
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public Game tickPlacement() {
+        mGame.copyFrom(mInitial);
+        for (int i = 0; i < TICKS; ++i) {
+            mGame.tick(BenchmarkGames.DT, mFriendly.place(mGame), mEnemy.place(mGame));
+        }
+        return mGame;
+    }
+
+    /**
+     * Agent placements by unit index (Agent.place(Game, Placements) & tickIndexed).
+     */
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public Game tickIndexed() {
+        mGame.copyFrom(mInitial);
+        for (int i = 0; i < TICKS; ++i) {
+            mFriendlyPlacements.clear();
+            mEnemyPlacements.clear();
+            mFriendly.place(mGame, mFriendlyPlacements);
+            mEnemy.place(mGame, mEnemyPlacements);
+            mGame.tickIndexed(BenchmarkGames.DT, mFriendlyPlacements, mEnemyPlacements);
+        }
+        return mGame;
+    }
+
+    /**
+     * The renderer's snapshot path, when every lane has changed.
+     */
+    @Benchmark
+    public Game copyFrom() {
+        mSource = 1 - mSource;
+        mSnapshot.copyFrom(mSources[mSource]);
+        return mSnapshot;
+    }
+
+    /**
+     * The renderer's snapshot path, when no lanes have changed.
+     */
+    @Benchmark
+    public Game copyFromUnchanged() {
+        mSnapshot.copyFrom(mInitial);
+        return mSnapshot;
+    }
+
+    /**
+     * The simulation's tick & snapshot, when no lane changes (the lanes are empty, or only hold
+     * units which aren't moving or fighting).
+     */
+    @Benchmark
+    public Game tickAndCopyQuiet() {
+        mStationary.tick(BenchmarkGames.DT, null, null);
+        mStationarySnapshot.copyFrom(mStationary);
+        return mStationarySnapshot;
+    }
+
+    @Benchmark
+    public Game invert() {
+        mGame.invert();
+        return mGame;
+    }
+}
@@ -0,0 +1,38 @@
+package dorr.lanegame.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full RandomAgent-vs-RandomAgent matches on Game.EXAMPLE (single-threaded).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MatchBenchmark {
+    @Param({"60"})
+    public float maxDuration;
+
+    private MatchRunner mRunner;
+    private int mIndex = 0;
+
+    @Setup
+    public void setup() {
+        mRunner = new MatchRunner(Game.EXAMPLE, BenchmarkGames.DT, maxDuration,
+                MatchRunner.RANDOM_AGENT, MatchRunner.RANDOM_AGENT);
+    }
+
+    @Benchmark
+    public MatchRunner.Result match() {
+        // Matches are seeded, so every run of the benchmark plays the same sequence of matches
+        return mRunner.play(1234, mIndex++);
+    }
+}
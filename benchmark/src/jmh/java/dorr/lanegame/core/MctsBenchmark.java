@@ -0,0 +1,65 @@
+package dorr.lanegame.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MctsAgent search throughput, in rollouts per second (the headline number for the agent's
+ * strength at a given time budget), with "threads" root-parallel searchers (0 = serial).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MctsBenchmark {
+    private static final int ROLLOUTS = 240; // split between the searchers
+
+    @Param({"0", "2", "4"})
+    public int threads;
+
+    @Param({"50"})
+    public int rolloutTicks;
+
+    private Game mGame;
+    private MctsAgent mAgent;
+    private ForkJoinPool mPool;
+    private int mSearchers;
+
+    @Setup
+    public void setup() {
+        // A mid-game position
+        mGame = new Game(Game.EXAMPLE);
+        Agent friendly = new Agent.RandomAgent(Game.EXAMPLE, 1);
+        Agent enemy = new Agent.RandomAgent(Game.EXAMPLE, 2);
+        for (int i = 0; i < 1000; ++i) {
+            mGame.tickMicros(10000, friendly.place(mGame), enemy.place(mGame));
+        }
+        mPool = threads == 0 ? null : new ForkJoinPool(threads);
+        mSearchers = Math.max(1, threads);
+        mAgent = new MctsAgent(Game.EXAMPLE, Game.Owner.FRIENDLY, 100000, Long.MAX_VALUE / 4,
+                rolloutTicks, 1, mPool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (mPool != null) {
+            mPool.shutdown();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROLLOUTS)
+    public int rollouts() {
+        return mAgent.search(mGame, Long.MAX_VALUE, ROLLOUTS / mSearchers);
+    }
+}
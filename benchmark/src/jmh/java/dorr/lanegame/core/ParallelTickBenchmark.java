@@ -0,0 +1,65 @@
+package dorr.lanegame.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Game.tick on large maps, with the lane phases run on a pool of "threads" workers (0 = serial).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParallelTickBenchmark {
+    private static final int TICKS = 100;
+
+    @Param({"20", "50"})
+    public int lanes;
+
+    @Param({"10", "100"})
+    public int unitsPerLane;
+
+    @Param({"0", "2", "4"})
+    public int threads;
+
+    private Game mInitial;
+    private Game mGame;
+    private ForkJoinPool mPool;
+
+    @Setup
+    public void setup() {
+        mInitial = BenchmarkGames.create(lanes, unitsPerLane);
+        mGame = new Game(mInitial.spec);
+        if (threads != 0) {
+            mPool = new ForkJoinPool(threads);
+            mGame.setPool(mPool);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (mPool != null) {
+            mPool.shutdown();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public Game tick() {
+        mGame.copyFrom(mInitial);
+        for (int i = 0; i < TICKS; ++i) {
+            mGame.tick(BenchmarkGames.DT, null, null);
+        }
+        return mGame;
+    }
+}
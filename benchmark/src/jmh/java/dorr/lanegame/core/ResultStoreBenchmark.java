@@ -0,0 +1,72 @@
+package dorr.lanegame.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregate queries over a ResultStore of synthetic match results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResultStoreBenchmark {
+    @Param({"1000000"})
+    public int matches;
+
+    private File mFile;
+    private ResultStore mStore;
+
+    @Setup
+    public void setup() throws IOException {
+        mFile = File.createTempFile("results", ".lgrs");
+        mStore = ResultStore.create(mFile, Game.EXAMPLE, matches, 8);
+        Random random = new Random(1234);
+        Game.Owner[] winners = { Game.Owner.FRIENDLY, Game.Owner.ENEMY, null };
+        int first = mStore.reserve(matches);
+        for (int i = first; i < first + matches; ++i) {
+            mStore.setResult(i, 0, 1, 2, winners[random.nextInt(3)], random.nextInt(6000),
+                    random.nextInt(10000), random.nextInt(10000));
+            for (Game.Owner owner : Game.Owner.values()) {
+                for (int unit = 0; unit < mStore.units; ++unit) {
+                    mStore.setPlacements(i, owner, unit, random.nextInt(3));
+                }
+            }
+        }
+        mStore.commit(first, matches);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mStore.close();
+        if (!mFile.delete()) {
+            mFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public float[] winRateByUnitMix() {
+        return mStore.winRateByUnitMix(Game.Owner.FRIENDLY);
+    }
+
+    @Benchmark
+    public long meanTicks() {
+        long total = 0;
+        int count = mStore.count();
+        for (int i = 0; i < count; ++i) {
+            total += mStore.ticks(i);
+        }
+        return total / count;
+    }
+}
@@ -0,0 +1,58 @@
+package dorr.lanegame.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many small runs appending to a large ResultStore: each op reserves, writes & commits "runSize"
+ * records.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResultStoreCommitBenchmark {
+    @Param({"16000000"})
+    public int capacity;
+
+    @Param({"10"})
+    public int runSize;
+
+    private File mFile;
+    private ResultStore mStore;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        mFile = File.createTempFile("results", ".lgrs");
+        mStore = ResultStore.create(mFile, Game.EXAMPLE, capacity, 8);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        mStore.close();
+        if (!mFile.delete()) {
+            mFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public int commit() {
+        int first = mStore.reserve(runSize);
+        for (int i = first; i < first + runSize; ++i) {
+            mStore.setResult(i, 0, 1, 2, Game.Owner.FRIENDLY, i, 0, 0);
+        }
+        mStore.commit(first, runSize);
+        return first;
+    }
+}
@@ -0,0 +1,58 @@
+package dorr.lanegame.core;
+
+import java.util.Random;
+
+public abstract class Agent {
+    public abstract Game.Placement place(Game game);
+
+    /**
+     * Add this tick's placements to "out" (which the caller clears), for Game.tickIndexed.
+     * <p>
+     * By default, this resolves the single placement from place(Game). Agents which make many
+     * decisions should override this to add unit indices directly, and may place several units.
+     */
+    public void place(Game game, Game.Placements out) {
+        Game.Placement placement = place(game);
+        if (placement != null) {
+            out.add(game.spec.unitIndex(placement.unit), placement.lane);
+        }
+    }
+
+    /**
+     * Place units of random types on random lanes (doesn't do any checking).
+     */
+    public static class RandomAgent extends Agent {
+        private final Random mRandom;
+        private final Game.GameSpec mSpec;
+        // Every possible placement, indexed by [unit * lanes + lane] (placements are immutable, so
+        // can be reused every tick)
+        private final Game.Placement[] mPlacements;
+        public RandomAgent(Game.GameSpec spec) {
+            this(spec, new Random());
+        }
+        public RandomAgent(Game.GameSpec spec, long seed) {
+            this(spec, new Random(seed));
+        }
+        private RandomAgent(Game.GameSpec spec, Random random) {
+            mSpec = spec;
+            mRandom = random;
+            mPlacements = new Game.Placement[spec.units.size() * spec.lanes];
+            for (int unit = 0; unit < spec.units.size(); ++unit) {
+                for (int lane = 0; lane < spec.lanes; ++lane) {
+                    mPlacements[unit * spec.lanes + lane] =
+                            new Game.Placement(spec.units.get(unit).name, lane);
+                }
+            }
+        }
+        @Override
+        public Game.Placement place(Game game) {
+            int unit = mRandom.nextInt(mSpec.units.size());
+            return mPlacements[unit * mSpec.lanes + mRandom.nextInt(mSpec.lanes)];
+        }
+        @Override
+        public void place(Game game, Game.Placements out) {
+            int unit = mRandom.nextInt(mSpec.units.size());
+            out.add(unit, mRandom.nextInt(mSpec.lanes));
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs an (expensive) agent on its own thread, so that it can't stall the tick.
+ * <p>
+ * Each call to place() (from the simulation thread) publishes a snapshot of the game to the worker
+ * thread, and picks up the worker's latest decision, without waiting. The worker always decides on
+ * the latest snapshot, skipping any it didn't get to. So a decision is applied at least one tick
+ * after the state it was made from. Decisions made from a state more than maxStaleTicks old are
+ * discarded as late. Decisions which are overtaken by a newer one before they're picked up are
+ * dropped.
+ * <p>
+ * The wrapped agent is only ever called from the worker thread, and must only use the game it is
+ * given during the call. Call close() to stop the worker.
+ */
+public class AsyncAgent extends Agent implements Closeable {
+    private static class Snapshot {
+        final Game game;
+        long tick;
+        long nanos; // when it was published
+        Snapshot(Game game) {
+            this.game = game;
+        }
+    }
+
+    private static class Decision {
+        final Game.Placements placements = new Game.Placements();
+        long tick; // of the snapshot it was made from
+        long sequence;
+    }
+
+    @NotNull public final Game.GameSpec spec;
+    public final int maxStaleTicks;
+    private final Agent mAgent;
+    private final TripleBuffer<Snapshot> mSnapshots;
+    private final TripleBuffer<Decision> mDecisions;
+    private final Thread mThread;
+    private volatile boolean mRunning = true;
+
+    // Owned by the caller of place()
+    private long mTick = 0;
+    private long mLastSequence = 0;
+    private final Game.Placements mScratch = new Game.Placements();
+
+    // Metrics
+    private volatile long mDecided = 0; // written by the worker
+    private volatile long mTotalLatencyNanos = 0; // written by the worker
+    private volatile long mMaxLatencyNanos = 0; // written by the worker
+    private volatile long mApplied = 0;
+    private volatile long mLate = 0;
+    private volatile long mDropped = 0;
+
+    /**
+     * Start a worker thread for "agent".
+     *
+     * @param maxStaleTicks how many ticks old the state a decision was made from can be when the
+     *                      decision is applied (at least 1)
+     */
+    public AsyncAgent(@NotNull Game.GameSpec spec, @NotNull Agent agent, int maxStaleTicks) {
+        if (maxStaleTicks < 1) {
+            throw new IllegalArgumentException("Decisions are always at least 1 tick stale");
+        }
+        this.spec = spec;
+        this.maxStaleTicks = maxStaleTicks;
+        mAgent = agent;
+        mSnapshots = new TripleBuffer<>(new Snapshot(new Game(spec)),
+                new Snapshot(new Game(spec)), new Snapshot(new Game(spec)));
+        mDecisions = new TripleBuffer<>(new Decision(), new Decision(), new Decision());
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "agent");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    private void loop() {
+        long sequence = 0;
+        while (mRunning) {
+            if (!mSnapshots.acquire()) {
+                LockSupport.park(this);
+                continue;
+            }
+            Snapshot snapshot = mSnapshots.front();
+            Decision decision = mDecisions.back();
+            decision.placements.clear();
+            try {
+                mAgent.place(snapshot.game, decision.placements);
+            } catch (RuntimeException e) {
+                Utility.debug("Stopping async agent, which threw: %s", e);
+                mRunning = false;
+                return;
+            }
+            long latency = System.nanoTime() - snapshot.nanos;
+            decision.tick = snapshot.tick;
+            decision.sequence = ++sequence;
+            mDecisions.publish();
+            mDecided = sequence;
+            mTotalLatencyNanos += latency;
+            mMaxLatencyNanos = Math.max(mMaxLatencyNanos, latency);
+        }
+    }
+
+    /**
+     * Publish "game" to the worker, and add the latest fresh decision (if any) to "out". This
+     * never waits for the worker.
+     * <p>
+     * This must always be called from the same thread (or with external synchronization).
+     */
+    @Override
+    public void place(Game game, Game.Placements out) {
+        if (mDecisions.acquire()) {
+            Decision decision = mDecisions.front();
+            mDropped += decision.sequence - mLastSequence - 1;
+            mLastSequence = decision.sequence;
+            if (mTick - decision.tick <= maxStaleTicks) {
+                for (int i = 0; i < decision.placements.size(); ++i) {
+                    out.addPacked(decision.placements.get(i));
+                }
+                ++mApplied;
+            } else {
+                ++mLate;
+            }
+        }
+        Snapshot snapshot = mSnapshots.back();
+        snapshot.game.copyFrom(game);
+        snapshot.tick = mTick;
+        snapshot.nanos = System.nanoTime();
+        mSnapshots.publish();
+        LockSupport.unpark(mThread);
+        ++mTick;
+    }
+
+    /**
+     * As place(Game, Placements), returning the first placement (prefer the indexed version, which
+     * doesn't allocate).
+     */
+    @Override
+    public Game.Placement place(Game game) {
+        mScratch.clear();
+        place(game, mScratch);
+        if (mScratch.size() == 0) {
+            return null;
+        }
+        int packed = mScratch.get(0);
+        return new Game.Placement(spec.units.get(Game.Placements.unitIndex(packed)).name,
+                Game.Placements.lane(packed));
+    }
+
+    /**
+     * @return the number of decisions the agent has made
+     */
+    public long decided() {
+        return mDecided;
+    }
+
+    /**
+     * @return the number of decisions which were placed
+     */
+    public long applied() {
+        return mApplied;
+    }
+
+    /**
+     * @return the number of decisions which were discarded, as they were more than maxStaleTicks
+     * old when picked up
+     */
+    public long late() {
+        return mLate;
+    }
+
+    /**
+     * @return the number of decisions which were never picked up, as a newer decision replaced them
+     */
+    public long dropped() {
+        return mDropped;
+    }
+
+    /**
+     * @return the mean time from publishing a snapshot to the agent's decision being ready
+     */
+    public long meanLatencyNanos() {
+        long decided = mDecided;
+        return decided == 0 ? 0 : mTotalLatencyNanos / decided;
+    }
+
+    public long maxLatencyNanos() {
+        return mMaxLatencyNanos;
+    }
+
+    /**
+     * Stop the worker thread, waiting for the current decision to finish.
+     */
+    @Override
+    public void close() {
+        mRunning = false;
+        LockSupport.unpark(mThread);
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
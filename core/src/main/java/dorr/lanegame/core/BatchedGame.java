@@ -0,0 +1,665 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+import static dorr.lanegame.core.Utility.check;
+
+/**
+ * Many games with the same spec, stepped in lockstep (e.g. for self-play), with every game's state
+ * in a few flat arrays rather than an object graph per game.
+ * <p>
+ * Each tick has exactly the same results as Game.tickMicros on each game (with at most one
+ * placement per player per game). Per-lane state is indexed [game][lane], and per-unit state
+ * [game][lane][slot], where each lane has a fixed number of slots - units in a lane never overlap,
+ * so a lane can never hold more than length / (smallest unit height) of them. Units have no ids.
+ * <p>
+ * The data-parallel parts of a tick (base income, applying damage) are tight loops over the flat
+ * arrays, and the rest runs game by game, lane by lane, over contiguous memory. Nothing allocates
+ * after construction.
+ * <p>
+ * Each tick touches every game in the batch, so keep batches small enough to stay in cache (tens
+ * of games, see BatchedGameBenchmark), and step larger populations as several batches.
+ */
+public class BatchedGame {
+    /**
+     * No placement (see tick).
+     */
+    public static final int NONE = -1;
+
+    // Unit flags, as Game's (flags & ENEMY is the owner's ordinal)
+    private static final int ENEMY = 1;
+    private static final int COMBAT = 2;
+    private static final byte NO_OWNER = -1;
+
+    @NotNull public final Game.GameSpec spec;
+    public final int games;
+    /**
+     * The number of unit slots in each lane.
+     */
+    public final int slots;
+    private final SpecTable mTable;
+    private final int mLanes;
+    private final int mMaxObjectives; // per lane
+
+    // Per game
+    private final long[] mTimeMicros;
+    private final int[] mBalance; // [game][owner]
+    // Per lane
+    private final int[] mSize; // [game][lane]
+    private final byte[] mObjectiveOwner; // [game][lane][objective], NO_OWNER or an owner ordinal
+    private final int[] mObjectives; // [lane]
+    private final int[] mObjectivePosition; // [lane][objective], sorted by position
+    private final int[] mObjectiveIncome; // [lane][objective]
+    // Per unit, [game][lane][slot]
+    private final int[] mPosition;
+    private final int[] mHealth;
+    private final int[] mSpecIndex;
+    private final byte[] mFlags;
+    // Scratch space for combat in one lane, by slot
+    private final int[] mTarget;
+    private final int[] mDamage;
+
+    public BatchedGame(@NotNull Game.GameSpec spec, int games) {
+        if (games <= 0) {
+            throw new IllegalArgumentException("A batch needs at least one game");
+        }
+        this.spec = spec;
+        this.games = games;
+        mTable = spec.table;
+        mLanes = spec.lanes;
+        int minHeight = Integer.MAX_VALUE;
+        for (int i = 0; i < mTable.units; ++i) {
+            minHeight = Math.min(minHeight, mTable.height[i]);
+        }
+        // (+1 for rounding down, & +1 for a unit moving off the end, before it is refunded)
+        slots = spec.length / minHeight + 2;
+        int maxObjectives = 0;
+        for (Game.ObjectiveSpec[] objectives : mTable.laneObjectives) {
+            maxObjectives = Math.max(maxObjectives, objectives.length);
+        }
+        mMaxObjectives = maxObjectives;
+        mObjectives = new int[mLanes];
+        mObjectivePosition = new int[mLanes * maxObjectives];
+        mObjectiveIncome = new int[mLanes * maxObjectives];
+        for (int lane = 0; lane < mLanes; ++lane) {
+            Game.ObjectiveSpec[] objectives = mTable.laneObjectives[lane];
+            mObjectives[lane] = objectives.length;
+            for (int k = 0; k < objectives.length; ++k) {
+                mObjectivePosition[lane * maxObjectives + k] = objectives[k].position;
+                mObjectiveIncome[lane * maxObjectives + k] = objectives[k].income;
+            }
+        }
+
+        mTimeMicros = new long[games];
+        mBalance = new int[2 * games];
+        mSize = new int[games * mLanes];
+        mObjectiveOwner = new byte[games * mLanes * maxObjectives];
+        mPosition = new int[games * mLanes * slots];
+        mHealth = new int[games * mLanes * slots];
+        mSpecIndex = new int[games * mLanes * slots];
+        mFlags = new byte[games * mLanes * slots];
+        mTarget = new int[slots];
+        mDamage = new int[slots];
+        for (int game = 0; game < games; ++game) {
+            reset(game);
+        }
+    }
+
+    // State access
+
+    private void checkGame(int game) {
+        if (game < 0 || games <= game) {
+            throw new IndexOutOfBoundsException("Game " + game + " of " + games);
+        }
+    }
+
+    /**
+     * @return the index of ("game", "lane") in the per-lane arrays
+     */
+    private int laneIndex(int game, int lane) {
+        checkGame(game);
+        if (lane < 0 || mLanes <= lane) {
+            throw new IndexOutOfBoundsException("Lane " + lane + " of " + mLanes);
+        }
+        return game * mLanes + lane;
+    }
+
+    /**
+     * @return the index of unit "index" of ("game", "lane") in the per-unit arrays
+     */
+    private int unit(int game, int lane, int index) {
+        int laneIndex = laneIndex(game, lane);
+        if (index < 0 || mSize[laneIndex] <= index) {
+            throw new IndexOutOfBoundsException("Unit " + index + " of " + mSize[laneIndex]);
+        }
+        return laneIndex * slots + index;
+    }
+
+    public long timeMicros(int game) {
+        checkGame(game);
+        return mTimeMicros[game];
+    }
+
+    public int balance(int game, @NotNull Game.Owner owner) {
+        checkGame(game);
+        return mBalance[2 * game + owner.ordinal()];
+    }
+
+    /**
+     * @return the number of units in "lane" of "game"
+     */
+    public int size(int game, int lane) {
+        return mSize[laneIndex(game, lane)];
+    }
+
+    /**
+     * @return the index of the type of unit "index" (in position order) in "lane" of "game", in
+     * GameSpec.units
+     */
+    public int unitIndex(int game, int lane, int index) {
+        return mSpecIndex[unit(game, lane, index)];
+    }
+
+    public int position(int game, int lane, int index) {
+        return mPosition[unit(game, lane, index)];
+    }
+
+    public int health(int game, int lane, int index) {
+        return mHealth[unit(game, lane, index)];
+    }
+
+    @NotNull
+    public Game.Owner owner(int game, int lane, int index) {
+        return Game.Owner.fromFlags(mFlags[unit(game, lane, index)]);
+    }
+
+    /**
+     * @return the owner of objective "index" in "lane" of "game" (in position order), or null
+     */
+    @Nullable
+    public Game.Owner objectiveOwner(int game, int lane, int index) {
+        int laneIndex = laneIndex(game, lane);
+        if (index < 0 || mObjectives[lane] <= index) {
+            throw new IndexOutOfBoundsException("Objective " + index + " of " + mObjectives[lane]);
+        }
+        byte owner = mObjectiveOwner[laneIndex * mMaxObjectives + index];
+        return owner == NO_OWNER ? null : Game.Owner.values()[owner];
+    }
+
+    /**
+     * @return the current income of "owner" in "game" per unit time (see Game.income)
+     */
+    public int income(int game, @NotNull Game.Owner owner) {
+        checkGame(game);
+        int income = spec.income;
+        for (int lane = 0; lane < mLanes; ++lane) {
+            int objectives = (game * mLanes + lane) * mMaxObjectives;
+            for (int k = 0; k < mObjectives[lane]; ++k) {
+                if (mObjectiveOwner[objectives + k] == owner.ordinal()) {
+                    income += mObjectiveIncome[lane * mMaxObjectives + k];
+                }
+            }
+        }
+        return income;
+    }
+
+    /**
+     * Reset "game" to the start of a match.
+     */
+    public void reset(int game) {
+        checkGame(game);
+        mTimeMicros[game] = 0;
+        mBalance[2 * game] = spec.startingBalance;
+        mBalance[2 * game + 1] = spec.startingBalance;
+        Arrays.fill(mSize, game * mLanes, (game + 1) * mLanes, 0);
+        Arrays.fill(mObjectiveOwner, game * mLanes * mMaxObjectives,
+                (game + 1) * mLanes * mMaxObjectives, NO_OWNER);
+    }
+
+    /**
+     * Copy the state of "src" (which must have the same spec, and not be inverted) into "game".
+     */
+    public void set(int game, @NotNull Game src) {
+        checkGame(game);
+        if (src.spec != spec) {
+            throw new IllegalArgumentException("Cannot set a game which has a different spec");
+        }
+        mTimeMicros[game] = src.timeMicros;
+        mBalance[2 * game] = src.player(Game.Owner.FRIENDLY).balance;
+        mBalance[2 * game + 1] = src.player(Game.Owner.ENEMY).balance;
+        for (int lane = 0; lane < mLanes; ++lane) {
+            Game.Lane srcLane = src.lanes.get(lane);
+            int laneIndex = game * mLanes + lane;
+            Game.ObjectiveSpec[] objectives = mTable.laneObjectives[lane];
+            for (int k = 0; k < objectives.length; ++k) {
+                Game.Objective objective = srcLane.objectives.get(k);
+                if (objective.spec != objectives[k] || objective.position != objectives[k].position) {
+                    throw new IllegalArgumentException("Cannot set an inverted game");
+                }
+                mObjectiveOwner[laneIndex * mMaxObjectives + k] = objective.owner == null
+                        ? NO_OWNER : (byte) objective.owner.ordinal();
+            }
+            if (slots < srcLane.size) {
+                throw new IllegalArgumentException("Too many units in lane " + lane);
+            }
+            int base = laneIndex * slots;
+            System.arraycopy(srcLane.position, 0, mPosition, base, srcLane.size);
+            System.arraycopy(srcLane.health, 0, mHealth, base, srcLane.size);
+            System.arraycopy(srcLane.specIndex, 0, mSpecIndex, base, srcLane.size);
+            System.arraycopy(srcLane.flags, 0, mFlags, base, srcLane.size);
+            mSize[laneIndex] = srcLane.size;
+        }
+    }
+
+    // Simulation (ported from Game, with "lane" as an index into the per-lane arrays)
+
+    private static int scale(int perSecond, int dtMicros) {
+        return (int) (((long) perSecond * dtMicros) / Game.MICROS_PER_SECOND);
+    }
+
+    private int height(int unit) {
+        return mTable.height[mSpecIndex[unit]];
+    }
+
+    private boolean isEnemy(int a, int b) {
+        return ((mFlags[a] ^ mFlags[b]) & ENEMY) != 0;
+    }
+
+    private int direction(int unit) {
+        return (mFlags[unit] & ENEMY) == 0 ? 1 : -1;
+    }
+
+    private static boolean isOverlapping(int positionA, int heightA, int positionB, int heightB) {
+        return (positionA < positionB + heightB
+                && positionB < positionA + heightA);
+    }
+
+    private void insert(int lane, int index, int specIndex, int flags, int position, int health) {
+        int size = mSize[lane];
+        check(size < slots, "lane has too many units");
+        int unit = lane * slots + index;
+        int tail = size - index;
+        System.arraycopy(mPosition, unit, mPosition, unit + 1, tail);
+        System.arraycopy(mHealth, unit, mHealth, unit + 1, tail);
+        System.arraycopy(mSpecIndex, unit, mSpecIndex, unit + 1, tail);
+        System.arraycopy(mFlags, unit, mFlags, unit + 1, tail);
+        mPosition[unit] = position;
+        mHealth[unit] = health;
+        mSpecIndex[unit] = specIndex;
+        mFlags[unit] = (byte) flags;
+        mSize[lane] = size + 1;
+    }
+
+    private void remove(int lane, int index) {
+        int unit = lane * slots + index;
+        int tail = mSize[lane] - index - 1;
+        System.arraycopy(mPosition, unit + 1, mPosition, unit, tail);
+        System.arraycopy(mHealth, unit + 1, mHealth, unit, tail);
+        System.arraycopy(mSpecIndex, unit + 1, mSpecIndex, unit, tail);
+        System.arraycopy(mFlags, unit + 1, mFlags, unit, tail);
+        --mSize[lane];
+    }
+
+    private void move(int from, int to) {
+        mPosition[to] = mPosition[from];
+        mHealth[to] = mHealth[from];
+        mSpecIndex[to] = mSpecIndex[from];
+        mFlags[to] = mFlags[from];
+    }
+
+    private void checkPlacement(@Nullable int[] placements, int game) {
+        if (placements == null || placements[game] == NONE) {
+            return;
+        }
+        int packed = placements[game];
+        int unitIndex = Game.Placements.unitIndex(packed);
+        int laneIndex = Game.Placements.lane(packed);
+        if (mLanes <= laneIndex) {
+            throw new IllegalArgumentException("Bad lane assignment - no lane: " + laneIndex);
+        }
+        if (packed < 0 || mTable.units <= unitIndex) {
+            throw new IllegalArgumentException("Bad unit assignment - no unit: " + unitIndex);
+        }
+    }
+
+    private void place(int game, int owner, int packed) {
+        int unitIndex = Game.Placements.unitIndex(packed);
+        int lane = game * mLanes + Game.Placements.lane(packed);
+        int cost = mTable.cost[unitIndex];
+        int height = mTable.height[unitIndex];
+        if (cost <= mBalance[2 * game + owner]) {
+            int size = mSize[lane];
+            int position, index, encumbent;
+            if (owner == Game.Owner.FRIENDLY.ordinal()) {
+                position = 0;
+                index = 0;
+                encumbent = 0;
+            } else {
+                position = spec.length - 1 - height;
+                index = size;
+                encumbent = size - 1;
+            }
+            int unit = lane * slots + encumbent;
+            if (size == 0 || !isOverlapping(mPosition[unit], height(unit), position, height)) {
+                insert(lane, index, unitIndex, owner == 0 ? 0 : ENEMY, position,
+                        mTable.health[unitIndex]);
+                mBalance[2 * game + owner] -= cost;
+            }
+        }
+    }
+
+    /**
+     * Capture objectives, and add their income (see Game.doCapture).
+     */
+    private void addIncome(int game, int lane, int dtMicros) {
+        int n = mObjectives[lane % mLanes];
+        int objectives = (lane % mLanes) * mMaxObjectives;
+        int owners = lane * mMaxObjectives;
+        int base = lane * slots;
+        int size = mSize[lane];
+        int unit = 0;
+        for (int k = 0; k < n; ++k) {
+            int position = mObjectivePosition[objectives + k];
+            while (unit < size && mPosition[base + unit] + height(base + unit) <= position) {
+                ++unit;
+            }
+            if (unit < size && mPosition[base + unit] <= position) {
+                mObjectiveOwner[owners + k] = (byte) (mFlags[base + unit] & ENEMY);
+            }
+        }
+        for (int k = 0; k < n; ++k) {
+            byte owner = mObjectiveOwner[owners + k];
+            if (owner != NO_OWNER) {
+                mBalance[2 * game + owner] += scale(mObjectiveIncome[objectives + k], dtMicros);
+            }
+        }
+    }
+
+    /**
+     * Find the closest enemy that each unit can attack, into mTarget (see Game.findTargets).
+     */
+    private void findTargets(int lane) {
+        int base = lane * slots;
+        int size = mSize[lane];
+        int below = -1;
+        int previous = -1;
+        int nextFriendly = 0, nextEnemy = 0;
+        for (int i = 0; i < size; ++i) {
+            boolean enemy = (mFlags[base + i] & ENEMY) != 0;
+            if (previous != -1 && isEnemy(base + previous, base + i)) {
+                below = previous;
+            }
+            previous = i;
+            int above;
+            if (enemy) {
+                nextFriendly = Math.max(nextFriendly, i + 1);
+                while (nextFriendly < size && (mFlags[base + nextFriendly] & ENEMY) != 0) {
+                    ++nextFriendly;
+                }
+                above = nextFriendly;
+            } else {
+                nextEnemy = Math.max(nextEnemy, i + 1);
+                while (nextEnemy < size && (mFlags[base + nextEnemy] & ENEMY) == 0) {
+                    ++nextEnemy;
+                }
+                above = nextEnemy;
+            }
+
+            int position = mPosition[base + i];
+            int unitIndex = mSpecIndex[base + i];
+            int closest = -1;
+            int closestDistance = Integer.MAX_VALUE;
+            if (below != -1) {
+                closest = below;
+                closestDistance = position - mPosition[base + below] - height(base + below);
+            }
+            if (above < size) {
+                int distance = mPosition[base + above] - position - mTable.height[unitIndex];
+                if (distance < closestDistance) {
+                    closest = above;
+                    closestDistance = distance;
+                }
+            }
+            mTarget[i] = closestDistance <= mTable.range[unitIndex] ? closest : -1;
+        }
+    }
+
+    private void doCombat(int lane, int dtMicros) {
+        findTargets(lane);
+        int base = lane * slots;
+        int size = mSize[lane];
+        int[] damage = mDamage;
+        Arrays.fill(damage, 0, size, 0);
+        for (int i = 0; i < size; ++i) {
+            int enemy = mTarget[i];
+            if (enemy != -1) {
+                mFlags[base + i] |= COMBAT;
+                int unitIndex = mSpecIndex[base + i];
+                damage[enemy] += scale(Math.max(mTable.minAttack[unitIndex],
+                        (mTable.attack[unitIndex] * mHealth[base + i]) / mTable.health[unitIndex]),
+                        dtMicros);
+            } else {
+                mFlags[base + i] &= ~COMBAT;
+            }
+        }
+        // Apply damage in a straight loop (which vectorizes), then remove the dead
+        int[] health = mHealth;
+        for (int i = 0; i < size; ++i) {
+            health[base + i] -= damage[i];
+        }
+        int alive = 0;
+        for (int i = 0; i < size; ++i) {
+            if (damage[i] == 0 || 0 < health[base + i]) {
+                move(base + i, base + alive++);
+            }
+        }
+        mSize[lane] = alive;
+    }
+
+    private boolean isFlanking(int lane, int index) {
+        int unit = lane * slots + index;
+        if (mTable.swapLanes[mSpecIndex[unit]]) {
+            int prev = index - direction(unit);
+            return 0 <= prev && prev < mSize[lane] && isEnemy(unit, lane * slots + prev);
+        }
+        return false;
+    }
+
+    /**
+     * @return the index to insert unit "index" of "lane" into "adjacent" in order to flank, or -1
+     * (see Game.getFlank)
+     */
+    private int getFlank(int lane, int index, int adjacent) {
+        if (adjacent == -1) {
+            return -1;
+        }
+        int unit = lane * slots + index;
+        int base = adjacent * slots;
+        int size = mSize[adjacent];
+        int height = height(unit);
+        for (int other = 0; other < size; ++other) {
+            if (isOverlapping(mPosition[unit], height,
+                    mPosition[base + other], height(base + other))) {
+                return -1;
+            }
+        }
+        int d = direction(unit);
+        int position = mPosition[unit] * d;
+        for (int other = (d == 1 ? 0 : size - 1); 0 <= other && other < size; other += d) {
+            int next = other + d;
+            if (mPosition[base + other] * d < position
+                    && (next < 0 || size <= next || position < mPosition[base + next] * d)) {
+                return isEnemy(unit, base + other) ? other + Math.max(d, 0) : -1;
+            }
+        }
+        return -1;
+    }
+
+    private void moveUnit(int src, int srcIndex, int dest, int destIndex) {
+        int unit = src * slots + srcIndex;
+        insert(dest, destIndex, mSpecIndex[unit], mFlags[unit], mPosition[unit], mHealth[unit]);
+        remove(src, srcIndex);
+    }
+
+    private void doSwapLanes(int game, int owner) {
+        int d = owner == 0 ? 1 : -1;
+        for (int laneIndex = 0; laneIndex < mLanes; ++laneIndex) {
+            int current = game * mLanes + laneIndex;
+            int previous = laneIndex == 0 ? -1 : current - 1;
+            int next = laneIndex == mLanes - 1 ? -1 : current + 1;
+            int base = current * slots;
+            for (int i = (d == 1 ? 0 : mSize[current] - 1); 0 <= i && i < mSize[current]; ) {
+                boolean removed = false;
+                if ((mFlags[base + i] & ENEMY) == owner
+                        && mTable.swapLanes[mSpecIndex[base + i]]
+                        && (mFlags[base + i] & COMBAT) == 0
+                        && !isFlanking(current, i)) {
+                    int flank = getFlank(current, i, previous);
+                    if (flank != -1) {
+                        moveUnit(current, i, previous, flank);
+                        removed = true;
+                    } else {
+                        flank = getFlank(current, i, next);
+                        if (flank != -1) {
+                            moveUnit(current, i, next, flank);
+                            removed = true;
+                        }
+                    }
+                }
+                if (!removed || d < 0) {
+                    i += d;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the unit was removed
+     */
+    private boolean doRefund(int game, int lane, int index) {
+        int unit = lane * slots + index;
+        int unitIndex = mSpecIndex[unit];
+        if (mPosition[unit] < 0 || spec.length < mPosition[unit] + mTable.height[unitIndex]) {
+            int refund = (mTable.cost[unitIndex] * mHealth[unit]) / mTable.health[unitIndex];
+            mBalance[2 * game + (mFlags[unit] & ENEMY)] += refund;
+            remove(lane, index);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the index of the unit that "index" collided with, or -1
+     */
+    private int doCollision(int lane, int index, int direction) {
+        int base = lane * slots;
+        int next = index + direction;
+        if (0 <= next && next < mSize[lane]) {
+            int height = height(base + index);
+            if (direction == 1 && mPosition[base + next] < mPosition[base + index] + height) {
+                mPosition[base + index] = mPosition[base + next] - height;
+                return next;
+            }
+            int nextHeight = height(base + next);
+            if (direction == -1 && mPosition[base + index] < mPosition[base + next] + nextHeight) {
+                mPosition[base + index] = mPosition[base + next] + nextHeight;
+                return next;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the unit was removed
+     */
+    private boolean doUnitMovement(int game, int lane, int index, int dtMicros) {
+        int unit = lane * slots + index;
+        int unitIndex = mSpecIndex[unit];
+        int direction = direction(unit);
+        if (isFlanking(lane, index)) {
+            direction *= -1;
+        }
+        mPosition[unit] += direction * scale(mTable.speed[unitIndex], dtMicros);
+        int next = doCollision(lane, index, direction);
+        if (next != -1
+                && !isEnemy(unit, lane * slots + next)
+                && unitIndex == mSpecIndex[lane * slots + next]
+                && mTable.merge[unitIndex]) {
+            mHealth[lane * slots + next] += mHealth[unit];
+            remove(lane, index);
+            return true;
+        } else {
+            return doRefund(game, lane, index);
+        }
+    }
+
+    private void doMovement(int game, int lane, int owner, int dtMicros) {
+        int base = lane * slots;
+        int d = owner == 0 ? -1 : 1;
+        for (int i = (d == 1 ? 0 : mSize[lane] - 1); 0 <= i && i < mSize[lane]; ) {
+            boolean removed = false;
+            if ((mFlags[base + i] & ENEMY) == owner && (mFlags[base + i] & COMBAT) == 0) {
+                removed = doUnitMovement(game, lane, i, dtMicros);
+            }
+            if (!removed || d < 0) {
+                i += d;
+            }
+        }
+    }
+
+    /**
+     * Advance every game by a timestep, as Game.tickMicros.
+     *
+     * @param dtMicros the timestep of each game
+     * @param friendly the friendly placement in each game (packed by Game.Placements.pack), or
+     *                 NONE, or null for no friendly placements at all
+     * @param enemy the enemy placement in each game, as "friendly"
+     */
+    public void tick(@NotNull int[] dtMicros, @Nullable int[] friendly, @Nullable int[] enemy) {
+        if (dtMicros.length != games
+                || (friendly != null && friendly.length != games)
+                || (enemy != null && enemy.length != games)) {
+            throw new IllegalArgumentException("Expected a timestep & placement for each game");
+        }
+        for (int game = 0; game < games; ++game) {
+            if (dtMicros[game] < 0) {
+                throw new IllegalArgumentException("Negative timestep: " + dtMicros[game]);
+            }
+            // (check everything first, so that a bad argument doesn't leave a half-made tick)
+            checkPlacement(friendly, game);
+            checkPlacement(enemy, game);
+        }
+        for (int game = 0; game < games; ++game) {
+            if (friendly != null && friendly[game] != NONE) {
+                place(game, 0, friendly[game]);
+            }
+            if (enemy != null && enemy[game] != NONE) {
+                place(game, 1, enemy[game]);
+            }
+        }
+        int income = spec.income;
+        for (int game = 0; game < games; ++game) {
+            int baseIncome = scale(income, dtMicros[game]);
+            mBalance[2 * game] += baseIncome;
+            mBalance[2 * game + 1] += baseIncome;
+            mTimeMicros[game] += dtMicros[game];
+        }
+        for (int game = 0; game < games; ++game) {
+            int dt = dtMicros[game];
+            int first = game * mLanes;
+            for (int lane = first; lane < first + mLanes; ++lane) {
+                addIncome(game, lane, dt);
+                doCombat(lane, dt);
+            }
+            doSwapLanes(game, 0);
+            doSwapLanes(game, 1);
+            for (int lane = first; lane < first + mLanes; ++lane) {
+                doMovement(game, lane, 0, dt);
+                doMovement(game, lane, 1, dt);
+            }
+        }
+    }
+}
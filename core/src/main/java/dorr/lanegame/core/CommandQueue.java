@@ -0,0 +1,131 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free, multi-producer single-consumer queue of placement commands.
+ * <p>
+ * Any thread (agents, UI) may offer() commands at any time, without blocking. The simulation
+ * thread drain()s them in a batch at each tick boundary, so every command offered before a tick
+ * starts is placed in that tick. Neither offer() nor drain() allocates.
+ * <p>
+ * This is a ring buffer where each slot has a sequence number, which says whether the slot is free
+ * for the producer of a given position, or full for the consumer (after Dmitry Vyukov's bounded
+ * MPMC queue). Producers claim a position with a CAS on the tail, and publish the slot by writing
+ * its sequence number.
+ */
+public class CommandQueue {
+    private static final int OWNER_SHIFT = 32;
+
+    @NotNull public final Game.GameSpec spec;
+    private final int mMask;
+    private final long[] mCommands;
+    private final AtomicLongArray mSequence;
+    private final AtomicLong mTail = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private long mHead = 0; // only accessed by the consumer
+
+    /**
+     * @param capacity the maximum number of commands waiting (rounded up to a power of 2)
+     */
+    public CommandQueue(@NotNull Game.GameSpec spec, int capacity) {
+        if (capacity <= 0 || (1 << 30) < capacity) {
+            throw new IllegalArgumentException("Bad command queue capacity " + capacity);
+        }
+        this.spec = spec;
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mMask = size - 1;
+        mCommands = new long[size];
+        mSequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) {
+            mSequence.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mCommands.length;
+    }
+
+    /**
+     * @return the number of commands that were rejected as the queue was full
+     */
+    public long dropped() {
+        return mDropped.get();
+    }
+
+    /**
+     * (Any thread) queue a placement, packed by Game.Placements.pack.
+     *
+     * @return false if the queue is full, in which case the command is dropped
+     * @throws IllegalArgumentException if the placement isn't valid for the spec (so that bad
+     * commands are reported to the thread which made them, not the simulation)
+     */
+    public boolean offer(@NotNull Game.Owner owner, int packedPlacement) {
+        int unitIndex = Game.Placements.unitIndex(packedPlacement);
+        int lane = Game.Placements.lane(packedPlacement);
+        if (packedPlacement < 0 || spec.units.size() <= unitIndex || spec.lanes <= lane) {
+            throw new IllegalArgumentException("Bad placement: unit " + unitIndex + ", lane " + lane);
+        }
+        long command = ((long) owner.ordinal() << OWNER_SHIFT) | (packedPlacement & 0xffffffffL);
+        while (true) {
+            long position = mTail.get();
+            int slot = (int) position & mMask;
+            long available = mSequence.get(slot) - position;
+            if (available == 0) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    mCommands[slot] = command;
+                    mSequence.lazySet(slot, position + 1); // publish
+                    return true;
+                }
+            } else if (available < 0) {
+                mDropped.incrementAndGet();
+                return false;
+            }
+            // else another producer claimed this position - retry
+        }
+    }
+
+    /**
+     * (Any thread) queue a placement of unit "unitIndex" (see GameSpec.unitIndex) on "lane".
+     *
+     * @return false if the queue is full, in which case the command is dropped
+     */
+    public boolean offer(@NotNull Game.Owner owner, int unitIndex, int lane) {
+        return offer(owner, Game.Placements.pack(unitIndex, lane));
+    }
+
+    /**
+     * (Consumer thread only) move the published commands into "friendly" & "enemy", in the order
+     * they were queued (at most capacity() commands, so this can't be stalled by busy producers).
+     *
+     * @return the number of commands drained
+     */
+    public int drain(@NotNull Game.Placements friendly, @NotNull Game.Placements enemy) {
+        int count = 0;
+        while (count < mCommands.length) {
+            int slot = (int) mHead & mMask;
+            if (mSequence.get(slot) != mHead + 1) {
+                // Empty, or the next producer hasn't published yet (its command goes in the next
+                // batch, to keep the order)
+                return count;
+            }
+            long command = mCommands[slot];
+            mSequence.lazySet(slot, mHead + mCommands.length); // free for the next lap
+            ++mHead;
+            ++count;
+            int packed = (int) command;
+            if ((int) (command >>> OWNER_SHIFT) == Game.Owner.FRIENDLY.ordinal()) {
+                friendly.addPacked(packed);
+            } else {
+                enemy.addPacked(packed);
+            }
+        }
+        return count;
+    }
+}
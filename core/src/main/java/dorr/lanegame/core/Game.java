@@ -0,0 +1,1723 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static dorr.lanegame.core.Utility.check;
+import static dorr.lanegame.core.Utility.getOrNull;
+
+public class Game {
+    public static GameSpec EXAMPLE = new GameSpec(
+            5,
+            10000,
+            Arrays.asList(
+                    new ObjectiveSpec(0, 2000, 200),
+                    new ObjectiveSpec(1, 6000, 200),
+                    new ObjectiveSpec(2, 5000, 200),
+                    new ObjectiveSpec(3, 4000, 200),
+                    new ObjectiveSpec(4, 8000, 200)
+            ),
+            3000,
+            200,
+            Arrays.asList(
+                    new UnitSpec("sword", 1000, 2000, 10000,
+                            4000, 1000, 1000,
+                            true, 0, false),
+                    new UnitSpec("arrow", 1000, 2000, 10000,
+                            4000, 1000, 1000,
+                            false, 3000, false),
+                    new UnitSpec("horse", 1000, 4000, 10000,
+                            4000, 1000, 1000,
+                            false, 0, true)
+            )
+    );
+
+    public static class UnitSpec {
+        @NotNull public final String name;
+        // Basic stats
+        public final int height;
+        public final int speed;
+        public final int health;
+        public final int attack;
+        public final int minAttack;
+        public final int cost;
+        // Special powers
+        public final boolean merge;
+        public final int range;
+        public final boolean swapLanes;
+        UnitSpec(@NotNull String name, int height, int speed, int health,
+                 int attack, int minAttack, int cost,
+                 boolean merge, int range, boolean swapLanes) {
+            this.name = name;
+            this.height = height;
+            this.speed = speed;
+            this.health = health;
+            this.attack = attack;
+            this.minAttack = minAttack;
+            this.cost = cost;
+            this.merge = merge;
+            this.range = range;
+            this.swapLanes = swapLanes;
+        }
+    }
+    public static class ObjectiveSpec {
+        public final int lane;
+        public final int position;
+        public final int income;
+        ObjectiveSpec(int lane, int position, int income) {
+            this.lane = lane;
+            this.position = position;
+            this.income = income;
+        }
+    }
+    public static class GameSpec {
+        // (so that every lane index fits in Placements.pack)
+        public static final int MAX_LANES = 65535;
+        public final int lanes;
+        public final int length;
+        @NotNull public final List<ObjectiveSpec> objectives;
+        public final int startingBalance;
+        public final int income;
+        @NotNull public final List<UnitSpec> units;
+        @NotNull final SpecTable table;
+        GameSpec(int lanes, int length, @NotNull List<ObjectiveSpec> objectives,
+                 int startingBalance, int income, @NotNull List<UnitSpec> units) {
+            this.lanes = lanes;
+            this.length = length;
+            this.objectives = Collections.unmodifiableList(objectives);
+            this.startingBalance = startingBalance;
+            this.income = income;
+            this.units = Collections.unmodifiableList(units);
+            this.table = new SpecTable(lanes, this.objectives, this.units);
+        }
+
+        /**
+         * @return the index of the named unit in "units", for use with Placements
+         */
+        public int unitIndex(@NotNull String unit) {
+            return table.unitIndex(unit);
+        }
+    }
+
+    public static class Placement {
+        @NotNull final String unit;
+        final int lane;
+        public Placement(@NotNull String unit, int lane) {
+            this.unit = unit;
+            this.lane = lane;
+        }
+    }
+
+    /**
+     * A reusable list of one player's placements for a tick, referring to units by index (see
+     * GameSpec.unitIndex), which avoids allocating or looking up names every tick.
+     * <p>
+     * Each placement is packed into an int (see pack), and placements are made in the order they
+     * were added.
+     */
+    public static class Placements {
+        private static final int LANE_BITS = 16;
+        private static final int LANE_MASK = (1 << LANE_BITS) - 1;
+
+        private int[] mPacked = new int[4];
+        private int mSize = 0;
+
+        /**
+         * @return a placement of unit "unitIndex" on "lane", packed into an int
+         */
+        public static int pack(int unitIndex, int lane) {
+            if (unitIndex < 0 || (Integer.MAX_VALUE >> LANE_BITS) < unitIndex
+                    || lane < 0 || LANE_MASK < lane) {
+                throw new IllegalArgumentException(
+                        "Cannot pack unit " + unitIndex + ", lane " + lane);
+            }
+            return (unitIndex << LANE_BITS) | lane;
+        }
+        public static int unitIndex(int packed) {
+            return packed >>> LANE_BITS;
+        }
+        public static int lane(int packed) {
+            return packed & LANE_MASK;
+        }
+
+        public void add(int unitIndex, int lane) {
+            addPacked(pack(unitIndex, lane));
+        }
+        public void addPacked(int packed) {
+            if (mSize == mPacked.length) {
+                mPacked = Arrays.copyOf(mPacked, 2 * mSize);
+            }
+            mPacked[mSize++] = packed;
+        }
+        public void clear() {
+            mSize = 0;
+        }
+        public int size() {
+            return mSize;
+        }
+        public int get(int index) {
+            if (index < 0 || mSize <= index) {
+                throw new IndexOutOfBoundsException("Placement " + index + " of " + mSize);
+            }
+            return mPacked[index];
+        }
+    }
+
+    public enum Owner {
+        FRIENDLY,
+        ENEMY;
+        Owner flip() {
+            if (this == FRIENDLY) return ENEMY;
+            else return FRIENDLY;
+        }
+        int direction() {
+            if (this == FRIENDLY) return 1;
+            else return -1;
+        }
+        int flag() {
+            if (this == FRIENDLY) return 0;
+            else return ENEMY_FLAG;
+        }
+        static Owner fromFlags(int flags) {
+            if ((flags & ENEMY_FLAG) == 0) return FRIENDLY;
+            else return ENEMY;
+        }
+    }
+    /**
+     * A read-only snapshot of a single unit in a lane (see Lane.units).
+     * <p>
+     * Units are stored in their Lane as primitive arrays, so writing to a Unit does not change the
+     * game.
+     */
+    public static class Unit {
+        enum State {
+            MOVEMENT,
+            COMBAT
+        }
+        @NotNull public UnitSpec spec;
+        public int id;
+        @NotNull public Owner owner;
+        public int position;
+        public int health;
+        @NotNull public State state;
+        Unit(@NotNull UnitSpec spec, int id, @NotNull Owner owner, int position, int health, @NotNull State state) {
+            this.spec = spec;
+            this.id = id;
+            this.owner = owner;
+            this.position = position;
+            this.health = health;
+            this.state = state;
+        }
+    }
+    static class Player {
+        // NOTE: updates here must be reflected in Game.copyFrom
+        public int balance;
+        Player(int balance) {
+            this.balance = balance;
+        }
+    }
+    static class Objective {
+        // NOTE: updates here must be reflected in Game.copyLane
+        @NotNull public ObjectiveSpec spec;
+        @Nullable public Owner owner;
+        public int position;
+        Objective(@NotNull ObjectiveSpec spec, @Nullable Owner owner, int position) {
+            this.spec = spec;
+            this.owner = owner;
+            this.position = position;
+        }
+    }
+    /**
+     * A bounded log of the objective captures in a lane, which only keeps the most recent
+     * "capacity" captures.
+     * <p>
+     * Captures are numbered from zero, so a reader should remember count() & read the captures
+     * from there next time, e.g.
+     * <pre>{@code
+     * for (long i = Math.max(seen, captures.oldest()); i < captures.count(); ++i) {
+     *     onCapture(lane.objectives.get(captures.objective(i)), captures.owner(i));
+     * }
+     * seen = captures.count();
+     * }</pre>
+     */
+    public static class Captures {
+        // NOTE: updates here must be reflected in Captures.copyFrom
+        private final int[] mObjective;
+        private final byte[] mOwner;
+        private final float[] mTime;
+        private long mCount = 0;
+        Captures(int capacity) {
+            mObjective = new int[capacity];
+            mOwner = new byte[capacity];
+            mTime = new float[capacity];
+        }
+        private int slot(long capture) {
+            if (capture < oldest() || mCount <= capture) {
+                throw new IndexOutOfBoundsException("Capture " + capture + " is not in the log");
+            }
+            return (int) (capture % mObjective.length);
+        }
+        void add(int objective, Owner owner, float time) {
+            int slot = (int) (mCount % mObjective.length);
+            mObjective[slot] = objective;
+            mOwner[slot] = (byte) owner.ordinal();
+            mTime[slot] = time;
+            ++mCount;
+        }
+        /**
+         * Update the log after the objectives in the lane have been inverted.
+         */
+        void invert(int objectives) {
+            for (int i = 0; i < mObjective.length; ++i) {
+                mObjective[i] = objectives - 1 - mObjective[i];
+                mOwner[i] ^= 1;
+            }
+        }
+        void copyFrom(Captures src) {
+            System.arraycopy(src.mObjective, 0, mObjective, 0, mObjective.length);
+            System.arraycopy(src.mOwner, 0, mOwner, 0, mOwner.length);
+            System.arraycopy(src.mTime, 0, mTime, 0, mTime.length);
+            mCount = src.mCount;
+        }
+        public int capacity() {
+            return mObjective.length;
+        }
+        /**
+         * @return the total number of captures in this lane, i.e. the index of the next capture
+         */
+        public long count() {
+            return mCount;
+        }
+        /**
+         * @return the index of the oldest capture that is still in the log
+         */
+        public long oldest() {
+            return Math.max(0, mCount - mObjective.length);
+        }
+        /**
+         * @return the index of the captured objective (in Lane.objectives)
+         */
+        public int objective(long capture) {
+            return mObjective[slot(capture)];
+        }
+        public Owner owner(long capture) {
+            return mOwner[slot(capture)] == 0 ? Owner.FRIENDLY : Owner.ENEMY;
+        }
+        /**
+         * @return the game time of the tick in which the objective was captured
+         */
+        public float time(long capture) {
+            return mTime[slot(capture)];
+        }
+    }
+    public static class Lane {
+        private static final int INITIAL_CAPACITY = 8;
+        // Lane versions are reserved from a global counter in blocks, so that lanes never share a
+        // version unless one was copied from the other, without contention between threads
+        private static final long VERSION_BLOCK = 1 << 16;
+        private static final AtomicLong sNextVersionBlock = new AtomicLong(0);
+
+        // NOTE: updates here must be reflected in Lane.copyFrom & Game.copyLane
+        @NotNull public final List<Objective> objectives;
+        /**
+         * A read-only view of the units in this lane, in position order.
+         * <p>
+         * Each element is a snapshot of that slot, which is refreshed when it is fetched, so don't
+         * hold onto it over a tick.
+         */
+        @NotNull public final List<Unit> units;
+        /**
+         * Objective captures in this lane, or null if not recorded (see Game.recordCaptures).
+         */
+        @Nullable public Captures captures = null;
+
+        // Unit storage (structure-of-arrays), sorted by position
+        int size = 0;
+        int[] position = new int[INITIAL_CAPACITY];
+        int[] health = new int[INITIAL_CAPACITY];
+        int[] id = new int[INITIAL_CAPACITY];
+        int[] specIndex = new int[INITIAL_CAPACITY];
+        byte[] flags = new byte[INITIAL_CAPACITY];
+        // Scratch space for Game.doCombat & Game.quietTicks (not part of the lane state)
+        int[] target = new int[INITIAL_CAPACITY];
+        int[] damage = new int[INITIAL_CAPACITY];
+        int[] velocity = new int[INITIAL_CAPACITY];
+        // Change in each player's balance (by Owner.ordinal()) from this lane during the current
+        // tick, which is added to the players' balances at the end of the tick
+        final int[] balanceDelta = new int[2];
+        // Counts (by TickMetrics.Counter.ordinal()) & nanoseconds spent in lane phases (by
+        // TickMetrics.Phase.ordinal()) in this lane during the current tick, which are added to
+        // the game's metrics at the end of the tick (see Game.setMetrics)
+        final int[] metricCounts = new int[TickMetrics.COUNTERS.length];
+        final long[] metricNanos = new long[TickMetrics.PHASES.length];
+
+        /**
+         * Identifies the state of the lane - if two lanes have the same version, they hold the same
+         * state (so Game.copyLane can skip them). Call bump() after any change to the lane.
+         */
+        long version;
+        private long mNextVersion = 0;
+        private long mVersionLimit = 0;
+
+        /**
+         * A Zobrist-style hash of the lane's units (see Game.hash), which is kept up to date as
+         * the lane changes - each unit contributes a pseudo-random key, which is XORed in & out as
+         * the unit changes.
+         */
+        long hash;
+        // Distinguishes the keys of lanes at different indices in Game.lanes
+        private long mSalt;
+
+        Lane(@NotNull List<Objective> objectives, @NotNull UnitSpec[] unitSpecs, int index) {
+            this.objectives = objectives;
+            this.units = new UnitView(unitSpecs);
+            bump();
+            rehash(index);
+        }
+
+        void bump() {
+            if (mNextVersion == mVersionLimit) {
+                mNextVersion = sNextVersionBlock.getAndIncrement() * VERSION_BLOCK;
+                mVersionLimit = mNextVersion + VERSION_BLOCK;
+            }
+            version = mNextVersion++;
+        }
+
+        /**
+         * Exposes the unit arrays as a list of (reused) Unit objects.
+         */
+        private class UnitView extends AbstractList<Unit> {
+            private final UnitSpec[] mUnitSpecs;
+            private Unit[] mUnits = new Unit[INITIAL_CAPACITY];
+            UnitView(UnitSpec[] unitSpecs) {
+                mUnitSpecs = unitSpecs;
+            }
+            @Override
+            public Unit get(int index) {
+                if (index < 0 || size <= index) {
+                    throw new IndexOutOfBoundsException("No unit at index " + index);
+                }
+                if (mUnits.length <= index) {
+                    mUnits = Arrays.copyOf(mUnits, Math.max(index + 1, 2 * mUnits.length));
+                }
+                UnitSpec spec = mUnitSpecs[specIndex[index]];
+                Owner owner = Owner.fromFlags(flags[index]);
+                Unit.State state = (flags[index] & COMBAT_FLAG) == 0
+                        ? Unit.State.MOVEMENT : Unit.State.COMBAT;
+                Unit unit = mUnits[index];
+                if (unit == null) {
+                    unit = new Unit(spec, id[index], owner, position[index], health[index], state);
+                    mUnits[index] = unit;
+                } else {
+                    unit.spec = spec;
+                    unit.id = id[index];
+                    unit.owner = owner;
+                    unit.position = position[index];
+                    unit.health = health[index];
+                    unit.state = state;
+                }
+                return unit;
+            }
+            @Override
+            public int size() {
+                return size;
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (position.length < capacity) {
+                int newCapacity = Math.max(capacity, 2 * position.length);
+                position = Arrays.copyOf(position, newCapacity);
+                health = Arrays.copyOf(health, newCapacity);
+                id = Arrays.copyOf(id, newCapacity);
+                specIndex = Arrays.copyOf(specIndex, newCapacity);
+                flags = Arrays.copyOf(flags, newCapacity);
+                target = new int[newCapacity];
+                damage = new int[newCapacity];
+                velocity = new int[newCapacity];
+            }
+        }
+
+        long unitHash(int i) {
+            return unitHash(i, position[i]);
+        }
+
+        /**
+         * @return the hash of unit "i", as if it were at "position"
+         */
+        long unitHash(int i, int position) {
+            return mix(mSalt + position * HASH_POSITION + health[i] * HASH_HEALTH
+                    + ((specIndex[i] << 1) | (flags[i] & ENEMY_FLAG)) * HASH_TYPE);
+        }
+
+        long objectiveHash(int k) {
+            Objective objective = objectives.get(k);
+            int owner = objective.owner == null ? 0 : 1 + objective.owner.ordinal();
+            return mix(mSalt + objective.position * HASH_POSITION + (k + 1) * HASH_OBJECTIVE
+                    + owner * HASH_TYPE);
+        }
+
+        /**
+         * @return the hash of the lane's objectives (which are few, and public, so aren't hashed
+         * incrementally)
+         */
+        long objectivesHash() {
+            long hash = 0;
+            for (int k = 0; k < objectives.size(); ++k) {
+                hash ^= objectiveHash(k);
+            }
+            return hash;
+        }
+
+        /**
+         * @return the hash of the lane's units, computed from scratch
+         */
+        long computeHash() {
+            long hash = 0;
+            for (int i = 0; i < size; ++i) {
+                hash ^= unitHash(i);
+            }
+            return hash;
+        }
+
+        /**
+         * Recompute the hash from scratch, for a lane at "index" in Game.lanes.
+         */
+        void rehash(int index) {
+            mSalt = mix(HASH_LANE * (index + 1));
+            hash = computeHash();
+        }
+
+        void insert(int index, int specIndex, int id, int flags, int position, int health) {
+            ensureCapacity(size + 1);
+            int tail = size - index;
+            System.arraycopy(this.position, index, this.position, index + 1, tail);
+            System.arraycopy(this.health, index, this.health, index + 1, tail);
+            System.arraycopy(this.id, index, this.id, index + 1, tail);
+            System.arraycopy(this.specIndex, index, this.specIndex, index + 1, tail);
+            System.arraycopy(this.flags, index, this.flags, index + 1, tail);
+            this.position[index] = position;
+            this.health[index] = health;
+            this.id[index] = id;
+            this.specIndex[index] = specIndex;
+            this.flags[index] = (byte) flags;
+            ++size;
+            hash ^= unitHash(index);
+            bump();
+        }
+
+        void remove(int index) {
+            hash ^= unitHash(index);
+            int tail = size - index - 1;
+            System.arraycopy(position, index + 1, position, index, tail);
+            System.arraycopy(health, index + 1, health, index, tail);
+            System.arraycopy(id, index + 1, id, index, tail);
+            System.arraycopy(specIndex, index + 1, specIndex, index, tail);
+            System.arraycopy(flags, index + 1, flags, index, tail);
+            --size;
+            bump();
+        }
+
+        /**
+         * Move unit "from" into slot "to", within this lane (overwriting the destination).
+         */
+        void move(int from, int to) {
+            // (the unit's hash doesn't depend on its slot)
+            position[to] = position[from];
+            health[to] = health[from];
+            id[to] = id[from];
+            specIndex[to] = specIndex[from];
+            flags[to] = flags[from];
+        }
+
+        void copyFrom(Lane src) {
+            ensureCapacity(src.size);
+            System.arraycopy(src.position, 0, position, 0, src.size);
+            System.arraycopy(src.health, 0, health, 0, src.size);
+            System.arraycopy(src.id, 0, id, 0, src.size);
+            System.arraycopy(src.specIndex, 0, specIndex, 0, src.size);
+            System.arraycopy(src.flags, 0, flags, 0, src.size);
+            size = src.size;
+        }
+
+        void reverse() {
+            for (int i = 0, j = size - 1; i < j; ++i, --j) {
+                int tmp = position[i]; position[i] = position[j]; position[j] = tmp;
+                tmp = health[i]; health[i] = health[j]; health[j] = tmp;
+                tmp = id[i]; id[i] = id[j]; id[j] = tmp;
+                tmp = specIndex[i]; specIndex[i] = specIndex[j]; specIndex[j] = tmp;
+                byte tmpFlags = flags[i]; flags[i] = flags[j]; flags[j] = tmpFlags;
+            }
+        }
+    }
+
+    // Unit flags (see Lane.flags)
+    private static final int ENEMY_FLAG = 1;
+    private static final int COMBAT_FLAG = 2;
+    static final int ALL_FLAGS = ENEMY_FLAG | COMBAT_FLAG;
+
+    // Multipliers for the fields of a hash key (odd 64-bit constants), before mixing
+    private static final long HASH_POSITION = 0x9E3779B97F4A7C15L;
+    private static final long HASH_HEALTH = 0xC2B2AE3D27D4EB4FL;
+    private static final long HASH_TYPE = 0x165667B19E3779F9L;
+    private static final long HASH_OBJECTIVE = 0x27D4EB2F165667C5L;
+    private static final long HASH_LANE = 0x85EBCA77C2B2AE63L;
+    private static final long HASH_BALANCE = 0xD6E8FEB86659FD93L;
+
+    /**
+     * A cheap 64-bit bit mixer (one multiply between xorshifts), for hash keys - it is run for each
+     * moving or damaged unit every tick.
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 32)) * 0xBF58476D1CE4E5B9L;
+        return z ^ (z >>> 29);
+    }
+
+    public static final int MICROS_PER_SECOND = 1000000;
+
+    @NotNull public final GameSpec spec;
+    @NotNull public final List<Lane> lanes;
+    public float time = 0;
+    /**
+     * Game time in integer microseconds (exact if only tickMicros is used).
+     */
+    public long timeMicros = 0;
+    private final List<Player> mPlayers;
+    private final SpecTable mTable;
+    private int mNextId = 0;
+    // The timestep of the current tick - in microseconds, or if that is negative, in seconds (mDt)
+    private int mDtMicros = -1;
+    private float mDt = 0;
+    @Nullable private ForkJoinPool mPool = null;
+    @Nullable private TickMetrics mMetrics = null;
+    // Whether this tick is being timed, and when it & its current phase started
+    private boolean mTiming = false;
+    private long mTickStartNanos, mPhaseStartNanos;
+
+    public Game(@NotNull GameSpec spec) {
+        this.spec = spec;
+        mPlayers = Arrays.asList(
+                new Player(spec.startingBalance),
+                new Player(spec.startingBalance)
+        );
+        mTable = spec.table;
+
+        this.lanes = new ArrayList<>(spec.lanes);
+        for (int lane = 0; lane < spec.lanes; ++lane) {
+            ObjectiveSpec[] objectiveSpecs = mTable.laneObjectives[lane];
+            ArrayList<Objective> objectives = new ArrayList<>(objectiveSpecs.length);
+            for (ObjectiveSpec objectiveSpec : objectiveSpecs) {
+                objectives.add(new Objective(objectiveSpec, null, objectiveSpec.position));
+            }
+            this.lanes.add(new Lane(objectives, mTable.unitSpecs, lane));
+        }
+    }
+
+    // Basic utilities
+
+    int nextId() {
+        return mNextId;
+    }
+
+    void setNextId(int nextId) {
+        mNextId = nextId;
+    }
+
+    Player player(Owner owner) {
+        return mPlayers.get(owner.ordinal());
+    }
+
+    /**
+     * @return the amount of "perSecond" accrued over the current tick
+     */
+    private int scale(int perSecond) {
+        if (mDtMicros < 0) {
+            return (int) (mDt * perSecond);
+        }
+        return (int) (((long) perSecond * mDtMicros) / MICROS_PER_SECOND);
+    }
+
+    private int height(Lane lane, int index) {
+        return mTable.height[lane.specIndex[index]];
+    }
+
+    private static boolean isEnemy(Lane lane, int a, Lane otherLane, int b) {
+        return ((lane.flags[a] ^ otherLane.flags[b]) & ENEMY_FLAG) != 0;
+    }
+
+    private static int direction(Lane lane, int index) {
+        return (lane.flags[index] & ENEMY_FLAG) == 0 ? 1 : -1;
+    }
+
+    private static boolean isOverlapping(int positionA, int heightA, int positionB, int heightB) {
+        return (positionA < positionB + heightB
+                && positionB < positionA + heightA);
+    }
+
+    private boolean isOverlapping(Lane laneA, int a, Lane laneB, int b) {
+        return isOverlapping(laneA.position[a], height(laneA, a),
+                laneB.position[b], height(laneB, b));
+    }
+
+    void checkInvariants() {
+        if (Utility.checksEnabled()) {
+            check(lanes.size() == spec.lanes, "wrong number of lanes");
+            check(mPlayers.get(0) != mPlayers.get(1), "duplicate player");
+            for (int laneIndex = 0; laneIndex < lanes.size(); ++laneIndex) {
+                Lane lane = lanes.get(laneIndex);
+                for (int i = 0; i < lane.size - 1; ++i) {
+                    check(lane.position[i] < lane.position[i + 1], "mis-ordered lanes");
+                    check(!isOverlapping(lane, i, lane, i + 1), "overlapping units");
+                }
+                check(lane.hash == lane.computeHash(), "stale lane hash");
+            }
+        }
+    }
+
+    // API subfunctions
+
+    private void place(Owner owner, Placement placement) {
+        if (placement != null) {
+            place(owner, mTable.unitIndex(placement.unit), placement.lane);
+        }
+    }
+
+    private void place(Owner owner, Placements placements) {
+        if (placements != null) {
+            for (int i = 0; i < placements.mSize; ++i) {
+                int packed = placements.mPacked[i];
+                place(owner, Placements.unitIndex(packed), Placements.lane(packed));
+            }
+        }
+    }
+
+    private void place(Owner owner, int unitIndex, int laneIndex) {
+        if (laneIndex < 0 || this.lanes.size() <= laneIndex) {
+            throw new IllegalArgumentException("Bad lane assignment - no lane: " + laneIndex);
+        }
+        if (unitIndex < 0 || mTable.units <= unitIndex) {
+            throw new IllegalArgumentException("Bad unit assignment - no unit: " + unitIndex);
+        }
+        Lane lane = this.lanes.get(laneIndex);
+        int cost = mTable.cost[unitIndex];
+        int height = mTable.height[unitIndex];
+        if (cost <= player(owner).balance) {
+            int position, index, encumbent;
+            if (owner == Owner.FRIENDLY) {
+                position = 0;
+                index = 0;
+                encumbent = 0;
+            } else {
+                position = this.spec.length - 1 - height;
+                index = lane.size;
+                encumbent = lane.size - 1;
+            }
+            int id = mNextId++;
+            if (lane.size == 0 || !isOverlapping(lane.position[encumbent],
+                    height(lane, encumbent), position, height)) {
+                lane.insert(index, unitIndex, id, owner.flag(), position,
+                        mTable.health[unitIndex]);
+                player(owner).balance -= cost;
+                ++lane.metricCounts[TickMetrics.Counter.PLACED.ordinal()];
+            }
+        }
+    }
+
+    /**
+     * Update objective owners, by merging the (sorted) objectives with the (sorted) units.
+     */
+    private void doCapture(Lane lane) {
+        int n = lane.objectives.size();
+        if (n == 0) {
+            return;
+        }
+        // Objectives are sorted by position, but will be reversed if the game has been inverted
+        boolean ascending = lane.objectives.get(0).spec.position
+                <= lane.objectives.get(n - 1).spec.position;
+        int unit = 0;
+        for (int k = 0; k < n; ++k) {
+            int index = ascending ? k : n - 1 - k;
+            Objective objective = lane.objectives.get(index);
+            int position = objective.spec.position;
+            // Skip units that end below the objective (as units don't overlap, their ends are sorted)
+            while (unit < lane.size
+                    && lane.position[unit] + height(lane, unit) <= position) {
+                ++unit;
+            }
+            if (unit < lane.size && lane.position[unit] <= position) {
+                Owner owner = Owner.fromFlags(lane.flags[unit]);
+                if (objective.owner != owner) {
+                    objective.owner = owner; // captured!
+                    lane.bump();
+                    if (lane.captures != null) {
+                        lane.captures.add(index, owner, this.time);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addIncome(Lane lane) {
+        doCapture(lane);
+        for (int k = 0; k < lane.objectives.size(); ++k) {
+            Objective objective = lane.objectives.get(k);
+            if (objective.owner != null) {
+                lane.balanceDelta[objective.owner.ordinal()] += scale(objective.spec.income);
+            }
+        }
+    }
+
+    /**
+     * Find the closest enemy unit that each unit can attack, setting lane.target[i] to its index,
+     * or -1 if none is in range.
+     * <p>
+     * As units are sorted by position & don't overlap, the closest enemy must be either the nearest
+     * enemy below or the nearest enemy above, so we can track both in a single sweep.
+     */
+    void findTargets(Lane lane) {
+        int[] target = lane.target;
+        int below = -1;      // last unit seen of the opposite owner to "previous" (the unit below)
+        int previous = -1;   // the unit below
+        int nextFriendly = 0, nextEnemy = 0;
+        for (int i = 0; i < lane.size; ++i) {
+            boolean enemy = (lane.flags[i] & ENEMY_FLAG) != 0;
+            // Nearest opposing unit below
+            if (previous != -1 && isEnemy(lane, previous, lane, i)) {
+                below = previous;
+            }
+            previous = i;
+            // Nearest opposing unit above
+            int above;
+            if (enemy) {
+                nextFriendly = Math.max(nextFriendly, i + 1);
+                while (nextFriendly < lane.size && (lane.flags[nextFriendly] & ENEMY_FLAG) != 0) {
+                    ++nextFriendly;
+                }
+                above = nextFriendly;
+            } else {
+                nextEnemy = Math.max(nextEnemy, i + 1);
+                while (nextEnemy < lane.size && (lane.flags[nextEnemy] & ENEMY_FLAG) == 0) {
+                    ++nextEnemy;
+                }
+                above = nextEnemy;
+            }
+
+            int position = lane.position[i];
+            int unitIndex = lane.specIndex[i];
+            int closest = -1;
+            int closestDistance = Integer.MAX_VALUE;
+            if (below != -1) {
+                closest = below;
+                closestDistance = position - lane.position[below] - height(lane, below);
+                Utility.check(0 <= closestDistance, "bad distance calculation");
+            }
+            if (above < lane.size) {
+                int distance = lane.position[above] - position - mTable.height[unitIndex];
+                Utility.check(0 <= distance, "bad distance calculation");
+                // (on a tie, prefer the lower unit)
+                if (distance < closestDistance) {
+                    closest = above;
+                    closestDistance = distance;
+                }
+            }
+            target[i] = closestDistance <= mTable.range[unitIndex] ? closest : -1;
+        }
+    }
+
+    private void doCombat(Lane lane) {
+        // Pass 1: compute damage (into the lane's scratch buffer, by unit index)
+        findTargets(lane);
+        int[] damage = lane.damage;
+        Arrays.fill(damage, 0, lane.size, 0);
+        boolean changed = false;
+        for (int i = 0; i < lane.size; ++i) {
+            int enemy = lane.target[i];
+            byte flags = lane.flags[i];
+            if (enemy != -1) {
+                lane.flags[i] |= COMBAT_FLAG;
+                int unitIndex = lane.specIndex[i];
+                damage[enemy] += scale(Math.max(mTable.minAttack[unitIndex],
+                        (mTable.attack[unitIndex] * lane.health[i]) / mTable.health[unitIndex]));
+            } else {
+                lane.flags[i] &= ~COMBAT_FLAG;
+            }
+            changed |= lane.flags[i] != flags;
+        }
+        // Pass 2: reduce health & remove units
+        int alive = 0;
+        for (int i = 0; i < lane.size; ++i) {
+            if (damage[i] != 0) {
+                changed = true;
+                lane.hash ^= lane.unitHash(i);
+                lane.health[i] -= damage[i];
+                if (0 < lane.health[i]) {
+                    lane.hash ^= lane.unitHash(i);
+                } else {
+                    ++lane.metricCounts[TickMetrics.Counter.KILLED.ordinal()];
+                }
+            }
+            if (damage[i] == 0 || 0 < lane.health[i]) {
+                lane.move(i, alive++);
+            }
+        }
+        lane.size = alive;
+        if (changed) {
+            lane.bump();
+        }
+    }
+
+    private boolean isFlanking(Lane lane, int index) {
+        if (mTable.swapLanes[lane.specIndex[index]]) {
+            int prev = index - direction(lane, index);
+            return 0 <= prev && prev < lane.size && isEnemy(lane, index, lane, prev);
+        }
+        return false;
+    }
+
+    /**
+     * @return the index to insert unit "index" into lane "adjacent" in order to flank, or -1
+     */
+    private int getFlank(Lane lane, int index, Lane adjacent) {
+        if (adjacent == null) {
+            return -1;
+        }
+        for (int other = 0; other < adjacent.size; ++other) {
+            if (isOverlapping(lane, index, adjacent, other)) {
+                return -1;
+            }
+        }
+        int d = direction(lane, index);
+        int position = lane.position[index] * d;
+        for (int other = (d == 1 ? 0 : adjacent.size - 1);
+             0 <= other && other < adjacent.size;
+             other += d) {
+            int next = other + d;
+            // Test if we've found the gap
+            if (adjacent.position[other] * d < position
+                    && (next < 0 || adjacent.size <= next || position < adjacent.position[next] * d)) {
+                return isEnemy(lane, index, adjacent, other) ? other + Math.max(d, 0) : -1;
+            }
+        }
+        return -1;
+    }
+
+    private static void moveUnit(Lane src, int srcIndex, Lane dest, int destIndex) {
+        dest.insert(destIndex, src.specIndex[srcIndex], src.id[srcIndex], src.flags[srcIndex],
+                src.position[srcIndex], src.health[srcIndex]);
+        src.remove(srcIndex);
+    }
+
+    private void doSwapLanes(Owner owner) {
+        int d = owner.direction();
+        for (int laneIndex = 0; laneIndex < this.lanes.size(); ++laneIndex) {
+            Lane previous = getOrNull(this.lanes, laneIndex - 1);
+            Lane current = this.lanes.get(laneIndex);
+            Lane next = getOrNull(this.lanes, laneIndex + 1);
+
+            // In nearest-to-furthest (forward) order
+            for (int i = (d == 1 ? 0 : current.size - 1); 0 <= i && i < current.size; ) {
+                boolean removed = false;
+                if (Owner.fromFlags(current.flags[i]) == owner
+                        && mTable.swapLanes[current.specIndex[i]]
+                        && (current.flags[i] & COMBAT_FLAG) == 0
+                        && !isFlanking(current, i)) {
+                    int flank = getFlank(current, i, previous);
+                    if (flank != -1) {
+                        moveUnit(current, i, previous, flank);
+                        removed = true;
+                    } else {
+                        flank = getFlank(current, i, next);
+                        if (flank != -1) {
+                            moveUnit(current, i, next, flank);
+                            removed = true;
+                        }
+                    }
+                    if (removed) {
+                        ++current.metricCounts[TickMetrics.Counter.FLANKED.ordinal()];
+                    }
+                }
+                // If we're going forwards & removed a unit, stay put in order not to skip the next
+                if (!removed || d < 0) {
+                    i += d;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the unit was removed
+     */
+    private boolean doRefund(Lane lane, int index) {
+        int unitIndex = lane.specIndex[index];
+        if (lane.position[index] < 0
+                || this.spec.length < lane.position[index] + mTable.height[unitIndex]) {
+            int refund = (mTable.cost[unitIndex] * lane.health[index]) / mTable.health[unitIndex];
+            lane.balanceDelta[Owner.fromFlags(lane.flags[index]).ordinal()] += refund;
+            lane.remove(index);
+            ++lane.metricCounts[TickMetrics.Counter.REFUNDED.ordinal()];
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the index of the unit that "index" collided with, or -1
+     */
+    private int doCollision(Lane lane, int index, int direction) {
+        int next = index + direction;
+        if (0 <= next && next < lane.size) {
+            int height = height(lane, index);
+            if (direction == 1 && lane.position[next] < lane.position[index] + height) {
+                lane.position[index] = lane.position[next] - height;
+                return next;
+            }
+            int nextHeight = height(lane, next);
+            if (direction == -1 && lane.position[index] < lane.position[next] + nextHeight) {
+                lane.position[index] = lane.position[next] + nextHeight;
+                return next;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the unit was removed
+     */
+    private boolean doUnitMovement(Lane lane, int index) {
+        int unitIndex = lane.specIndex[index];
+        int dx = scale(mTable.speed[unitIndex]);
+        int direction = direction(lane, index);
+        if (isFlanking(lane, index)) {
+            direction *= -1;
+        }
+        int from = lane.position[index];
+        lane.position[index] += direction * dx;
+        int next = doCollision(lane, index, direction);
+        if (lane.position[index] != from) { // (units queueing behind others don't move)
+            lane.hash ^= lane.unitHash(index, from) ^ lane.unitHash(index);
+        }
+
+        if (next != -1
+                && !isEnemy(lane, index, lane, next)
+                && lane.specIndex[index] == lane.specIndex[next]
+                && mTable.merge[unitIndex]) {
+            lane.hash ^= lane.unitHash(next);
+            lane.health[next] += lane.health[index];
+            lane.hash ^= lane.unitHash(next);
+            lane.remove(index);
+            ++lane.metricCounts[TickMetrics.Counter.MERGED.ordinal()];
+            return true;
+        } else {
+            return doRefund(lane, index);
+        }
+    }
+
+    private void doMovement(Lane lane, Owner owner) {
+        // In furthest-to-nearest (reverse) order
+        int d = -owner.direction();
+        boolean moved = false;
+        for (int i = (d == 1 ? 0 : lane.size - 1); 0 <= i && i < lane.size; ) {
+            boolean removed = false;
+            if (Owner.fromFlags(lane.flags[i]) == owner
+                    && (lane.flags[i] & COMBAT_FLAG) == 0) {
+                int from = lane.position[i];
+                removed = doUnitMovement(lane, i);
+                // (removing a unit bumps the version already)
+                moved |= !removed && lane.position[i] != from;
+            }
+            // If we're going forwards & removed a unit, stay put in order not to skip the next
+            if (!removed || d < 0) {
+                i += d;
+            }
+        }
+        if (moved) {
+            lane.bump();
+        }
+    }
+
+    // Phases of the tick that only touch a single lane (so lanes can be run in parallel)
+    private static final int PHASE_COMBAT = 0;
+    private static final int PHASE_MOVEMENT = 1;
+
+    private void doLanePhase(int phase, Lane lane) {
+        long start = mTiming ? System.nanoTime() : 0;
+        if (phase == PHASE_COMBAT) {
+            addIncome(lane);
+            start = endLanePhase(lane, TickMetrics.Phase.INCOME, start);
+            doCombat(lane);
+            endLanePhase(lane, TickMetrics.Phase.COMBAT, start);
+        } else {
+            doMovement(lane, Owner.FRIENDLY);
+            doMovement(lane, Owner.ENEMY);
+            endLanePhase(lane, TickMetrics.Phase.MOVEMENT, start);
+        }
+    }
+
+    /**
+     * Runs a lane phase over a range of lanes, splitting the range across the pool.
+     */
+    @SuppressWarnings("serial") // (never serialized)
+    private class LaneTask extends RecursiveAction {
+        private final int mPhase;
+        private final int mBegin, mEnd;
+        private final int mGrain;
+        LaneTask(int phase, int begin, int end, int grain) {
+            mPhase = phase;
+            mBegin = begin;
+            mEnd = end;
+            mGrain = grain;
+        }
+        @Override
+        protected void compute() {
+            if (mEnd - mBegin <= mGrain) {
+                for (int i = mBegin; i < mEnd; ++i) {
+                    doLanePhase(mPhase, lanes.get(i));
+                }
+            } else {
+                int middle = (mBegin + mEnd) >>> 1;
+                invokeAll(new LaneTask(mPhase, mBegin, middle, mGrain),
+                        new LaneTask(mPhase, middle, mEnd, mGrain));
+            }
+        }
+    }
+
+    private void forEachLane(int phase) {
+        int n = this.lanes.size();
+        if (mPool != null && 1 < n) {
+            // Aim for a few tasks per worker, for load balancing
+            int grain = Math.max(1, n / (4 * mPool.getParallelism()));
+            mPool.invoke(new LaneTask(phase, 0, n, grain));
+        } else {
+            for (int i = 0; i < n; ++i) {
+                doLanePhase(phase, this.lanes.get(i));
+            }
+        }
+    }
+
+    // Event-driven advance (see advanceUntil)
+    //
+    // A tick is "quiet" if nothing happens but units moving at their speed & income accruing: no
+    // combat, captures, lane swaps, collisions or refunds. While ticks are quiet, every unit moves
+    // a fixed distance per tick, so each check the tick makes is a linear function of the number of
+    // ticks from now, "t", of the form "c + t * s > 0", and we can solve for the first tick at which
+    // any check changes.
+
+    private static final int MIN_QUIET_BACKOFF = 4; // ticks
+    private static final int MAX_QUIET_BACKOFF = 32;
+
+    /**
+     * @return the number of ticks from now (up to "limit") for which "c + t * s > 0" keeps its
+     * current truth value
+     */
+    private static long stableTicks(long c, long s, long limit) {
+        long ticks;
+        if (0 < c) {
+            ticks = s < 0 ? (c - s - 1) / -s : limit;
+        } else {
+            ticks = 0 < s ? -c / s + 1 : limit;
+        }
+        return Math.min(ticks, limit);
+    }
+
+    /**
+     * @return the number of ticks from now (up to "limit") for which "c + t * s > 0" is true
+     */
+    private static long trueTicks(long c, long s, long limit) {
+        return c <= 0 ? 0 : stableTicks(c, s, limit);
+    }
+
+    /**
+     * Set lane.velocity to each unit's movement per quiet tick.
+     */
+    private void setVelocities(Lane lane) {
+        for (int i = 0; i < lane.size; ++i) {
+            int direction = isFlanking(lane, i) ? -direction(lane, i) : direction(lane, i);
+            lane.velocity[i] = direction * scale(mTable.speed[lane.specIndex[i]]);
+        }
+    }
+
+    /**
+     * @return the number of ticks for which "unit" can't swap into lane "adjacent", as it stays
+     * where getFlank fails
+     */
+    private long quietFlankTicks(Lane lane, int unit, @Nullable Lane adjacent, long limit) {
+        if (adjacent == null) {
+            return limit;
+        }
+        if (getFlank(lane, unit, adjacent) != -1) {
+            return 0;
+        }
+        // getFlank only depends on which units overlap "unit", and which are behind it
+        int d = direction(lane, unit);
+        int position = lane.position[unit];
+        int height = height(lane, unit);
+        int velocity = lane.velocity[unit];
+        for (int other = 0; other < adjacent.size && limit != 0; ++other) {
+            long dp = (long) adjacent.position[other] - position;
+            long dv = (long) adjacent.velocity[other] - velocity;
+            limit = stableTicks(dp + height(adjacent, other), dv, limit);
+            limit = stableTicks(height - dp, -dv, limit);
+            limit = stableTicks(-dp * d, -dv * d, limit);
+        }
+        return limit;
+    }
+
+    /**
+     * @return the number of quiet ticks from now, up to "limit" (using the current timestep)
+     */
+    private long quietTicks(long limit) {
+        for (int laneIndex = 0; laneIndex < this.lanes.size(); ++laneIndex) {
+            Lane lane = this.lanes.get(laneIndex);
+            for (int i = 0; i < lane.size; ++i) {
+                if ((lane.flags[i] & COMBAT_FLAG) != 0) {
+                    // Fighting last tick, so (almost always) still fighting - a cheap early out
+                    return 0;
+                }
+            }
+            setVelocities(lane);
+        }
+        for (int laneIndex = 0; laneIndex < this.lanes.size() && limit != 0; ++laneIndex) {
+            Lane lane = this.lanes.get(laneIndex);
+            int[] position = lane.position;
+            int[] velocity = lane.velocity;
+            // Combat - the nearest enemies below & above each unit stay out of its range (see
+            // findTargets)
+            int belowFriendly = -1, belowEnemy = -1;
+            for (int i = 0; i < lane.size; ++i) {
+                int below = (lane.flags[i] & ENEMY_FLAG) == 0 ? belowEnemy : belowFriendly;
+                if (below != -1) {
+                    limit = trueTicks((long) position[i] - position[below] - height(lane, below)
+                                    - mTable.range[lane.specIndex[i]],
+                            velocity[i] - velocity[below], limit);
+                }
+                if ((lane.flags[i] & ENEMY_FLAG) == 0) {
+                    belowFriendly = i;
+                } else {
+                    belowEnemy = i;
+                }
+            }
+            int aboveFriendly = -1, aboveEnemy = -1;
+            for (int i = lane.size - 1; 0 <= i; --i) {
+                int above = (lane.flags[i] & ENEMY_FLAG) == 0 ? aboveEnemy : aboveFriendly;
+                if (above != -1) {
+                    limit = trueTicks((long) position[above] - position[i] - height(lane, i)
+                                    - mTable.range[lane.specIndex[i]],
+                            velocity[above] - velocity[i], limit);
+                }
+                if ((lane.flags[i] & ENEMY_FLAG) == 0) {
+                    aboveFriendly = i;
+                } else {
+                    aboveEnemy = i;
+                }
+            }
+            // Movement - no collisions (in the order that doMovement moves units: all friendly
+            // units from the top down, then all enemy units from the bottom up), or refunds
+            for (int i = 0; i < lane.size; ++i) {
+                int v = velocity[i];
+                int height = height(lane, i);
+                limit = trueTicks((long) position[i] + v + 1, v, limit);
+                limit = trueTicks((long) this.spec.length - position[i] - height - v + 1, -v, limit);
+                if (i + 1 < lane.size) {
+                    int next = velocity[i + 1];
+                    long gap = (long) position[i + 1] - position[i] - height;
+                    boolean friendly = (lane.flags[i] & ENEMY_FLAG) == 0;
+                    boolean nextFriendly = (lane.flags[i + 1] & ENEMY_FLAG) == 0;
+                    boolean nextFirst = friendly == nextFriendly ? friendly : nextFriendly;
+                    if (0 < v) {
+                        limit = trueTicks(gap + (nextFirst ? next : 0) - v + 1, next - v, limit);
+                    }
+                    if (next < 0) {
+                        limit = trueTicks(gap + (nextFirst ? 0 : -v) + next + 1, next - v, limit);
+                    }
+                }
+            }
+            // Captures - no unit covers an objective it doesn't own (see doCapture)
+            for (int k = 0; k < lane.objectives.size(); ++k) {
+                Objective objective = lane.objectives.get(k);
+                int objectivePosition = objective.spec.position;
+                for (int i = 0; i < lane.size && limit != 0; ++i) {
+                    if (objective.owner != Owner.fromFlags(lane.flags[i])) {
+                        long below = (long) objectivePosition - position[i] + 1;
+                        long above = (long) position[i] + height(lane, i) - objectivePosition;
+                        if (0 < below && 0 < above) {
+                            return 0;
+                        }
+                        limit = stableTicks(below, -velocity[i], limit);
+                        limit = stableTicks(above, velocity[i], limit);
+                    }
+                }
+            }
+            // Lane swaps - none (see doSwapLanes)
+            Lane previous = getOrNull(this.lanes, laneIndex - 1);
+            Lane next = getOrNull(this.lanes, laneIndex + 1);
+            for (int i = 0; i < lane.size && limit != 0; ++i) {
+                if (mTable.swapLanes[lane.specIndex[i]] && !isFlanking(lane, i)) {
+                    limit = quietFlankTicks(lane, i, previous, limit);
+                    limit = quietFlankTicks(lane, i, next, limit);
+                }
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Run "ticks" quiet ticks at once (see quietTicks, which sets lane.velocity).
+     */
+    private void doQuietTicks(long ticks) {
+        int friendlyIncome = scale(this.spec.income);
+        int enemyIncome = friendlyIncome;
+        for (int laneIndex = 0; laneIndex < this.lanes.size(); ++laneIndex) {
+            Lane lane = this.lanes.get(laneIndex);
+            for (int k = 0; k < lane.objectives.size(); ++k) {
+                Objective objective = lane.objectives.get(k);
+                if (objective.owner == Owner.FRIENDLY) {
+                    friendlyIncome += scale(objective.spec.income);
+                } else if (objective.owner == Owner.ENEMY) {
+                    enemyIncome += scale(objective.spec.income);
+                }
+            }
+            boolean changed = false;
+            for (int i = 0; i < lane.size; ++i) {
+                changed |= lane.velocity[i] != 0 || (lane.flags[i] & COMBAT_FLAG) != 0;
+                lane.flags[i] &= ~COMBAT_FLAG;
+                lane.position[i] += (int) (ticks * lane.velocity[i]);
+            }
+            if (changed) {
+                lane.hash = lane.computeHash();
+                lane.bump();
+            }
+        }
+        // (as if added once per tick, including any overflow)
+        player(Owner.FRIENDLY).balance += (int) (ticks * friendlyIncome);
+        player(Owner.ENEMY).balance += (int) (ticks * enemyIncome);
+    }
+
+    private static void copyLane(Lane dest, Lane src) {
+        if (dest.version == src.version) {
+            return;
+        }
+        check(dest.objectives.size() == src.objectives.size(),
+                "Same spec => same number of objectives");
+        for (int i = 0; i < dest.objectives.size(); ++i) {
+            Objective destObjective = dest.objectives.get(i);
+            Objective srcObjective = src.objectives.get(i);
+            destObjective.spec = srcObjective.spec;
+            destObjective.position = srcObjective.position;
+            destObjective.owner = srcObjective.owner;
+        }
+        dest.copyFrom(src);
+        dest.hash = src.hash;
+        if (src.captures == null) {
+            dest.captures = null;
+        } else {
+            if (dest.captures == null || dest.captures.capacity() != src.captures.capacity()) {
+                dest.captures = new Captures(src.captures.capacity());
+            }
+            dest.captures.copyFrom(src.captures);
+        }
+        dest.version = src.version;
+    }
+
+    // Public API
+
+    /**
+     * Start recording objective captures in each lane (see Lane.captures), keeping up to
+     * "capacity" captures per lane.
+     */
+    public void recordCaptures(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capture log capacity must be positive");
+        }
+        for (int i = 0; i < this.lanes.size(); ++i) {
+            this.lanes.get(i).captures = new Captures(capacity);
+            this.lanes.get(i).bump();
+        }
+    }
+
+    /**
+     * @return the number of objectives currently held by "owner"
+     */
+    public int objectives(Owner owner) {
+        int count = 0;
+        for (int laneIndex = 0; laneIndex < this.lanes.size(); ++laneIndex) {
+            Lane lane = this.lanes.get(laneIndex);
+            for (int k = 0; k < lane.objectives.size(); ++k) {
+                if (lane.objectives.get(k).owner == owner) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the current income of "owner" per unit time, from the base income & objectives held
+     */
+    public int income(Owner owner) {
+        int income = this.spec.income;
+        for (int laneIndex = 0; laneIndex < this.lanes.size(); ++laneIndex) {
+            Lane lane = this.lanes.get(laneIndex);
+            for (int k = 0; k < lane.objectives.size(); ++k) {
+                Objective objective = lane.objectives.get(k);
+                if (objective.owner == owner) {
+                    income += objective.spec.income;
+                }
+            }
+        }
+        return income;
+    }
+
+    /**
+     * A 64-bit hash of the game state (units, objectives & balances, but not the time or unit
+     * ids), so that games which have reached the same state hash equal, e.g. for a
+     * TranspositionTable.
+     * <p>
+     * This is cheap - each lane keeps the hash of its units up to date incrementally, as they
+     * change.
+     */
+    public long hash() {
+        long hash = mix(HASH_BALANCE * player(Owner.FRIENDLY).balance
+                + player(Owner.ENEMY).balance);
+        for (int laneIndex = 0; laneIndex < this.lanes.size(); ++laneIndex) {
+            Lane lane = this.lanes.get(laneIndex);
+            hash ^= lane.hash ^ lane.objectivesHash();
+        }
+        return hash;
+    }
+
+    /**
+     * @return hash(), computed from scratch (for testing the incremental version)
+     */
+    long recomputeHash() {
+        long hash = mix(HASH_BALANCE * player(Owner.FRIENDLY).balance
+                + player(Owner.ENEMY).balance);
+        for (int laneIndex = 0; laneIndex < this.lanes.size(); ++laneIndex) {
+            Lane lane = this.lanes.get(laneIndex);
+            hash ^= lane.computeHash() ^ lane.objectivesHash();
+        }
+        return hash;
+    }
+
+    /**
+     * Invert the simulation, so that the enemy becomes the friendly & the top of the map becomes
+     * the bottom.
+     */
+    public void invert() {
+        Collections.reverse(this.lanes);
+        for (int laneIndex = 0; laneIndex < this.lanes.size(); ++laneIndex) {
+            Lane lane = this.lanes.get(laneIndex);
+            Collections.reverse(lane.objectives);
+            for (int i = 0; i < lane.objectives.size(); ++i) {
+                Objective objective = lane.objectives.get(i);
+                objective.owner = objective.owner == null ? null : objective.owner.flip();
+                objective.position = this.spec.length - 1 - objective.position;
+            }
+            if (lane.captures != null) {
+                lane.captures.invert(lane.objectives.size());
+            }
+            lane.reverse();
+            for (int i = 0; i < lane.size; ++i) {
+                lane.flags[i] ^= ENEMY_FLAG;
+                lane.position[i] = this.spec.length - 1 - lane.position[i] - height(lane, i);
+            }
+            lane.rehash(laneIndex);
+            lane.bump();
+        }
+        Collections.reverse(mPlayers);
+        checkInvariants();
+    }
+
+    /**
+     * Deep copy the state from "game" into the current game.
+     *
+     * Both games must have been created from the same spec. Lanes which haven't changed since they
+     * were last copied (see Lane.version) are skipped, so repeatedly copying from the same game is
+     * cheap when most lanes are quiet.
+     */
+    public void copyFrom(Game game) {
+        if (this.spec != game.spec) {
+            throw new IllegalArgumentException(
+                    "Cannot copyFrom a game which has a different spec");
+        }
+        // As the spec is the same, we don't need to sync {.spec, .mTable}
+        this.time = game.time;
+        this.timeMicros = game.timeMicros;
+        this.mPlayers.get(0).balance = game.mPlayers.get(0).balance;
+        this.mPlayers.get(1).balance = game.mPlayers.get(1).balance;
+        check(this.lanes.size() == game.lanes.size(),
+                "Same spec => same number of lanes");
+        for (int i = 0; i < this.lanes.size(); ++i) {
+            copyLane(this.lanes.get(i), game.lanes.get(i));
+        }
+        checkInvariants();
+    }
+
+    /**
+     * Run everything in a tick after the placements.
+     */
+    private void doTick() {
+        int baseIncome = scale(this.spec.income);
+        player(Owner.FRIENDLY).balance += baseIncome;
+        player(Owner.ENEMY).balance += baseIncome;
+        forEachLane(PHASE_COMBAT);
+        // Units move between lanes, so this is a serial step
+        restartPhase();
+        doSwapLanes(Owner.FRIENDLY);
+        doSwapLanes(Owner.ENEMY);
+        endPhase(TickMetrics.Phase.SWAP_LANES);
+        forEachLane(PHASE_MOVEMENT);
+        // Nothing reads the balances during the lane phases, so we can add up the changes now
+        for (int i = 0; i < this.lanes.size(); ++i) {
+            int[] delta = this.lanes.get(i).balanceDelta;
+            player(Owner.FRIENDLY).balance += delta[Owner.FRIENDLY.ordinal()];
+            player(Owner.ENEMY).balance += delta[Owner.ENEMY.ordinal()];
+            delta[0] = 0;
+            delta[1] = 0;
+        }
+        if (mMetrics != null) {
+            endTick(mMetrics);
+        }
+    }
+
+    // Instrumentation (see setMetrics)
+
+    private void beginTick() {
+        mTiming = mMetrics != null && mMetrics.sample();
+        if (mTiming) {
+            mTickStartNanos = System.nanoTime();
+            mPhaseStartNanos = mTickStartNanos;
+        }
+    }
+
+    private void restartPhase() {
+        if (mTiming) {
+            mPhaseStartNanos = System.nanoTime();
+        }
+    }
+
+    private void endPhase(TickMetrics.Phase phase) {
+        if (mTiming) {
+            long now = System.nanoTime();
+            mMetrics.record(phase, now - mPhaseStartNanos);
+            mPhaseStartNanos = now;
+        }
+    }
+
+    /**
+     * Add the time since "start" to "phase" in lane.metricNanos, if this tick is being timed.
+     *
+     * @return the current time (if timing)
+     */
+    private long endLanePhase(Lane lane, TickMetrics.Phase phase, long start) {
+        if (mTiming) {
+            long now = System.nanoTime();
+            lane.metricNanos[phase.ordinal()] += now - start;
+            return now;
+        }
+        return 0;
+    }
+
+    /**
+     * Add up the lanes' metrics for this tick (like Lane.balanceDelta).
+     */
+    private void endTick(TickMetrics metrics) {
+        long income = 0, combat = 0, movement = 0;
+        for (int i = 0; i < this.lanes.size(); ++i) {
+            Lane lane = this.lanes.get(i);
+            for (int k = 0; k < lane.metricCounts.length; ++k) {
+                if (lane.metricCounts[k] != 0) {
+                    metrics.add(TickMetrics.COUNTERS[k], lane.metricCounts[k]);
+                    lane.metricCounts[k] = 0;
+                }
+            }
+            if (mTiming) {
+                income += lane.metricNanos[TickMetrics.Phase.INCOME.ordinal()];
+                combat += lane.metricNanos[TickMetrics.Phase.COMBAT.ordinal()];
+                movement += lane.metricNanos[TickMetrics.Phase.MOVEMENT.ordinal()];
+                Arrays.fill(lane.metricNanos, 0);
+            }
+        }
+        if (mTiming) {
+            metrics.record(TickMetrics.Phase.INCOME, income);
+            metrics.record(TickMetrics.Phase.COMBAT, combat);
+            metrics.record(TickMetrics.Phase.MOVEMENT, movement);
+            metrics.record(TickMetrics.Phase.TICK, System.nanoTime() - mTickStartNanos);
+        }
+    }
+
+    /**
+     * Run the lane-local parts of each tick (combat, movement, captures & income) in parallel on
+     * "pool", or serially if null.
+     * <p>
+     * The results are identical to serial execution, as lanes only interact in serial steps (unit
+     * placement & swapping lanes), and each lane's balance changes are summed afterwards. This is
+     * only worthwhile for games with many lanes.
+     */
+    public void setPool(@Nullable ForkJoinPool pool) {
+        mPool = pool;
+    }
+
+    /**
+     * Record metrics of each tick (see TickMetrics) into "metrics" from now on, or stop recording
+     * if null. This slows ticks down slightly (mostly on the ticks that are timed).
+     * <p>
+     * The quiet stretches that advanceUntil skips aren't ticked, so aren't recorded. The metrics
+     * aren't part of the game state, so aren't copied by copyFrom.
+     */
+    public void setMetrics(@Nullable TickMetrics metrics) {
+        mMetrics = metrics;
+        for (int i = 0; i < this.lanes.size(); ++i) {
+            // Drop anything counted while we weren't recording
+            Arrays.fill(this.lanes.get(i).metricCounts, 0);
+            Arrays.fill(this.lanes.get(i).metricNanos, 0);
+        }
+    }
+
+    @Nullable
+    public TickMetrics metrics() {
+        return mMetrics;
+    }
+
+    private void setTimestep(float dt) {
+        mDt = dt;
+        mDtMicros = -1;
+    }
+
+    private void advance(float dt) {
+        this.time += dt;
+        this.timeMicros += Math.round(dt * MICROS_PER_SECOND);
+        checkInvariants();
+    }
+
+    private void setTimestepMicros(int dtMicros) {
+        if (dtMicros < 0) {
+            throw new IllegalArgumentException("Negative timestep: " + dtMicros);
+        }
+        mDtMicros = dtMicros;
+    }
+
+    private void advanceMicros(int dtMicros) {
+        this.timeMicros += dtMicros;
+        this.time = this.timeMicros / (float) MICROS_PER_SECOND;
+        checkInvariants();
+    }
+
+    /**
+     * Advance the simulation by a single timestep of "dt" seconds.
+     *
+     * The simulation is not guaranteed to be fair. If fairness is required, we recommend inverting
+     * the game as follows:
+     * <pre>{@code
+     * game.invert();
+     * game.tick(dt, friendly, enemy);
+     * game.invert();
+     * }</pre>
+     */
+    public void tick(float dt, @Nullable Placement friendly, @Nullable Placement enemy) {
+        setTimestep(dt);
+        beginTick();
+        place(Owner.FRIENDLY, friendly);
+        place(Owner.ENEMY, enemy);
+        endPhase(TickMetrics.Phase.PLACE);
+        doTick();
+        advance(dt);
+    }
+
+    /**
+     * Advance the simulation by a single timestep of "dtMicros" microseconds, using only integer
+     * arithmetic, so that the result is bit-exact on any JVM or device (see tick).
+     */
+    public void tickMicros(int dtMicros, @Nullable Placement friendly, @Nullable Placement enemy) {
+        setTimestepMicros(dtMicros);
+        beginTick();
+        place(Owner.FRIENDLY, friendly);
+        place(Owner.ENEMY, enemy);
+        endPhase(TickMetrics.Phase.PLACE);
+        doTick();
+        advanceMicros(dtMicros);
+    }
+
+    /**
+     * As tick, but making any number of placements for each player (all friendly placements are
+     * made first, in order). This doesn't allocate.
+     */
+    public void tickIndexed(float dt, @Nullable Placements friendly,
+                            @Nullable Placements enemy) {
+        setTimestep(dt);
+        beginTick();
+        place(Owner.FRIENDLY, friendly);
+        place(Owner.ENEMY, enemy);
+        endPhase(TickMetrics.Phase.PLACE);
+        doTick();
+        advance(dt);
+    }
+
+    /**
+     * Advance the simulation by ticks of "dtMicros" without placements, as long as the next tick
+     * ends by "untilMicros" (game time). The result is the same as calling
+     * tickMicros(dtMicros, null, null) that many times, but much faster when little is happening.
+     * <p>
+     * Between events (combat, captures, lane swaps, collisions & refunds), each unit just moves the
+     * same distance every tick, so the time to the next event can be calculated from the units'
+     * positions & speeds, and all the ticks until then are run in one step. Each tick with an event
+     * is run as usual.
+     *
+     * @return the number of ticks advanced
+     */
+    public long advanceUntil(long untilMicros, int dtMicros) {
+        if (dtMicros <= 0) {
+            throw new IllegalArgumentException("Timestep must be positive: " + dtMicros);
+        }
+        long ticks = 0;
+        // After a busy tick, wait a few ticks before looking for quiet ones again (backing off
+        // exponentially), as busy ticks come in runs & each failed quietTicks check is wasted
+        int wait = 0, backoff = MIN_QUIET_BACKOFF;
+        while (this.timeMicros <= untilMicros - dtMicros) {
+            if (0 < wait) {
+                tickMicros(dtMicros, null, null);
+                ++ticks;
+                --wait;
+                continue;
+            }
+            setTimestepMicros(dtMicros);
+            long quiet = quietTicks((untilMicros - this.timeMicros) / dtMicros);
+            if (quiet <= 1) {
+                tickMicros(dtMicros, null, null);
+                ++ticks;
+                wait = backoff;
+                backoff = Math.min(2 * backoff, MAX_QUIET_BACKOFF);
+            } else {
+                backoff = MIN_QUIET_BACKOFF;
+                doQuietTicks(quiet);
+                this.timeMicros += quiet * dtMicros;
+                this.time = this.timeMicros / (float) MICROS_PER_SECOND;
+                checkInvariants();
+                ticks += quiet;
+            }
+        }
+        return ticks;
+    }
+
+    /**
+     * As tickMicros, but making any number of placements for each player (see tickIndexed).
+     */
+    public void tickMicrosIndexed(int dtMicros, @Nullable Placements friendly,
+                                  @Nullable Placements enemy) {
+        setTimestepMicros(dtMicros);
+        beginTick();
+        place(Owner.FRIENDLY, friendly);
+        place(Owner.ENEMY, enemy);
+        endPhase(TickMetrics.Phase.PLACE);
+        doTick();
+        advanceMicros(dtMicros);
+    }
+}
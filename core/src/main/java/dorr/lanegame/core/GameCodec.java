@@ -0,0 +1,258 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of the state of a Game (for recording, checkpointing & sending games
+ * between processes).
+ * <p>
+ * The spec is not encoded - unit & objective specs are written as indices into the GameSpec, so a
+ * game must be read with a codec for the same spec it was written with. Capture logs
+ * (Lane.captures) are not encoded, and are left untouched by read().
+ * <p>
+ * Integers are written as (zigzag) varints, and unit positions are delta-encoded within each lane,
+ * so a typical unit takes 6-9 bytes. Neither write() nor read() allocates, except to grow a lane's
+ * storage when reading.
+ */
+public class GameCodec {
+    public static final int VERSION = 1;
+
+    // Upper bounds on encoded sizes, see maxSize()
+    private static final int MAX_VARINT = 5;
+    private static final int MAX_VARLONG = 10;
+    private static final int MAX_UNIT = 1 + 4 * MAX_VARINT;
+    private static final int MAX_OBJECTIVE = 1 + 2 * MAX_VARINT;
+
+    private static final int NO_OWNER = 0;
+
+    @NotNull public final Game.GameSpec spec;
+    private final Map<Game.ObjectiveSpec, Integer> mObjectiveIndex = new IdentityHashMap<>();
+
+    public GameCodec(@NotNull Game.GameSpec spec) {
+        this.spec = spec;
+        for (int i = 0; i < spec.objectives.size(); ++i) {
+            if (!mObjectiveIndex.containsKey(spec.objectives.get(i))) {
+                mObjectiveIndex.put(spec.objectives.get(i), i);
+            }
+        }
+    }
+
+    /**
+     * @return an upper bound on the number of bytes write(game) will take
+     */
+    public int maxSize(@NotNull Game game) {
+        int size = 3 * MAX_VARINT + MAX_VARLONG + 4 + 3 * MAX_VARINT;
+        for (int i = 0; i < game.lanes.size(); ++i) {
+            Game.Lane lane = game.lanes.get(i);
+            size += 2 * MAX_VARINT + lane.objectives.size() * MAX_OBJECTIVE + lane.size * MAX_UNIT;
+        }
+        return size;
+    }
+
+    /**
+     * Write the state of "game" at the current position of "out".
+     *
+     * @throws java.nio.BufferOverflowException if "out" doesn't have enough space (see maxSize)
+     */
+    public void write(@NotNull Game game, @NotNull ByteBuffer out) {
+        if (game.spec != this.spec) {
+            throw new IllegalArgumentException("Cannot write a game which has a different spec");
+        }
+        putVarint(out, VERSION);
+        putVarint(out, spec.lanes);
+        putVarint(out, spec.units.size());
+        putVarlong(out, game.timeMicros);
+        out.putInt(Float.floatToRawIntBits(game.time));
+        putVarint(out, game.nextId());
+        putSignedVarint(out, game.player(Game.Owner.FRIENDLY).balance);
+        putSignedVarint(out, game.player(Game.Owner.ENEMY).balance);
+        for (int laneIndex = 0; laneIndex < game.lanes.size(); ++laneIndex) {
+            Game.Lane lane = game.lanes.get(laneIndex);
+            putVarint(out, lane.objectives.size());
+            for (int i = 0; i < lane.objectives.size(); ++i) {
+                Game.Objective objective = lane.objectives.get(i);
+                Integer index = mObjectiveIndex.get(objective.spec);
+                if (index == null) {
+                    throw new IllegalArgumentException("Objective is not from the game's spec");
+                }
+                putVarint(out, index);
+                out.put((byte) (objective.owner == null ? NO_OWNER : 1 + objective.owner.ordinal()));
+                putSignedVarint(out, objective.position);
+            }
+            putVarint(out, lane.size);
+            int position = 0;
+            for (int i = 0; i < lane.size; ++i) {
+                putVarint(out, lane.specIndex[i]);
+                out.put(lane.flags[i]);
+                putVarint(out, lane.id[i]);
+                putSignedVarint(out, lane.position[i] - position);
+                putSignedVarint(out, lane.health[i]);
+                position = lane.position[i];
+            }
+        }
+    }
+
+    /**
+     * Read a state written by write() from the current position of "in", into "game" (which must
+     * have been created from this codec's spec).
+     * <p>
+     * The whole state is validated before "game" is changed, so if this throws, neither "game" nor
+     * the position of "in" has changed.
+     *
+     * @throws IllegalArgumentException if the data is corrupt, or was written for a different spec
+     */
+    public void read(@NotNull ByteBuffer in, @NotNull Game game) {
+        if (game.spec != this.spec) {
+            throw new IllegalArgumentException("Cannot read into a game which has a different spec");
+        }
+        int start = in.position();
+        try {
+            // Validate, then rewind & read for real
+            readUnchecked(in, game, false);
+            in.position(start);
+            readUnchecked(in, game, true);
+        } catch (BufferUnderflowException e) {
+            in.position(start);
+            throw new IllegalArgumentException("Truncated game state", e);
+        } catch (IllegalArgumentException e) {
+            in.position(start);
+            throw e;
+        }
+        game.checkInvariants();
+    }
+
+    /**
+     * Read a state, only changing "game" if "apply" (otherwise just validating it).
+     */
+    private void readUnchecked(ByteBuffer in, Game game, boolean apply) {
+        int version = getVarint(in);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported game state version " + version);
+        }
+        if (getVarint(in) != spec.lanes || getVarint(in) != spec.units.size()) {
+            throw new IllegalArgumentException("Game state was written for a different spec");
+        }
+        long timeMicros = getVarlong(in);
+        float time = Float.intBitsToFloat(in.getInt());
+        int nextId = getVarint(in);
+        int friendlyBalance = getSignedVarint(in);
+        int enemyBalance = getSignedVarint(in);
+        if (apply) {
+            game.timeMicros = timeMicros;
+            game.time = time;
+            game.setNextId(nextId);
+            game.player(Game.Owner.FRIENDLY).balance = friendlyBalance;
+            game.player(Game.Owner.ENEMY).balance = enemyBalance;
+        }
+        Game.Owner[] owners = Game.Owner.values();
+        for (int laneIndex = 0; laneIndex < game.lanes.size(); ++laneIndex) {
+            Game.Lane lane = game.lanes.get(laneIndex);
+            if (getVarint(in) != lane.objectives.size()) {
+                throw new IllegalArgumentException("Wrong number of objectives in lane " + laneIndex);
+            }
+            for (int i = 0; i < lane.objectives.size(); ++i) {
+                Game.Objective objective = lane.objectives.get(i);
+                int index = getVarint(in);
+                int owner = in.get();
+                if (index < 0 || spec.objectives.size() <= index
+                        || owner < NO_OWNER || owners.length < owner) {
+                    throw new IllegalArgumentException("Corrupt objective in lane " + laneIndex);
+                }
+                int position = getSignedVarint(in);
+                if (apply) {
+                    objective.spec = spec.objectives.get(index);
+                    objective.owner = owner == NO_OWNER ? null : owners[owner - 1];
+                    objective.position = position;
+                }
+            }
+            int size = getVarint(in);
+            if (size < 0) {
+                throw new IllegalArgumentException("Corrupt unit count in lane " + laneIndex);
+            }
+            if (apply) {
+                lane.bump();
+                lane.size = 0;
+            }
+            int position = 0;
+            long end = Long.MIN_VALUE; // the top of the previous unit
+            for (int i = 0; i < size; ++i) {
+                int specIndex = getVarint(in);
+                int flags = in.get();
+                if (specIndex < 0 || spec.units.size() <= specIndex
+                        || (flags & ~Game.ALL_FLAGS) != 0) {
+                    throw new IllegalArgumentException("Corrupt unit in lane " + laneIndex);
+                }
+                int id = getVarint(in);
+                position += getSignedVarint(in);
+                int health = getSignedVarint(in);
+                // Units are sorted by position, & don't overlap
+                if (position < end) {
+                    throw new IllegalArgumentException("Mis-ordered units in lane " + laneIndex);
+                }
+                end = (long) position + spec.table.height[specIndex];
+                if (apply) {
+                    lane.insert(i, specIndex, id, flags, position, health);
+                }
+            }
+            if (apply) {
+                lane.rehash(laneIndex);
+            }
+        }
+    }
+
+    // Varint encoding (LEB128, with zigzag for signed values)
+
+    static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static void putSignedVarint(ByteBuffer out, int value) {
+        putVarint(out, (value << 1) ^ (value >> 31));
+    }
+
+    static void putVarlong(ByteBuffer out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    static int getSignedVarint(ByteBuffer in) {
+        int value = getVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long getVarlong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
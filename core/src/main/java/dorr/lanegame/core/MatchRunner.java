@@ -0,0 +1,324 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays many independent, headless matches as fast as possible (i.e. without a Timer), spread
+ * over all cores.
+ * <p>
+ * Matches are ticked in integer (fixed-point) mode (see Game.tickMicros), so results are exactly
+ * reproducible. A match ends when one player holds every objective, or after "maxDuration". The
+ * winner is the player holding the most objectives at the end (or neither, if they hold the same
+ * number).
+ */
+public class MatchRunner {
+    /**
+     * Creates the agent for a single match - agents are never shared between matches, so they
+     * needn't be thread-safe.
+     */
+    public interface AgentFactory {
+        Agent create(Game.GameSpec spec, long seed);
+    }
+
+    public static final AgentFactory RANDOM_AGENT = new AgentFactory() {
+        @Override
+        public Agent create(Game.GameSpec spec, long seed) {
+            return new Agent.RandomAgent(spec, seed);
+        }
+    };
+
+    public static class Result {
+        @Nullable public final Game.Owner winner;
+        public final float duration;
+        public final int ticks;
+        /** Time-averaged income of each player (indexed by Owner.ordinal()) */
+        @NotNull public final float[] meanIncome;
+        Result(@Nullable Game.Owner winner, float duration, int ticks,
+               @NotNull float[] meanIncome) {
+            this.winner = winner;
+            this.duration = duration;
+            this.ticks = ticks;
+            this.meanIncome = meanIncome;
+        }
+    }
+
+    /**
+     * Aggregate statistics over a number of matches.
+     */
+    public static class Summary {
+        public final int matches;
+        @NotNull public final int[] wins; // indexed by Owner.ordinal()
+        public final int draws;
+        public final float minDuration;
+        public final float maxDuration;
+        private final double mTotalDuration;
+        private final long mTotalTicks;
+        private final double[] mTotalIncome;
+
+        private Summary(int matches, int[] wins, int draws, float minDuration, float maxDuration,
+                        double totalDuration, long totalTicks, double[] totalIncome) {
+            this.matches = matches;
+            this.wins = wins;
+            this.draws = draws;
+            this.minDuration = minDuration;
+            this.maxDuration = maxDuration;
+            mTotalDuration = totalDuration;
+            mTotalTicks = totalTicks;
+            mTotalIncome = totalIncome;
+        }
+        static Summary of(Result result) {
+            int[] wins = new int[2];
+            if (result.winner != null) {
+                wins[result.winner.ordinal()] = 1;
+            }
+            return new Summary(1, wins, result.winner == null ? 1 : 0,
+                    result.duration, result.duration, result.duration, result.ticks,
+                    new double[] { result.meanIncome[0], result.meanIncome[1] });
+        }
+        static Summary merge(Summary a, Summary b) {
+            return new Summary(
+                    a.matches + b.matches,
+                    new int[] { a.wins[0] + b.wins[0], a.wins[1] + b.wins[1] },
+                    a.draws + b.draws,
+                    Math.min(a.minDuration, b.minDuration),
+                    Math.max(a.maxDuration, b.maxDuration),
+                    a.mTotalDuration + b.mTotalDuration,
+                    a.mTotalTicks + b.mTotalTicks,
+                    new double[] {
+                            a.mTotalIncome[0] + b.mTotalIncome[0],
+                            a.mTotalIncome[1] + b.mTotalIncome[1] });
+        }
+        public int wins(Game.Owner owner) {
+            return wins[owner.ordinal()];
+        }
+        public float winRate(Game.Owner owner) {
+            return wins(owner) / (float) matches;
+        }
+        public float meanDuration() {
+            return (float) (mTotalDuration / matches);
+        }
+        public long totalTicks() {
+            return mTotalTicks;
+        }
+        /**
+         * @return the mean (over matches) of each match's time-averaged income for "owner"
+         */
+        public float meanIncome(Game.Owner owner) {
+            return (float) (mTotalIncome[owner.ordinal()] / matches);
+        }
+        @Override
+        public String toString() {
+            return String.format(
+                    "Summary(matches=%d, wins=%d/%d, draws=%d, duration=%.1f [%.1f, %.1f],"
+                            + " income=%.1f/%.1f)",
+                    matches, wins[0], wins[1], draws,
+                    meanDuration(), minDuration, maxDuration,
+                    meanIncome(Game.Owner.FRIENDLY), meanIncome(Game.Owner.ENEMY));
+        }
+    }
+
+    private final Game.GameSpec mSpec;
+    private final int mTimestepMicros;
+    private final long mMaxDurationMicros;
+    private final AgentFactory mFriendly;
+    private final AgentFactory mEnemy;
+    private final long mSpecHash;
+
+    public MatchRunner(@NotNull Game.GameSpec spec, float dt, float maxDuration,
+                       @NotNull AgentFactory friendly, @NotNull AgentFactory enemy) {
+        mSpec = spec;
+        mTimestepMicros = Math.round(dt * Game.MICROS_PER_SECOND);
+        mMaxDurationMicros = (long) Math.ceil((double) maxDuration * Game.MICROS_PER_SECOND);
+        mFriendly = friendly;
+        mEnemy = enemy;
+        mSpecHash = ResultStore.specHash(spec);
+    }
+
+    /**
+     * Where to store the results of a run, see ResultStore.
+     */
+    private static class Recording {
+        final ResultStore store;
+        final int first; // record index of match 0
+        final int friendlyId, enemyId;
+        Recording(ResultStore store, int first, int friendlyId, int enemyId) {
+            this.store = store;
+            this.first = first;
+            this.friendlyId = friendlyId;
+            this.enemyId = enemyId;
+        }
+    }
+
+    // A simple hash (from SplitMix64), to derive independent seeds for each match & agent
+    private static long mix(long seed, long index) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Play match number "index" of the run with the given seed, on the current thread.
+     */
+    public Result play(long seed, int index) {
+        return play(seed, index, null);
+    }
+
+    private void countPlacements(int[] placements, Game.Placements made, Game.Owner owner) {
+        for (int i = 0; i < made.size(); ++i) {
+            int unit = Game.Placements.unitIndex(made.get(i));
+            ++placements[owner.ordinal() * mSpec.units.size() + unit];
+        }
+    }
+
+    private Result play(long seed, int index, @Nullable Recording recording) {
+        Game game = new Game(mSpec);
+        Agent friendly = mFriendly.create(mSpec, mix(seed, 2L * index));
+        Agent enemy = mEnemy.create(mSpec, mix(seed, 2L * index + 1));
+        int objectives = mSpec.objectives.size();
+        double[] totalIncome = new double[2];
+        int ticks = 0;
+        int samples = recording == null ? 0 : recording.store.samples;
+        int record = recording == null ? 0 : recording.first + index;
+        int sample = 0;
+        int[] placements = recording == null ? null : new int[2 * mSpec.units.size()];
+        Game.Placements friendlyPlacements = new Game.Placements();
+        Game.Placements enemyPlacements = new Game.Placements();
+        while (game.timeMicros < mMaxDurationMicros
+                && (objectives == 0 || (game.objectives(Game.Owner.FRIENDLY) < objectives
+                                        && game.objectives(Game.Owner.ENEMY) < objectives))) {
+            friendlyPlacements.clear();
+            enemyPlacements.clear();
+            friendly.place(game, friendlyPlacements);
+            enemy.place(game, enemyPlacements);
+            game.tickMicrosIndexed(mTimestepMicros, friendlyPlacements, enemyPlacements);
+            if (recording != null) {
+                countPlacements(placements, friendlyPlacements, Game.Owner.FRIENDLY);
+                countPlacements(placements, enemyPlacements, Game.Owner.ENEMY);
+                // Sample ownership at the end of each 1/samples of the maximum duration
+                while (sample < samples
+                        && (sample + 1) * mMaxDurationMicros <= samples * game.timeMicros) {
+                    recording.store.setOwnership(record, sample++, ResultStore.ownership(game));
+                }
+            }
+            totalIncome[0] += (double) mTimestepMicros * game.income(Game.Owner.FRIENDLY);
+            totalIncome[1] += (double) mTimestepMicros * game.income(Game.Owner.ENEMY);
+            ++ticks;
+        }
+        int friendlyObjectives = game.objectives(Game.Owner.FRIENDLY);
+        int enemyObjectives = game.objectives(Game.Owner.ENEMY);
+        Game.Owner winner = null;
+        if (enemyObjectives < friendlyObjectives) {
+            winner = Game.Owner.FRIENDLY;
+        } else if (friendlyObjectives < enemyObjectives) {
+            winner = Game.Owner.ENEMY;
+        }
+        if (recording != null) {
+            long ownership = ResultStore.ownership(game);
+            while (sample < samples) {
+                recording.store.setOwnership(record, sample++, ownership);
+            }
+            for (Game.Owner owner : Game.Owner.values()) {
+                for (int unit = 0; unit < mSpec.units.size(); ++unit) {
+                    recording.store.setPlacements(record, owner, unit,
+                            placements[owner.ordinal() * mSpec.units.size() + unit]);
+                }
+            }
+            recording.store.setResult(record, mSpecHash, recording.friendlyId, recording.enemyId,
+                    winner, ticks, game.player(Game.Owner.FRIENDLY).balance,
+                    game.player(Game.Owner.ENEMY).balance);
+        }
+        long durationMicros = Math.max(game.timeMicros, 1);
+        return new Result(winner, game.time, ticks, new float[] {
+                (float) (totalIncome[0] / durationMicros),
+                (float) (totalIncome[1] / durationMicros) });
+    }
+
+    @SuppressWarnings("serial") // (never serialized)
+    private class Task extends RecursiveTask<Summary> {
+        private final long mSeed;
+        private final int mBegin, mEnd;
+        @Nullable private final Recording mRecording;
+        Task(long seed, int begin, int end, @Nullable Recording recording) {
+            mSeed = seed;
+            mBegin = begin;
+            mEnd = end;
+            mRecording = recording;
+        }
+        @Override
+        protected Summary compute() {
+            if (mEnd - mBegin == 1) {
+                return Summary.of(play(mSeed, mBegin, mRecording));
+            }
+            int middle = (mBegin + mEnd) >>> 1;
+            Task second = new Task(mSeed, middle, mEnd, mRecording);
+            second.fork();
+            Summary first;
+            try {
+                first = new Task(mSeed, mBegin, middle, mRecording).compute();
+            } catch (RuntimeException | Error e) {
+                // Don't fail while the other half may still be writing to the result store
+                second.cancel(false);
+                second.quietlyJoin();
+                throw e;
+            }
+            return Summary.merge(first, second.join());
+        }
+    }
+
+    /**
+     * Play "matches" matches in parallel on "pool", and summarize the results.
+     * <p>
+     * The results depend only on the seed (not on the pool or scheduling).
+     */
+    public Summary run(int matches, long seed, @NotNull ForkJoinPool pool) {
+        if (matches <= 0) {
+            throw new IllegalArgumentException("Must run at least one match");
+        }
+        return pool.invoke(new Task(seed, 0, matches, null));
+    }
+
+    /**
+     * Play "matches" matches in parallel on "pool", appending each match's result to "store" (in
+     * match order), and summarize the results.
+     * <p>
+     * The agent ids are recorded as given, to identify the agents in the store. If a match throws,
+     * the run's records are abandoned (see ResultStore.abandon), so later runs are still recorded.
+     */
+    public Summary run(int matches, long seed, @NotNull ForkJoinPool pool,
+                       @NotNull ResultStore store, int friendlyId, int enemyId) {
+        if (matches <= 0) {
+            throw new IllegalArgumentException("Must run at least one match");
+        }
+        if (store.units != mSpec.units.size() || store.objectives != mSpec.objectives.size()) {
+            throw new IllegalArgumentException("Result store was created for a different spec");
+        }
+        int first = store.reserve(matches);
+        Recording recording = new Recording(store, first, friendlyId, enemyId);
+        Summary summary;
+        try {
+            summary = pool.invoke(new Task(seed, 0, matches, recording));
+        } catch (RuntimeException | Error e) {
+            store.abandon(first, matches);
+            throw e;
+        }
+        store.commit(first, matches);
+        return summary;
+    }
+
+    /**
+     * Play "matches" matches in parallel on all cores, and summarize the results.
+     */
+    public Summary run(int matches, long seed) {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return run(matches, seed, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
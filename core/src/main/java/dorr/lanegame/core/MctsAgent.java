@@ -0,0 +1,391 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A Monte Carlo tree search (UCT) agent.
+ * <p>
+ * Each action is either "wait" or one placement (unit & lane), made at the start of a step of
+ * STEP_TICKS ticks, during which the opponent plays randomly. Search simulates with its own
+ * (typically much coarser than the game's) timestep, which buys many more rollouts for a little
+ * accuracy. The tree searches our actions up to MAX_DEPTH steps ahead, then plays a random rollout
+ * of "rolloutTicks" ticks (both players random) and scores the result by the income difference from
+ * objectives held (the game's long-term outcome), with balance as a tie-break.
+ * <p>
+ * Search runs until a nanosecond deadline, "budgetNanos" after place() is called (there's nothing
+ * to decide, & no search, while we can't afford any unit). With a pool, each worker runs an
+ * independent search (root parallelism) and the root visit counts are summed. Each searcher owns
+ * its games (reset with Game.copyFrom) & a fixed-size tree of flat arrays, so search doesn't
+ * allocate.
+ * <p>
+ * Different paths through the tree can reach the same state (e.g. when neither player can afford to
+ * place), so each searcher keeps a TranspositionTable of rollout values by leaf state. Once a state
+ * has MIN_SAMPLES rollouts, its mean value is reused rather than running another rollout. The table
+ * is kept between decisions (states don't depend on the root), but each decision starts a new
+ * generation, so that stale entries are replaced first.
+ * <p>
+ * The search blocks for the whole budget, so when used in a Simulation, wrap it in an AsyncAgent.
+ */
+public class MctsAgent extends Agent {
+    public static final int STEP_TICKS = 5;
+    public static final int MAX_DEPTH = 8;
+    public static final int MAX_NODES = 1 << 16;
+    public static final int TABLE_SIZE = 1 << 14;
+    // How many rollouts from a state before its mean is reused instead of rolling out again
+    public static final int MIN_SAMPLES = 4;
+    private static final double EXPLORATION = Math.sqrt(2);
+
+    @NotNull public final Game.GameSpec spec;
+    @NotNull public final Game.Owner owner;
+    public final int searchTimestepMicros;
+    public final long budgetNanos;
+    public final int rolloutTicks;
+    private final int mActions; // 1 (wait) + units * lanes
+    private final Searcher[] mSearchers;
+    private final Search mSearch;
+    @Nullable private final ForkJoinPool mPool;
+    private final Game.Placement[] mPlacements; // indexed by action - 1
+    private final int mMinCost;
+    private final int mObjectiveIncome; // total, at least 1
+    private long mMaxRollouts = Long.MAX_VALUE;
+    private long mRollouts = 0;
+    private long mLastRollouts = 0;
+    private long mCached = 0;
+
+    /**
+     * @param owner which player this agent places for
+     * @param searchTimestepMicros the timestep to simulate with during search, e.g. 100ms
+     * @param budgetNanos how long to search for each decision
+     * @param rolloutTicks how many ticks to play out randomly from each leaf
+     * @param pool to search in parallel (on each of its workers), or null to search on the calling
+     *             thread
+     */
+    public MctsAgent(@NotNull Game.GameSpec spec, @NotNull Game.Owner owner,
+                     int searchTimestepMicros, long budgetNanos, int rolloutTicks, long seed,
+                     @Nullable ForkJoinPool pool) {
+        if (searchTimestepMicros <= 0 || budgetNanos <= 0 || rolloutTicks < 0) {
+            throw new IllegalArgumentException("Bad MCTS timestep, budget or rollout length");
+        }
+        this.spec = spec;
+        this.owner = owner;
+        this.searchTimestepMicros = searchTimestepMicros;
+        this.budgetNanos = budgetNanos;
+        this.rolloutTicks = rolloutTicks;
+        mActions = 1 + spec.units.size() * spec.lanes;
+        mPool = pool;
+        mSearchers = new Searcher[pool == null ? 1 : pool.getParallelism()];
+        for (int i = 0; i < mSearchers.length; ++i) {
+            mSearchers[i] = new Searcher(seed + i);
+        }
+        mSearch = new Search();
+        int minCost = Integer.MAX_VALUE;
+        for (Game.UnitSpec unit : spec.units) {
+            minCost = Math.min(minCost, unit.cost);
+        }
+        mMinCost = minCost;
+        int objectiveIncome = 1;
+        for (Game.ObjectiveSpec objective : spec.objectives) {
+            objectiveIncome += objective.income;
+        }
+        mObjectiveIncome = objectiveIncome;
+        mPlacements = new Game.Placement[mActions - 1];
+        for (int action = 1; action < mActions; ++action) {
+            mPlacements[action - 1] = new Game.Placement(
+                    spec.units.get(unitIndex(action)).name, lane(action));
+        }
+    }
+
+    private int unitIndex(int action) {
+        return (action - 1) / spec.lanes;
+    }
+
+    private int lane(int action) {
+        return (action - 1) % spec.lanes;
+    }
+
+    /**
+     * @return the total number of rollouts run
+     */
+    public long rollouts() {
+        return mRollouts;
+    }
+
+    /**
+     * @return the number of rollouts run for the last decision
+     */
+    public long lastRollouts() {
+        return mLastRollouts;
+    }
+
+    /**
+     * @return the total number of rollouts which were skipped, using a cached value from the
+     * transposition table instead (these are included in rollouts())
+     */
+    public long cachedRollouts() {
+        return mCached;
+    }
+
+    /**
+     * Search from "game" within the budget, and return the best action (0 = wait).
+     */
+    int decide(Game game) {
+        if (game.player(owner).balance < mMinCost) {
+            mLastRollouts = 0;
+            return 0; // nothing to decide
+        }
+        return search(game, System.nanoTime() + budgetNanos, mMaxRollouts);
+    }
+
+    /**
+     * Also stop each search after "maxRollouts" rollouts per searcher (e.g. for reproducible
+     * decisions, without a pool).
+     */
+    void setMaxRollouts(long maxRollouts) {
+        mMaxRollouts = maxRollouts;
+    }
+
+    /**
+     * Search from "game" until "deadline" (System.nanoTime), or each searcher has run
+     * "maxRollouts" rollouts, and return the best action.
+     */
+    int search(Game game, long deadline, long maxRollouts) {
+        for (Searcher searcher : mSearchers) {
+            searcher.reset(game, deadline, maxRollouts);
+        }
+        if (mPool == null) {
+            mSearchers[0].search();
+        } else {
+            mSearch.reinitialize();
+            mPool.invoke(mSearch);
+        }
+        mLastRollouts = 0;
+        int best = 0;
+        long bestVisits = -1;
+        for (int action = 0; action < mActions; ++action) {
+            long visits = 0;
+            for (Searcher searcher : mSearchers) {
+                visits += searcher.rootVisits(action);
+            }
+            if (bestVisits < visits) {
+                best = action;
+                bestVisits = visits;
+            }
+        }
+        for (Searcher searcher : mSearchers) {
+            mLastRollouts += searcher.rollouts;
+            mCached += searcher.cached;
+        }
+        mRollouts += mLastRollouts;
+        return best;
+    }
+
+    @Override
+    public Game.Placement place(Game game) {
+        int action = decide(game);
+        return action == 0 ? null : mPlacements[action - 1];
+    }
+
+    @Override
+    public void place(Game game, Game.Placements out) {
+        int action = decide(game);
+        if (action != 0) {
+            out.add(unitIndex(action), lane(action));
+        }
+    }
+
+    /**
+     * Runs all the searchers in parallel (reused for each decision).
+     */
+    @SuppressWarnings("serial") // (never serialized)
+    private final class Search extends RecursiveAction {
+        @Override
+        protected void compute() {
+            for (Searcher searcher : mSearchers) {
+                searcher.reinitialize();
+            }
+            invokeAll(mSearchers);
+        }
+    }
+
+    /**
+     * An independent search tree, with its own games & random number generator.
+     */
+    @SuppressWarnings("serial") // (never serialized)
+    private final class Searcher extends RecursiveAction {
+        private final Game mRoot = new Game(spec);
+        private final Game mGame = new Game(spec);
+        private final Game.Placements mOurs = new Game.Placements();
+        private final Game.Placements mTheirs = new Game.Placements();
+        private final Utility.FastRandom mRandom;
+        // The tree - node 0 is the root, and an expanded node's children are the mActions nodes
+        // from firstChild (child k takes action k)
+        private final int[] mFirstChild = new int[MAX_NODES];
+        private final int[] mVisits = new int[MAX_NODES];
+        private final double[] mValue = new double[MAX_NODES];
+        private final int[] mPath = new int[MAX_DEPTH + 1];
+        private final TranspositionTable mTable = new TranspositionTable(TABLE_SIZE);
+        private int mNodes;
+        private long mDeadline;
+        private long mMaxRollouts;
+        long rollouts;
+        long cached;
+
+        Searcher(long seed) {
+            // (xorshift mustn't be seeded with 0)
+            mRandom = new Utility.FastRandom(seed * 0x9E3779B97F4A7C15L + 0x2545F4914F6CDD1DL);
+        }
+
+        void reset(Game game, long deadline, long maxRollouts) {
+            mRoot.copyFrom(game);
+            mDeadline = deadline;
+            mMaxRollouts = maxRollouts;
+            rollouts = 0;
+            cached = 0;
+            mTable.newGeneration();
+            mNodes = 1;
+            mVisits[0] = 0;
+            mValue[0] = 0;
+            mFirstChild[0] = -1;
+            expand(0);
+        }
+
+        int rootVisits(int action) {
+            return mVisits[mFirstChild[0] + action];
+        }
+
+        @Override
+        protected void compute() {
+            search();
+        }
+
+        void search() {
+            do {
+                iterate();
+                ++rollouts;
+            } while (rollouts < mMaxRollouts && System.nanoTime() < mDeadline);
+        }
+
+        private void expand(int node) {
+            mFirstChild[node] = mNodes;
+            for (int i = mNodes; i < mNodes + mActions; ++i) {
+                mFirstChild[i] = -1;
+                mVisits[i] = 0;
+                mValue[i] = 0;
+            }
+            mNodes += mActions;
+        }
+
+        private int select(int node) {
+            int first = mFirstChild[node];
+            double logVisits = Math.log(mVisits[node]);
+            int best = first;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            // Start at a random child, so that ties (e.g. unvisited children) are broken randomly
+            int offset = mRandom.nextInt(mActions);
+            for (int k = 0; k < mActions; ++k) {
+                int child = first + (k + offset) % mActions;
+                int visits = mVisits[child];
+                if (visits == 0) {
+                    return child;
+                }
+                double score = mValue[child] / visits
+                        + EXPLORATION * Math.sqrt(logVisits / visits);
+                if (bestScore < score) {
+                    best = child;
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+
+        private void addRandom(Game.Placements placements) {
+            int action = mRandom.nextInt(mActions);
+            if (action != 0) {
+                placements.add(unitIndex(action), lane(action));
+            }
+        }
+
+        private void tick() {
+            if (owner == Game.Owner.FRIENDLY) {
+                mGame.tickMicrosIndexed(searchTimestepMicros, mOurs, mTheirs);
+            } else {
+                mGame.tickMicrosIndexed(searchTimestepMicros, mTheirs, mOurs);
+            }
+        }
+
+        /**
+         * Take our "action", then play a step with the opponent random.
+         */
+        private void step(int action) {
+            for (int t = 0; t < STEP_TICKS; ++t) {
+                mOurs.clear();
+                mTheirs.clear();
+                if (t == 0 && action != 0) {
+                    mOurs.add(unitIndex(action), lane(action));
+                }
+                addRandom(mTheirs);
+                tick();
+            }
+        }
+
+        private void rollout() {
+            for (int t = 0; t < rolloutTicks; ++t) {
+                mOurs.clear();
+                mTheirs.clear();
+                addRandom(mOurs);
+                addRandom(mTheirs);
+                tick();
+            }
+        }
+
+        /**
+         * @return how good mGame is for us, in [0, 1]
+         */
+        private double evaluate() {
+            Game.Owner other = owner.flip();
+            double income = (mGame.income(owner) - mGame.income(other)) / (double) mObjectiveIncome;
+            double balance = (mGame.player(owner).balance - mGame.player(other).balance)
+                    / (double) (spec.startingBalance + 1);
+            return 0.5 + 0.45 * income + 0.05 * Math.max(-1, Math.min(1, balance));
+        }
+
+        private void iterate() {
+            mGame.copyFrom(mRoot);
+            int node = 0;
+            int depth = 0;
+            mPath[0] = 0;
+            while (depth < MAX_DEPTH && mFirstChild[node] != -1) {
+                int child = select(node);
+                step(child - mFirstChild[node]);
+                node = child;
+                mPath[++depth] = node;
+            }
+            if (depth < MAX_DEPTH && 0 < mVisits[node] && mNodes + mActions <= MAX_NODES) {
+                expand(node);
+                int child = mFirstChild[node] + mRandom.nextInt(mActions);
+                step(child - mFirstChild[node]);
+                node = child;
+                mPath[++depth] = node;
+            }
+            long hash = mGame.hash();
+            int slot = mTable.find(hash);
+            double value;
+            if (slot != -1 && MIN_SAMPLES <= mTable.count(slot)) {
+                value = mTable.mean(slot);
+                ++cached;
+            } else {
+                rollout();
+                value = evaluate();
+                mTable.add(hash, value);
+            }
+            for (int i = 0; i <= depth; ++i) {
+                ++mVisits[mPath[i]];
+                mValue[mPath[i]] += value;
+            }
+        }
+    }
+}
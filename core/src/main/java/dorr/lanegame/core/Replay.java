@@ -0,0 +1,189 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static dorr.lanegame.core.Utility.check;
+
+/**
+ * Plays back a replay file written by ReplayRecorder.
+ * <p>
+ * The file is memory-mapped & indexed when opened, after which seek() to any tick costs a keyframe
+ * decode plus at most keyframeInterval ticks. If the recording was cut short (e.g. the process
+ * died), the replay ends at the last complete tick.
+ * <p>
+ * A Replay is not thread-safe.
+ */
+public class Replay {
+    @NotNull public final Game.GameSpec spec;
+    public final int timestepMicros;
+    public final int keyframeInterval;
+    private final ByteBuffer mBuffer;
+    private final GameCodec mCodec;
+    private final Game.Placement[] mPlacements; // indexed by (placement code - 1)
+    private final Game.Placements mFriendly = new Game.Placements();
+    private final Game.Placements mEnemy = new Game.Placements();
+    private long[] mKeyframeTicks = new long[16];
+    private int[] mKeyframeOffsets = new int[16];
+    private int mKeyframes = 0;
+    private long mTicks = 0;
+
+    public Replay(@NotNull File file, @NotNull Game.GameSpec spec) throws IOException {
+        this.spec = spec;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (Integer.MAX_VALUE < raf.length()) {
+                throw new IllegalArgumentException("Replay file is too large");
+            }
+            // The mapping remains valid after the file is closed
+            mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        mCodec = new GameCodec(spec);
+        mPlacements = new Game.Placement[spec.units.size() * spec.lanes];
+        for (int unit = 0; unit < spec.units.size(); ++unit) {
+            for (int lane = 0; lane < spec.lanes; ++lane) {
+                mPlacements[unit * spec.lanes + lane] =
+                        new Game.Placement(spec.units.get(unit).name, lane);
+            }
+        }
+
+        try {
+            if (mBuffer.getInt() != ReplayRecorder.MAGIC) {
+                throw new IllegalArgumentException("Not a replay file");
+            }
+            int version = GameCodec.getVarint(mBuffer);
+            if (version < 1 || ReplayRecorder.VERSION < version) {
+                throw new IllegalArgumentException("Unsupported replay version " + version);
+            }
+            timestepMicros = GameCodec.getVarint(mBuffer);
+            keyframeInterval = GameCodec.getVarint(mBuffer);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated replay header", e);
+        }
+        index();
+    }
+
+    /**
+     * Scan the file, counting ticks & finding keyframes.
+     */
+    private void index() {
+        try {
+            while (mBuffer.hasRemaining()) {
+                int offset = mBuffer.position();
+                byte tag = mBuffer.get();
+                if (tag == ReplayRecorder.TICK) {
+                    GameCodec.getVarint(mBuffer);
+                    GameCodec.getVarint(mBuffer);
+                    ++mTicks;
+                } else if (tag == ReplayRecorder.TICK_INDEXED) {
+                    for (int player = 0; player < 2; ++player) {
+                        for (int n = GameCodec.getVarint(mBuffer); 0 < n; --n) {
+                            GameCodec.getVarint(mBuffer);
+                        }
+                    }
+                    ++mTicks;
+                } else if (tag == ReplayRecorder.KEYFRAME) {
+                    long tick = GameCodec.getVarlong(mBuffer);
+                    int length = mBuffer.getInt();
+                    if (tick != mTicks || length < 0 || mBuffer.remaining() < length) {
+                        break;
+                    }
+                    mBuffer.position(mBuffer.position() + length);
+                    addKeyframe(tick, offset);
+                } else {
+                    break; // END, or an unwritten tail
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // A truncated final record - ignore it
+        }
+        if (mKeyframes == 0 && mTicks != 0) {
+            throw new IllegalArgumentException("Corrupt replay - no initial keyframe");
+        }
+    }
+
+    private void addKeyframe(long tick, int offset) {
+        if (mKeyframes == mKeyframeTicks.length) {
+            mKeyframeTicks = Arrays.copyOf(mKeyframeTicks, 2 * mKeyframes);
+            mKeyframeOffsets = Arrays.copyOf(mKeyframeOffsets, 2 * mKeyframes);
+        }
+        mKeyframeTicks[mKeyframes] = tick;
+        mKeyframeOffsets[mKeyframes] = offset;
+        ++mKeyframes;
+    }
+
+    /**
+     * @return the number of ticks in the replay
+     */
+    public long ticks() {
+        return mTicks;
+    }
+
+    private Game.Placement placement(int code) {
+        if (code < 0 || mPlacements.length < code) {
+            throw new IllegalArgumentException("Corrupt replay - bad placement " + code);
+        }
+        return code == 0 ? null : mPlacements[code - 1];
+    }
+
+    private void readPlacements(Game.Placements placements) {
+        placements.clear();
+        for (int n = GameCodec.getVarint(mBuffer); 0 < n; --n) {
+            int code = GameCodec.getVarint(mBuffer);
+            if (code <= 0 || mPlacements.length < code) {
+                throw new IllegalArgumentException("Corrupt replay - bad placement " + code);
+            }
+            placements.add((code - 1) / spec.lanes, (code - 1) % spec.lanes);
+        }
+    }
+
+    /**
+     * Set "game" to the state of the replay after "tick" ticks (i.e. just before tick number
+     * "tick" is run), in O(keyframeInterval).
+     */
+    public void seek(long tick, @NotNull Game game) {
+        if (tick < 0 || mTicks < tick) {
+            throw new IllegalArgumentException(
+                    "Tick " + tick + " is outside the replay [0, " + mTicks + "]");
+        }
+        if (mKeyframes == 0) {
+            throw new IllegalArgumentException("Replay is empty");
+        }
+        int keyframe = Arrays.binarySearch(mKeyframeTicks, 0, mKeyframes, tick);
+        if (keyframe < 0) {
+            keyframe = -keyframe - 2;
+        }
+        mBuffer.position(mKeyframeOffsets[keyframe] + 1);
+        long current = GameCodec.getVarlong(mBuffer);
+        mBuffer.getInt();
+        mCodec.read(mBuffer, game);
+        while (current < tick) {
+            byte tag = mBuffer.get();
+            if (tag == ReplayRecorder.TICK) {
+                Game.Placement friendly = placement(GameCodec.getVarint(mBuffer));
+                Game.Placement enemy = placement(GameCodec.getVarint(mBuffer));
+                game.tickMicros(timestepMicros, friendly, enemy);
+                ++current;
+            } else if (tag == ReplayRecorder.TICK_INDEXED) {
+                readPlacements(mFriendly);
+                readPlacements(mEnemy);
+                game.tickMicrosIndexed(timestepMicros, mFriendly, mEnemy);
+                ++current;
+            } else {
+                check(tag == ReplayRecorder.KEYFRAME, "indexed ticks are complete");
+                GameCodec.getVarlong(mBuffer);
+                int length = mBuffer.getInt();
+                mBuffer.position(mBuffer.position() + length);
+            }
+        }
+    }
+}
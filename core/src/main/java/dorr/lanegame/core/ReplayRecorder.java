@@ -0,0 +1,174 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records a game to an append-only, memory-mapped replay file, which can be played back with
+ * Replay.
+ * <p>
+ * Each tick is logged as the placements made in that tick (typically 3 bytes), and every
+ * "keyframeInterval" ticks the full state is written (see GameCodec), so that Replay can seek to
+ * any tick by restoring the previous keyframe & replaying at most keyframeInterval ticks. The first
+ * tick recorded is always a keyframe, so recording can start at any point in a game.
+ * <p>
+ * Ticks must be run with Game.tickMicros(timestepMicros, ...), so that they replay exactly.
+ */
+public class ReplayRecorder implements Closeable {
+    static final int MAGIC = 0x4c475250; // "LGRP"
+    static final int VERSION = 2; // 2 added TICK_INDEXED
+    // Record tags (an unwritten, zero-filled, tail reads as END)
+    static final byte END = 0;
+    static final byte TICK = 1;
+    static final byte KEYFRAME = 2;
+    static final byte TICK_INDEXED = 3; // any number of placements per player
+
+    private static final int INITIAL_MAPPING = 1 << 20;
+    private static final int MAX_TICK = 1 + 2 * 5;
+
+    public final int timestepMicros;
+    public final int keyframeInterval;
+    private final GameCodec mCodec;
+    private final RandomAccessFile mFile;
+    private MappedByteBuffer mBuffer;
+    private long mMappingStart = 0;
+    private long mTicks = 0;
+    private boolean mClosed = false;
+
+    public ReplayRecorder(@NotNull File file, @NotNull Game.GameSpec spec, int timestepMicros,
+                          int keyframeInterval) throws IOException {
+        if (timestepMicros <= 0) {
+            throw new IllegalArgumentException("Timestep must be positive");
+        }
+        if (keyframeInterval <= 0) {
+            throw new IllegalArgumentException("Keyframe interval must be positive");
+        }
+        this.timestepMicros = timestepMicros;
+        this.keyframeInterval = keyframeInterval;
+        mCodec = new GameCodec(spec);
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        map(0, INITIAL_MAPPING);
+        mBuffer.putInt(MAGIC);
+        GameCodec.putVarint(mBuffer, VERSION);
+        GameCodec.putVarint(mBuffer, timestepMicros);
+        GameCodec.putVarint(mBuffer, keyframeInterval);
+    }
+
+    private void map(long start, int size) throws IOException {
+        mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, start, size);
+        mMappingStart = start;
+    }
+
+    /**
+     * Make sure there are "bytes" available in the mapping, by remapping from the current position
+     * if needed.
+     */
+    private void reserve(int bytes) throws IOException {
+        if (mBuffer.remaining() < bytes) {
+            long position = mMappingStart + mBuffer.position();
+            map(position, Math.max(bytes, 2 * mBuffer.capacity()));
+        }
+    }
+
+    private int placementCode(@Nullable Game.Placement placement) {
+        if (placement == null) {
+            return 0;
+        }
+        int unitIndex = mCodec.spec.table.unitIndex(placement.unit);
+        return 1 + unitIndex * mCodec.spec.lanes + placement.lane;
+    }
+
+    /**
+     * @return the number of ticks recorded
+     */
+    public synchronized long ticks() {
+        return mTicks;
+    }
+
+    /**
+     * Record the tick which is about to be run on "game" (i.e. call this before game.tickMicros).
+     * <p>
+     * This is ignored if the recorder has been closed.
+     */
+    public synchronized void record(@NotNull Game game, @Nullable Game.Placement friendly,
+                                    @Nullable Game.Placement enemy) throws IOException {
+        if (mClosed) {
+            return;
+        }
+        maybeKeyframe(game);
+        reserve(MAX_TICK);
+        mBuffer.put(TICK);
+        GameCodec.putVarint(mBuffer, placementCode(friendly));
+        GameCodec.putVarint(mBuffer, placementCode(enemy));
+        ++mTicks;
+    }
+
+    private void putPlacements(@Nullable Game.Placements placements) {
+        int size = placements == null ? 0 : placements.size();
+        GameCodec.putVarint(mBuffer, size);
+        for (int i = 0; i < size; ++i) {
+            int packed = placements.get(i);
+            GameCodec.putVarint(mBuffer, 1 + Game.Placements.unitIndex(packed) * mCodec.spec.lanes
+                    + Game.Placements.lane(packed));
+        }
+    }
+
+    /**
+     * As record, for a tick which is about to be run with game.tickMicrosIndexed.
+     */
+    public synchronized void recordIndexed(@NotNull Game game, @Nullable Game.Placements friendly,
+                                           @Nullable Game.Placements enemy) throws IOException {
+        if (mClosed) {
+            return;
+        }
+        maybeKeyframe(game);
+        int placements = (friendly == null ? 0 : friendly.size())
+                + (enemy == null ? 0 : enemy.size());
+        reserve(MAX_TICK + 5 * placements);
+        mBuffer.put(TICK_INDEXED);
+        putPlacements(friendly);
+        putPlacements(enemy);
+        ++mTicks;
+    }
+
+    private void maybeKeyframe(Game game) throws IOException {
+        if (mTicks % keyframeInterval == 0) {
+            int maxSize = mCodec.maxSize(game);
+            reserve(1 + 10 + 4 + maxSize);
+            mBuffer.put(KEYFRAME);
+            GameCodec.putVarlong(mBuffer, mTicks);
+            int lengthPosition = mBuffer.position();
+            mBuffer.putInt(0);
+            mCodec.write(game, mBuffer);
+            mBuffer.putInt(lengthPosition, mBuffer.position() - lengthPosition - 4);
+        }
+    }
+
+    /**
+     * Flush the replay to disk & trim the file to the recorded length.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!mClosed) {
+            mClosed = true;
+            long length = mMappingStart + mBuffer.position();
+            mBuffer.force();
+            mBuffer = null;
+            try {
+                mFile.setLength(length);
+            } catch (IOException e) {
+                // Some platforms can't truncate a mapped file - the zero-filled tail reads as END
+                Utility.debug("Couldn't trim replay file: %s", e);
+            }
+            mFile.close();
+        }
+    }
+}
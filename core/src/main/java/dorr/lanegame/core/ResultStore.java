@@ -0,0 +1,459 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * A memory-mapped, columnar file of match results (see MatchRunner.run), for large tournaments.
+ * <p>
+ * The file holds a fixed number of fixed-size records (its capacity), stored column by column, so
+ * that a scan over a few columns only touches those columns' pages. Readers call the column getters
+ * directly, which read from the mapping without copying or allocating, e.g.
+ * <pre>{@code
+ * for (int i = 0; i < store.count(); ++i) {
+ *     if (store.winner(i) == Game.Owner.FRIENDLY) ...
+ * }
+ * }</pre>
+ * Each match records:
+ * <ul>
+ * <li>the spec hash (see specHash) & the ids of the two agents</li>
+ * <li>the winner, number of ticks & the final balances</li>
+ * <li>objective ownership at "samples" evenly spaced times over the maximum match duration, each
+ * packed into a long with 2 bits per objective (see ownership)</li>
+ * <li>the number of placements of each unit type, by each player</li>
+ * </ul>
+ * Records are written in place, and only become visible (in count()) once committed. Records are
+ * committed in reservations (see reserve & commit), and become visible in order, so a reservation
+ * committed before an earlier one stays hidden until the earlier one is committed. A reservation
+ * that can't be written (e.g. when a run fails) must be abandoned instead, which leaves "void"
+ * records (see isVoid) if later records have been reserved.
+ */
+public class ResultStore implements Closeable {
+    private static final int MAGIC = 0x4c475253; // "LGRS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4096;
+    private static final int COUNT_OFFSET = 24;
+    // Columns are mapped in segments of up to 2^MAX_SEGMENT_SHIFT records & MAX_SEGMENT_BYTES, to
+    // get around the 2 GB limit on a single mapping (& keep offsets within a segment in an int)
+    private static final int MAX_SEGMENT_SHIFT = 20;
+    private static final int MAX_SEGMENT_BYTES = 1 << 30;
+    public static final int MAX_SAMPLES = MAX_SEGMENT_BYTES / 8;
+
+    public static final int MAX_OBJECTIVES = 32;
+    private static final int NO_WINNER = 0;
+    private static final int VOID = -1; // (in the winner column)
+    private static final Game.Owner[] OWNERS = Game.Owner.values();
+
+    private static class Column {
+        private final int mWidth;
+        private final int mShift;
+        private final int mMask;
+        private final ByteBuffer[] mSegments;
+        Column(FileChannel channel, long offset, int capacity, int width) throws IOException {
+            if (width <= 0 || MAX_SEGMENT_BYTES < width) {
+                throw new IllegalArgumentException("Bad record width " + width);
+            }
+            mWidth = width;
+            // The largest power of two records that fit in MAX_SEGMENT_BYTES
+            mShift = Math.min(MAX_SEGMENT_SHIFT,
+                    31 - Integer.numberOfLeadingZeros(MAX_SEGMENT_BYTES / width));
+            mMask = (1 << mShift) - 1;
+            mSegments = new ByteBuffer[(int) (((long) capacity + mMask) >>> mShift)];
+            for (int i = 0; i < mSegments.length; ++i) {
+                int records = Math.min(capacity - (i << mShift), mMask + 1);
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE,
+                        offset + ((long) i << mShift) * width, (long) records * width);
+                mSegments[i] = segment.order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        long end(long offset, int capacity) {
+            return offset + (long) capacity * mWidth;
+        }
+        ByteBuffer segment(int record) {
+            return mSegments[record >>> mShift];
+        }
+        int offset(int record, int element) {
+            return (record & mMask) * mWidth + element;
+        }
+        /**
+         * Flush the segments holding records "begin" to "end" (exclusive) to disk.
+         */
+        void force(int begin, int end) {
+            for (int i = begin >>> mShift; i <= (end - 1) >>> mShift; ++i) {
+                ((MappedByteBuffer) mSegments[i]).force();
+            }
+        }
+    }
+
+    public final int capacity;
+    public final int samples;
+    public final int units;
+    public final int objectives;
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mHeader;
+    private final Column mSpecHash;
+    private final Column mAgents;
+    private final Column mWinner;
+    private final Column mTicks;
+    private final Column mBalances;
+    private final Column mOwnership;
+    private final Column mPlacements;
+    private final Column[] mColumns;
+    private int mCount;
+    private int mReserved;
+    // Committed reservations after mCount, waiting for an earlier one (first -> end)
+    private final TreeMap<Integer, Integer> mCommitted = new TreeMap<>();
+
+    private ResultStore(RandomAccessFile file, MappedByteBuffer header) throws IOException {
+        mFile = file;
+        mHeader = header;
+        mHeader.order(ByteOrder.LITTLE_ENDIAN);
+        if (mHeader.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a result store");
+        }
+        if (mHeader.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported result store version " + mHeader.getInt(4));
+        }
+        capacity = mHeader.getInt(8);
+        samples = mHeader.getInt(12);
+        units = mHeader.getInt(16);
+        objectives = mHeader.getInt(20);
+        mCount = mReserved = mHeader.getInt(COUNT_OFFSET);
+
+        FileChannel channel = file.getChannel();
+        long offset = HEADER_SIZE;
+        mSpecHash = new Column(channel, offset, capacity, 8);
+        offset = mSpecHash.end(offset, capacity);
+        mAgents = new Column(channel, offset, capacity, 2 * 4);
+        offset = mAgents.end(offset, capacity);
+        mWinner = new Column(channel, offset, capacity, 1);
+        offset = mWinner.end(offset, capacity);
+        mTicks = new Column(channel, offset, capacity, 4);
+        offset = mTicks.end(offset, capacity);
+        mBalances = new Column(channel, offset, capacity, 2 * 4);
+        offset = mBalances.end(offset, capacity);
+        mOwnership = new Column(channel, offset, capacity, samples * 8);
+        offset = mOwnership.end(offset, capacity);
+        mPlacements = new Column(channel, offset, capacity, 2 * units * 4);
+        mColumns = new Column[] { mSpecHash, mAgents, mWinner, mTicks, mBalances, mOwnership,
+                mPlacements };
+    }
+
+    /**
+     * Create a new store (overwriting "file") for up to "capacity" matches of games with the same
+     * numbers of units & objectives as "spec".
+     */
+    public static ResultStore create(@NotNull File file, @NotNull Game.GameSpec spec, int capacity,
+                                     int samples) throws IOException {
+        if (capacity <= 0 || samples <= 0) {
+            throw new IllegalArgumentException("Capacity & samples must be positive");
+        }
+        if (MAX_SAMPLES < samples) {
+            throw new IllegalArgumentException(
+                    "Cannot store more than " + MAX_SAMPLES + " ownership samples");
+        }
+        if (MAX_OBJECTIVES < spec.objectives.size()) {
+            throw new IllegalArgumentException(
+                    "Cannot store results for more than " + MAX_OBJECTIVES + " objectives");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            MappedByteBuffer header = raf.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, capacity);
+            header.putInt(12, samples);
+            header.putInt(16, spec.units.size());
+            header.putInt(20, spec.objectives.size());
+            header.putInt(COUNT_OFFSET, 0);
+            return new ResultStore(raf, header);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open an existing store, to read or add results.
+     */
+    public static ResultStore open(@NotNull File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() < HEADER_SIZE) {
+                throw new IllegalArgumentException("Not a result store");
+            }
+            return new ResultStore(raf, raf.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE));
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a hash of "spec", to identify which spec a match was played with
+     */
+    public static long specHash(@NotNull Game.GameSpec spec) {
+        // FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        int[] values = new int[6];
+        values[0] = spec.lanes;
+        values[1] = spec.length;
+        values[2] = spec.startingBalance;
+        values[3] = spec.income;
+        values[4] = spec.objectives.size();
+        values[5] = spec.units.size();
+        hash = hash(hash, values);
+        for (Game.ObjectiveSpec objective : spec.objectives) {
+            hash = hash(hash, new int[] { objective.lane, objective.position, objective.income });
+        }
+        for (Game.UnitSpec unit : spec.units) {
+            hash = hash(hash, new int[] { unit.name.hashCode(), unit.height, unit.speed,
+                    unit.health, unit.attack, unit.minAttack, unit.cost, unit.merge ? 1 : 0,
+                    unit.range, unit.swapLanes ? 1 : 0 });
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, int[] values) {
+        for (int value : values) {
+            for (int i = 0; i < 4; ++i) {
+                hash ^= (value >>> (8 * i)) & 0xff;
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    // Writing
+
+    /**
+     * Reserve "n" records to write, returning the index of the first.
+     */
+    public synchronized int reserve(int n) {
+        if (n < 0 || capacity - mReserved < n) {
+            throw new IllegalArgumentException("Result store is full (capacity " + capacity + ")");
+        }
+        int first = mReserved;
+        mReserved += n;
+        return first;
+    }
+
+    /**
+     * Commit the "n" records reserved at "first" (see reserve) once they have all been written,
+     * flushing them to disk. They become visible in count() once every earlier reservation has
+     * also been committed.
+     */
+    public synchronized void commit(int first, int n) {
+        checkReserved(first, n);
+        mCommitted.put(first, first + n);
+        Integer end;
+        int count = mCount;
+        while ((end = mCommitted.remove(count)) != null) {
+            count = end;
+        }
+        if (count != mCount) {
+            // Only the newly visible records need flushing (which may touch a few segments, as
+            // segments are the smallest unit we can force)
+            for (Column column : mColumns) {
+                column.force(mCount, count);
+            }
+            mCount = count;
+            mHeader.putInt(COUNT_OFFSET, mCount);
+            mHeader.force();
+        }
+    }
+
+    /**
+     * Give up on the "n" records reserved at "first" (see reserve), which may be partly written, so
+     * that later reservations can still become visible. If nothing has been reserved since, the
+     * records are reused by the next reservation, otherwise they are committed as void records.
+     */
+    public synchronized void abandon(int first, int n) {
+        checkReserved(first, n);
+        if (first + n == mReserved) {
+            mReserved = first;
+            return;
+        }
+        for (int i = first; i < first + n; ++i) {
+            mWinner.segment(i).put(mWinner.offset(i, 0), (byte) VOID);
+        }
+        commit(first, n);
+    }
+
+    private void checkReserved(int first, int n) {
+        if (n < 0 || first < mCount || mReserved - n < first || mCommitted.containsKey(first)) {
+            throw new IllegalArgumentException(
+                    "Records " + first + " to " + (first + n) + " aren't reserved");
+        }
+    }
+
+    /**
+     * Write the outcome of a match - records may be written concurrently from different threads.
+     */
+    public void setResult(int record, long specHash, int friendlyId, int enemyId,
+                          @Nullable Game.Owner winner, int ticks,
+                          int friendlyBalance, int enemyBalance) {
+        mSpecHash.segment(record).putLong(mSpecHash.offset(record, 0), specHash);
+        mAgents.segment(record).putInt(mAgents.offset(record, 0), friendlyId);
+        mAgents.segment(record).putInt(mAgents.offset(record, 4), enemyId);
+        mWinner.segment(record).put(mWinner.offset(record, 0),
+                (byte) (winner == null ? NO_WINNER : 1 + winner.ordinal()));
+        mTicks.segment(record).putInt(mTicks.offset(record, 0), ticks);
+        mBalances.segment(record).putInt(mBalances.offset(record, 0), friendlyBalance);
+        mBalances.segment(record).putInt(mBalances.offset(record, 4), enemyBalance);
+    }
+
+    public void setOwnership(int record, int sample, long ownership) {
+        mOwnership.segment(record).putLong(mOwnership.offset(record, 8 * sample), ownership);
+    }
+
+    public void setPlacements(int record, @NotNull Game.Owner owner, int unit, int placements) {
+        mPlacements.segment(record).putInt(
+                mPlacements.offset(record, 4 * (owner.ordinal() * units + unit)), placements);
+    }
+
+    /**
+     * @return the ownership of every objective in "game", packed 2 bits per objective (0 = none,
+     * 1 = friendly, 2 = enemy), in lane order then position order
+     */
+    public static long ownership(@NotNull Game game) {
+        long ownership = 0;
+        int shift = 0;
+        for (int laneIndex = 0; laneIndex < game.lanes.size(); ++laneIndex) {
+            Game.Lane lane = game.lanes.get(laneIndex);
+            for (int i = 0; i < lane.objectives.size(); ++i) {
+                Game.Owner owner = lane.objectives.get(i).owner;
+                if (owner != null) {
+                    ownership |= (long) (1 + owner.ordinal()) << shift;
+                }
+                shift += 2;
+            }
+        }
+        return ownership;
+    }
+
+    // Reading
+
+    /**
+     * @return the number of committed records
+     */
+    public synchronized int count() {
+        return mCount;
+    }
+
+    public long specHash(int record) {
+        return mSpecHash.segment(record).getLong(mSpecHash.offset(record, 0));
+    }
+
+    public int agent(int record, @NotNull Game.Owner owner) {
+        return mAgents.segment(record).getInt(mAgents.offset(record, 4 * owner.ordinal()));
+    }
+
+    /**
+     * @return true if "record" was abandoned (see abandon), so holds no result
+     */
+    public boolean isVoid(int record) {
+        return mWinner.segment(record).get(mWinner.offset(record, 0)) == VOID;
+    }
+
+    /**
+     * @return the winner of a match, or null for a draw (or a void record)
+     */
+    @Nullable
+    public Game.Owner winner(int record) {
+        int winner = mWinner.segment(record).get(mWinner.offset(record, 0));
+        return winner == NO_WINNER || winner == VOID ? null : OWNERS[winner - 1];
+    }
+
+    public int ticks(int record) {
+        return mTicks.segment(record).getInt(mTicks.offset(record, 0));
+    }
+
+    public int balance(int record, @NotNull Game.Owner owner) {
+        return mBalances.segment(record).getInt(mBalances.offset(record, 4 * owner.ordinal()));
+    }
+
+    public long ownership(int record, int sample) {
+        return mOwnership.segment(record).getLong(mOwnership.offset(record, 8 * sample));
+    }
+
+    /**
+     * @return the owner of "objective" (see ownership(Game)) in an ownership sample
+     */
+    @Nullable
+    public static Game.Owner owner(long ownership, int objective) {
+        int owner = (int) (ownership >>> (2 * objective)) & 3;
+        return owner == 0 ? null : OWNERS[owner - 1];
+    }
+
+    public int placements(int record, @NotNull Game.Owner owner, int unit) {
+        return mPlacements.segment(record).getInt(
+                mPlacements.offset(record, 4 * (owner.ordinal() * units + unit)));
+    }
+
+    /**
+     * @return the "unit mix" of a player in a match - a bitmask of the unit types they placed
+     */
+    public int unitMix(int record, @NotNull Game.Owner owner) {
+        int mix = 0;
+        for (int unit = 0; unit < units; ++unit) {
+            if (placements(record, owner, unit) != 0) {
+                mix |= 1 << unit;
+            }
+        }
+        return mix;
+    }
+
+    /**
+     * @return the win rate of "owner", indexed by their unit mix (see unitMix), or NaN for mixes
+     * that weren't played (skipping void records)
+     */
+    public float[] winRateByUnitMix(@NotNull Game.Owner owner) {
+        if (16 < units) {
+            throw new IllegalArgumentException("Too many unit types to group by unit mix");
+        }
+        int[] matches = new int[1 << units];
+        int[] wins = new int[1 << units];
+        int count = count();
+        int winner = 1 + owner.ordinal();
+        for (int i = 0; i < count; ++i) {
+            int result = mWinner.segment(i).get(mWinner.offset(i, 0));
+            if (result == VOID) {
+                continue;
+            }
+            int mix = unitMix(i, owner);
+            ++matches[mix];
+            if (result == winner) {
+                ++wins[mix];
+            }
+        }
+        float[] winRate = new float[matches.length];
+        Arrays.fill(winRate, Float.NaN);
+        for (int mix = 0; mix < matches.length; ++mix) {
+            if (matches[mix] != 0) {
+                winRate[mix] = wins[mix] / (float) matches[mix];
+            }
+        }
+        return winRate;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+}
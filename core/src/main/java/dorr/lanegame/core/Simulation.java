@@ -0,0 +1,331 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a game on its own thread, with a fixed timestep.
+ * <p>
+ * The game is ticked in integer (fixed-point) mode, see Game.tickMicros, so it is deterministic.
+ * Ticks are scheduled against System.nanoTime. If the simulation falls behind, it runs up to
+ * MAX_CATCH_UP_TICKS ticks back-to-back to catch up, and drops any remaining backlog (counted by
+ * skippedTicks()), so that it never spirals into ever-increasing lag.
+ * <p>
+ * Placements come from the agents (called on the simulation thread at the start of each tick),
+ * and from commands submitted by any thread (e.g. the UI), which are queued without locking & all
+ * placed at the start of the next tick. Wrap slow agents in an AsyncAgent, so that they decide on
+ * their own thread rather than holding up the tick.
+ */
+public class Simulation {
+    public static final int MAX_CATCH_UP_TICKS = 5;
+    public static final int COMMAND_CAPACITY = 1024;
+
+    private static class Snapshot {
+        final Game game;
+        final Game previous; // the state one tick before "game"
+        long nanos; // when "game"'s tick was scheduled
+        long previousNanos; // when "previous"'s tick was scheduled
+        Snapshot(Game.GameSpec spec) {
+            this.game = new Game(spec);
+            this.previous = new Game(spec);
+        }
+    }
+
+    private final Game mGame;
+    private final TripleBuffer<Snapshot> mSnapshots;
+    private final int mTimestepMicros;
+    private final long mTimestepNanos;
+    @Nullable private final Agent mFriendlyAgent;
+    @Nullable private final Agent mEnemyAgent;
+    private final CommandQueue mCommands;
+    // This tick's placements (only used by the simulation thread)
+    private final Game.Placements mFriendlyPlacements = new Game.Placements();
+    private final Game.Placements mEnemyPlacements = new Game.Placements();
+    private Thread mThread;
+    private long mLastScheduled; // (only used by the simulation thread)
+    private volatile boolean mRunning = false;
+    @Nullable private volatile ReplayRecorder mRecorder = null;
+    @Nullable private volatile TickMetrics mMetrics = null;
+
+    // Metrics (written by the simulation thread)
+    private volatile long mTicks = 0;
+    private volatile long mSkippedTicks = 0;
+    private volatile long mLagNanos = 0;
+    private volatile long mMaxLagNanos = 0;
+
+    /**
+     * @param friendly the friendly agent, or null if the friendly player only submits commands
+     * @param enemy the enemy agent, or null if the enemy player only submits commands
+     */
+    public Simulation(float dt, Game.GameSpec spec, @Nullable Agent friendly,
+                      @Nullable Agent enemy) {
+        mGame = new Game(spec);
+        mSnapshots = new TripleBuffer<>(new Snapshot(spec), new Snapshot(spec),
+                new Snapshot(spec));
+        mTimestepMicros = Math.round(dt * Game.MICROS_PER_SECOND);
+        mTimestepNanos = 1000L * mTimestepMicros;
+        mFriendlyAgent = friendly;
+        mEnemyAgent = enemy;
+        mCommands = new CommandQueue(spec, COMMAND_CAPACITY);
+        start();
+    }
+
+    public Game.GameSpec spec() {
+        return mGame.spec;
+    }
+
+    /**
+     * Get a snapshot of the latest state of the game, without blocking the simulation.
+     * <p>
+     * This may only be called from a single (reader) thread. The snapshot must not be modified,
+     * and is only valid until the next call to getState().
+     */
+    public Game getState() {
+        mSnapshots.acquire();
+        return mSnapshots.front().game;
+    }
+
+    /**
+     * (Reader) the state one tick before the current getState() snapshot, which is valid for as
+     * long as that snapshot is.
+     */
+    public Game getPreviousState() {
+        return mSnapshots.front().previous;
+    }
+
+    /**
+     * (Reader) how far to blend from getPreviousState() to getState(), in [0, 1], for smooth
+     * rendering.
+     * <p>
+     * This is based on when the two ticks were scheduled, so rendering runs one tick behind the
+     * simulation, and stays smooth however many ticks were published since the last frame.
+     */
+    public float alpha() {
+        Snapshot front = mSnapshots.front();
+        long interval = front.nanos - front.previousNanos;
+        if (interval <= 0) {
+            return 1;
+        }
+        return Utility.clamp((System.nanoTime() - front.nanos) / (float) interval, 0, 1);
+    }
+
+    /**
+     * @return the number of ticks that have been run
+     */
+    public long ticks() {
+        return mTicks;
+    }
+
+    /**
+     * @return the number of ticks that were dropped, as the simulation couldn't keep up
+     */
+    public long skippedTicks() {
+        return mSkippedTicks;
+    }
+
+    /**
+     * @return how far behind schedule the latest tick was run
+     */
+    public long lagNanos() {
+        return mLagNanos;
+    }
+
+    public long maxLagNanos() {
+        return mMaxLagNanos;
+    }
+
+    public int timestepMicros() {
+        return mTimestepMicros;
+    }
+
+    /**
+     * (Any thread) place unit "unitIndex" (see GameSpec.unitIndex) on "lane" for "owner" at the
+     * start of the next tick (after any agent placements). This never blocks.
+     *
+     * @return false if the command was dropped, as too many are waiting (see COMMAND_CAPACITY)
+     */
+    public boolean submit(Game.Owner owner, int unitIndex, int lane) {
+        return mCommands.offer(owner, unitIndex, lane);
+    }
+
+    /**
+     * @return the number of submitted commands which were dropped
+     */
+    public long droppedCommands() {
+        return mCommands.dropped();
+    }
+
+    /**
+     * Record each tick into "recorder" (which must have the same timestep), from the next tick, or
+     * stop recording if null.
+     * <p>
+     * Stop recording before closing the recorder.
+     */
+    public void record(@Nullable ReplayRecorder recorder) {
+        if (recorder != null && recorder.timestepMicros != mTimestepMicros) {
+            throw new IllegalArgumentException("Replay timestep " + recorder.timestepMicros
+                    + " us doesn't match the simulation's " + mTimestepMicros + " us");
+        }
+        mRecorder = recorder;
+    }
+
+    /**
+     * Record metrics of each tick (see TickMetrics) into "metrics", from the next tick, or stop
+     * recording if null. Besides the game's phases, this times the agents & publishing snapshots.
+     * <p>
+     * Don't read "metrics" directly while the simulation is running - use metrics() instead.
+     */
+    public void setMetrics(@Nullable TickMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * (Any thread) copy the metrics recorded so far into "dest", which must have the same sample
+     * interval, then reset them if "reset" (e.g. for reporting at intervals).
+     *
+     * @return false if no metrics are being recorded (see setMetrics)
+     */
+    public boolean metrics(@NotNull TickMetrics dest, boolean reset) {
+        TickMetrics metrics = mMetrics;
+        if (metrics == null) {
+            return false;
+        }
+        // (the simulation thread holds this lock while it ticks)
+        synchronized (metrics) {
+            dest.copyFrom(metrics);
+            if (reset) {
+                metrics.reset();
+            }
+        }
+        return true;
+    }
+
+    public synchronized void start() {
+        if (!mRunning) {
+            mRunning = true;
+            mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loop();
+                }
+            }, "simulation");
+            mThread.setDaemon(true);
+            mThread.start();
+        }
+    }
+
+    /**
+     * Stop the simulation, waiting for the current tick to finish (unless called from the
+     * simulation thread, e.g. by an agent).
+     */
+    public synchronized void stop() {
+        mRunning = false;
+        if (mThread != null) {
+            LockSupport.unpark(mThread);
+            // Wait for the loop to exit, so that a later start() can't run two loops on one game
+            if (mThread != Thread.currentThread()) {
+                boolean interrupted = false;
+                while (mThread.isAlive()) {
+                    try {
+                        mThread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            mThread = null;
+        }
+    }
+
+    private void tick(long scheduled) {
+        TickMetrics metrics = mMetrics;
+        if (mGame.metrics() != metrics) {
+            mGame.setMetrics(metrics);
+        }
+        if (metrics == null) {
+            doTick(scheduled, null);
+        } else {
+            synchronized (metrics) {
+                doTick(scheduled, metrics);
+            }
+        }
+    }
+
+    private void doTick(long scheduled, @Nullable TickMetrics metrics) {
+        long start = metrics == null ? 0 : System.nanoTime();
+        // (the back snapshot belongs to this thread until it is published)
+        Snapshot snapshot = mSnapshots.back();
+        snapshot.previous.copyFrom(mGame);
+        snapshot.previousNanos = mLastScheduled;
+        long publishNanos = 0;
+        if (metrics != null) {
+            long now = System.nanoTime();
+            publishNanos = now - start;
+            start = now;
+        }
+        mFriendlyPlacements.clear();
+        mEnemyPlacements.clear();
+        if (mFriendlyAgent != null) {
+            mFriendlyAgent.place(mGame, mFriendlyPlacements);
+        }
+        if (mEnemyAgent != null) {
+            mEnemyAgent.place(mGame, mEnemyPlacements);
+        }
+        mCommands.drain(mFriendlyPlacements, mEnemyPlacements);
+        ReplayRecorder recorder = mRecorder;
+        if (recorder != null) {
+            try {
+                recorder.recordIndexed(mGame, mFriendlyPlacements, mEnemyPlacements);
+            } catch (IOException e) {
+                Utility.debug("Stopped recording the replay: %s", e);
+                mRecorder = null;
+            }
+        }
+        long agentsNanos = metrics == null ? 0 : System.nanoTime() - start;
+        mGame.tickMicrosIndexed(mTimestepMicros, mFriendlyPlacements, mEnemyPlacements);
+        // (Game.tick decides whether to time this tick)
+        boolean timing = metrics != null && metrics.sampled();
+        if (timing) {
+            metrics.record(TickMetrics.Phase.AGENTS, agentsNanos);
+            start = System.nanoTime();
+        }
+        snapshot.game.copyFrom(mGame);
+        snapshot.nanos = scheduled;
+        mLastScheduled = scheduled;
+        mSnapshots.publish();
+        if (timing) {
+            metrics.record(TickMetrics.Phase.PUBLISH,
+                    publishNanos + System.nanoTime() - start);
+        }
+    }
+
+    private void loop() {
+        long next = System.nanoTime();
+        mLastScheduled = next - mTimestepNanos;
+        while (mRunning) {
+            long now = System.nanoTime();
+            if (now < next) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            mLagNanos = now - next;
+            mMaxLagNanos = Math.max(mMaxLagNanos, mLagNanos);
+            for (int i = 0; i < MAX_CATCH_UP_TICKS && next <= now && mRunning; ++i) {
+                tick(next);
+                next += mTimestepNanos;
+                ++mTicks;
+            }
+            if (next <= now) {
+                long skipped = (now - next) / mTimestepNanos + 1;
+                next += skipped * mTimestepNanos;
+                mSkippedTicks += skipped;
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads & writes GameSpecs in a simple line-based text format, e.g.
+ * <pre>
+ * # comments start with '#'
+ * lanes 5
+ * length 10000
+ * startingBalance 3000
+ * income 200
+ * objective lane=0 position=2000 income=200
+ * unit sword height=1000 speed=2000 health=10000 attack=4000 minAttack=1000 cost=1000 merge=true
+ * unit arrow height=1000 speed=2000 health=10000 attack=4000 minAttack=1000 cost=1000 range=3000
+ * </pre>
+ * Unit properties "merge", "range" & "swapLanes" are optional (default false, 0, false), all others
+ * are required. Units are indexed in the order they are listed.
+ */
+public class SpecLoader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] UNIT_REQUIRED = {
+            "height", "speed", "health", "attack", "minAttack", "cost" };
+    private static final String[] UNIT_OPTIONAL = { "merge", "range", "swapLanes" };
+    private static final String[] OBJECTIVE_REQUIRED = { "lane", "position", "income" };
+
+    @SuppressWarnings("serial") // (never serialized)
+    private static class ParseError extends IllegalArgumentException {
+        ParseError(int line, String message) {
+            super("line " + line + ": " + message);
+        }
+    }
+
+    private static int parseInt(int line, String key, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ParseError(line, "\"" + key + "\" should be an integer, not \"" + value + "\"");
+        }
+    }
+
+    private static boolean parseBoolean(int line, String key, String value) {
+        if (value.equals("true")) {
+            return true;
+        } else if (value.equals("false")) {
+            return false;
+        }
+        throw new ParseError(line, "\"" + key + "\" should be true or false, not \"" + value + "\"");
+    }
+
+    /**
+     * Parse "key=value" properties, checking that they are all allowed & the required ones exist.
+     */
+    private static Map<String, String> properties(int line, String[] tokens, int start,
+                                                  String[] required, String[] optional) {
+        Set<String> allowed = new HashSet<>();
+        for (String key : required) {
+            allowed.add(key);
+        }
+        for (String key : optional) {
+            allowed.add(key);
+        }
+        Map<String, String> properties = new HashMap<>();
+        for (int i = start; i < tokens.length; ++i) {
+            int split = tokens[i].indexOf('=');
+            if (split <= 0) {
+                throw new ParseError(line, "expected key=value, not \"" + tokens[i] + "\"");
+            }
+            String key = tokens[i].substring(0, split);
+            if (!allowed.contains(key)) {
+                throw new ParseError(line, "unknown property \"" + key + "\"");
+            }
+            if (properties.put(key, tokens[i].substring(split + 1)) != null) {
+                throw new ParseError(line, "duplicate property \"" + key + "\"");
+            }
+        }
+        for (String key : required) {
+            if (!properties.containsKey(key)) {
+                throw new ParseError(line, "missing property \"" + key + "\"");
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Read & validate a spec.
+     *
+     * @throws IllegalArgumentException if the spec is malformed or invalid (see validate)
+     */
+    public static Game.GameSpec load(@NotNull Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        Map<String, Integer> settings = new HashMap<>();
+        List<Game.ObjectiveSpec> objectives = new ArrayList<>();
+        List<Game.UnitSpec> units = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            ++lineNumber;
+            int comment = line.indexOf('#');
+            if (comment != -1) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            String keyword = tokens[0];
+            if (keyword.equals("objective")) {
+                Map<String, String> properties = properties(lineNumber, tokens, 1,
+                        OBJECTIVE_REQUIRED, new String[0]);
+                objectives.add(new Game.ObjectiveSpec(
+                        parseInt(lineNumber, "lane", properties.get("lane")),
+                        parseInt(lineNumber, "position", properties.get("position")),
+                        parseInt(lineNumber, "income", properties.get("income"))));
+            } else if (keyword.equals("unit")) {
+                if (tokens.length < 2 || tokens[1].contains("=")) {
+                    throw new ParseError(lineNumber, "expected a unit name");
+                }
+                Map<String, String> properties = properties(lineNumber, tokens, 2,
+                        UNIT_REQUIRED, UNIT_OPTIONAL);
+                Map<String, Integer> values = new HashMap<>();
+                for (String key : new String[] {
+                        "height", "speed", "health", "attack", "minAttack", "cost", "range" }) {
+                    String value = properties.get(key);
+                    values.put(key, value == null ? 0 : parseInt(lineNumber, key, value));
+                }
+                String merge = properties.get("merge");
+                String swapLanes = properties.get("swapLanes");
+                units.add(new Game.UnitSpec(tokens[1],
+                        values.get("height"), values.get("speed"), values.get("health"),
+                        values.get("attack"), values.get("minAttack"), values.get("cost"),
+                        merge != null && parseBoolean(lineNumber, "merge", merge),
+                        values.get("range"),
+                        swapLanes != null && parseBoolean(lineNumber, "swapLanes", swapLanes)));
+            } else if (keyword.equals("lanes") || keyword.equals("length")
+                    || keyword.equals("startingBalance") || keyword.equals("income")) {
+                if (tokens.length != 2) {
+                    throw new ParseError(lineNumber, "expected \"" + keyword + " <value>\"");
+                }
+                int value = parseInt(lineNumber, keyword, tokens[1]);
+                // (checked here, as a spec can't even be created with a bad number of lanes)
+                if (keyword.equals("lanes") && (value <= 0 || Game.GameSpec.MAX_LANES < value)) {
+                    throw new ParseError(lineNumber,
+                            "\"lanes\" should be in [1, " + Game.GameSpec.MAX_LANES + "]");
+                }
+                if (keyword.equals("length") && value <= 0) {
+                    throw new ParseError(lineNumber, "\"length\" should be positive");
+                }
+                if (settings.put(keyword, value) != null) {
+                    throw new ParseError(lineNumber, "duplicate \"" + keyword + "\"");
+                }
+            } else {
+                throw new ParseError(lineNumber, "unknown keyword \"" + keyword + "\"");
+            }
+        }
+        for (String key : new String[] { "lanes", "length", "startingBalance", "income" }) {
+            if (!settings.containsKey(key)) {
+                throw new IllegalArgumentException("Missing \"" + key + "\"");
+            }
+        }
+        Game.GameSpec spec = new Game.GameSpec(settings.get("lanes"), settings.get("length"),
+                objectives, settings.get("startingBalance"), settings.get("income"), units);
+        validate(spec);
+        return spec;
+    }
+
+    public static Game.GameSpec load(@NotNull File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), UTF_8);
+        try {
+            return load(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public static Game.GameSpec parse(@NotNull String text) {
+        try {
+            return load(new StringReader(text));
+        } catch (IOException e) {
+            throw new IllegalStateException("StringReader shouldn't throw", e);
+        }
+    }
+
+    /**
+     * Check that a spec makes sense (e.g. positive sizes, objectives on the map).
+     *
+     * @throws IllegalArgumentException if not
+     */
+    public static void validate(@NotNull Game.GameSpec spec) {
+        if (spec.lanes <= 0 || spec.length <= 0) {
+            throw new IllegalArgumentException("Spec must have positive lanes & length");
+        }
+        if (Game.GameSpec.MAX_LANES < spec.lanes) {
+            throw new IllegalArgumentException(
+                    "Spec cannot have more than " + Game.GameSpec.MAX_LANES + " lanes");
+        }
+        if (spec.startingBalance < 0 || spec.income < 0) {
+            throw new IllegalArgumentException("Spec must have non-negative balance & income");
+        }
+        if (spec.units.isEmpty()) {
+            throw new IllegalArgumentException("Spec must have at least one unit");
+        }
+        for (Game.ObjectiveSpec objective : spec.objectives) {
+            if (objective.lane < 0 || spec.lanes <= objective.lane
+                    || objective.position < 0 || spec.length <= objective.position) {
+                throw new IllegalArgumentException("Objective at lane " + objective.lane
+                        + ", position " + objective.position + " is off the map");
+            }
+            if (objective.income < 0) {
+                throw new IllegalArgumentException("Objective income must be non-negative");
+            }
+        }
+        for (Game.UnitSpec unit : spec.units) {
+            if (unit.name.isEmpty() || !unit.name.equals(unit.name.replaceAll("[\\s=#]", ""))) {
+                throw new IllegalArgumentException("Bad unit name \"" + unit.name + "\"");
+            }
+            if (unit.height <= 0 || spec.length < unit.height) {
+                throw new IllegalArgumentException(
+                        "Unit \"" + unit.name + "\" must have a height in [1, length]");
+            }
+            if (unit.health <= 0) {
+                throw new IllegalArgumentException(
+                        "Unit \"" + unit.name + "\" must have positive health");
+            }
+            if (unit.speed < 0 || unit.attack < 0 || unit.minAttack < 0 || unit.cost < 0
+                    || unit.range < 0) {
+                throw new IllegalArgumentException(
+                        "Unit \"" + unit.name + "\" must have non-negative stats");
+            }
+        }
+        // (duplicate unit names are rejected by GameSpec)
+    }
+
+    /**
+     * @return "spec" in the format read by load()
+     */
+    public static String format(@NotNull Game.GameSpec spec) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("lanes ").append(spec.lanes).append('\n');
+        sb.append("length ").append(spec.length).append('\n');
+        sb.append("startingBalance ").append(spec.startingBalance).append('\n');
+        sb.append("income ").append(spec.income).append('\n');
+        for (Game.ObjectiveSpec objective : spec.objectives) {
+            sb.append(String.format("objective lane=%d position=%d income=%d%n",
+                    objective.lane, objective.position, objective.income));
+        }
+        for (Game.UnitSpec unit : spec.units) {
+            sb.append(String.format(
+                    "unit %s height=%d speed=%d health=%d attack=%d minAttack=%d cost=%d"
+                            + " merge=%b range=%d swapLanes=%b%n",
+                    unit.name, unit.height, unit.speed, unit.health, unit.attack, unit.minAttack,
+                    unit.cost, unit.merge, unit.range, unit.swapLanes));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A GameSpec's unit stats, compiled into dense arrays indexed by unit index (the unit's index in
+ * GameSpec.units), for the simulation's inner loops.
+ * <p>
+ * Each GameSpec compiles its table once, so creating games from (& switching between) specs is
+ * cheap.
+ */
+final class SpecTable {
+    final int units;
+    @NotNull final Game.UnitSpec[] unitSpecs;
+    @NotNull final int[] height;
+    @NotNull final int[] speed;
+    @NotNull final int[] health;
+    @NotNull final int[] attack;
+    @NotNull final int[] minAttack;
+    @NotNull final int[] cost;
+    @NotNull final int[] range;
+    @NotNull final boolean[] merge;
+    @NotNull final boolean[] swapLanes;
+    @NotNull final Map<String, Integer> nameToUnitIndex;
+    // The objectives in each lane, sorted by position
+    @NotNull final Game.ObjectiveSpec[][] laneObjectives;
+
+    SpecTable(int lanes, @NotNull List<Game.ObjectiveSpec> objectives,
+              @NotNull List<Game.UnitSpec> unitSpecs) {
+        if (lanes < 0 || Game.GameSpec.MAX_LANES < lanes) {
+            throw new IllegalArgumentException("Spec cannot have " + lanes + " lanes");
+        }
+        units = unitSpecs.size();
+        this.unitSpecs = unitSpecs.toArray(new Game.UnitSpec[units]);
+        height = new int[units];
+        speed = new int[units];
+        health = new int[units];
+        attack = new int[units];
+        minAttack = new int[units];
+        cost = new int[units];
+        range = new int[units];
+        merge = new boolean[units];
+        swapLanes = new boolean[units];
+        Map<String, Integer> nameToUnitIndex = new HashMap<>();
+        for (int i = 0; i < units; ++i) {
+            Game.UnitSpec unit = this.unitSpecs[i];
+            if (nameToUnitIndex.containsKey(unit.name)) {
+                throw new IllegalArgumentException("Duplicate unit name \"" + unit.name + "\"");
+            }
+            nameToUnitIndex.put(unit.name, i);
+            height[i] = unit.height;
+            speed[i] = unit.speed;
+            health[i] = unit.health;
+            attack[i] = unit.attack;
+            minAttack[i] = unit.minAttack;
+            cost[i] = unit.cost;
+            range[i] = unit.range;
+            merge[i] = unit.merge;
+            swapLanes[i] = unit.swapLanes;
+        }
+        this.nameToUnitIndex = Collections.unmodifiableMap(nameToUnitIndex);
+
+        laneObjectives = new Game.ObjectiveSpec[lanes][];
+        for (int lane = 0; lane < lanes; ++lane) {
+            List<Game.ObjectiveSpec> laneObjectives = new ArrayList<>();
+            for (Game.ObjectiveSpec objective : objectives) {
+                if (objective.lane == lane) {
+                    laneObjectives.add(objective);
+                }
+            }
+            Collections.sort(laneObjectives, new Comparator<Game.ObjectiveSpec>() {
+                @Override
+                public int compare(Game.ObjectiveSpec a, Game.ObjectiveSpec b) {
+                    if (a.position < b.position) {
+                        return -1;
+                    } else if (b.position < a.position) {
+                        return 1;
+                    } else {
+                        return 0;
+                    }
+                }
+            });
+            this.laneObjectives[lane] =
+                    laneObjectives.toArray(new Game.ObjectiveSpec[laneObjectives.size()]);
+        }
+    }
+
+    /**
+     * @return the index of the unit called "name"
+     */
+    int unitIndex(@NotNull String name) {
+        Integer index = nameToUnitIndex.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("No unit named \"" + name + "\"");
+        }
+        return index;
+    }
+}
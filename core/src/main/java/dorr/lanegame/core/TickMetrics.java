@@ -0,0 +1,312 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Opt-in instrumentation of game ticks (see Game.setMetrics & Simulation.setMetrics): how long
+ * each phase of a tick takes, as histograms of nanoseconds, and counts of what happened to units.
+ * <p>
+ * Recording doesn't allocate. The counters are updated on every tick, but only one tick in every
+ * "sampleInterval" is timed, as System.nanoTime isn't free compared to a small tick. Lane phases
+ * (income, combat & movement) are timed per lane & summed, so with a pool (see Game.setPool) they
+ * measure CPU time rather than wall-clock time.
+ * <p>
+ * Not thread-safe - to read the metrics of a running simulation, use Simulation.metrics.
+ */
+public class TickMetrics {
+    public enum Phase {
+        /**
+         * Deciding placements, by agents & submitted commands, and recording any replay
+         * (Simulation only).
+         */
+        AGENTS,
+        PLACE,
+        /**
+         * Objective captures & income.
+         */
+        INCOME,
+        COMBAT,
+        SWAP_LANES,
+        MOVEMENT,
+        /**
+         * The whole of Game.tick (from PLACE to MOVEMENT).
+         */
+        TICK,
+        /**
+         * Copying the current & previous states into a snapshot for readers (Simulation only).
+         */
+        PUBLISH;
+
+        public String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public enum Counter {
+        PLACED, MERGED, REFUNDED, KILLED, FLANKED;
+
+        public String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    // (values() copies the array each time)
+    static final Phase[] PHASES = Phase.values();
+    static final Counter[] COUNTERS = Counter.values();
+
+    /**
+     * A histogram of non-negative longs with bounded relative error, in a fixed amount of memory
+     * (after HdrHistogram). Values below 2^SUB_BUCKET_BITS have a bucket each, and larger values
+     * are bucketed by their top SUB_BUCKET_BITS bits, so each bucket is at most 1/64 of its values
+     * wide. Values above MAX_VALUE are counted as MAX_VALUE.
+     */
+    public static class Histogram {
+        static final int SUB_BUCKET_BITS = 7;
+        private static final int HALF_BUCKET = 1 << (SUB_BUCKET_BITS - 1);
+        public static final long MAX_VALUE = (1L << 40) - 1; // (over 18 minutes, in ns)
+
+        private final long[] mCounts = new long[index(MAX_VALUE) + 1];
+        private long mCount = 0;
+        private long mTotal = 0;
+        private long mMin = Long.MAX_VALUE;
+        private long mMax = 0;
+
+        static int index(long value) {
+            int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+            return shift * HALF_BUCKET + (int) (value >>> shift);
+        }
+
+        /**
+         * @return the smallest value in the bucket at "index"
+         */
+        static long lowestValue(int index) {
+            int shift = Math.max(0, index / HALF_BUCKET - 1);
+            return (long) (index - shift * HALF_BUCKET) << shift;
+        }
+
+        /**
+         * @return the largest value in the bucket at "index"
+         */
+        static long highestValue(int index) {
+            int shift = Math.max(0, index / HALF_BUCKET - 1);
+            return lowestValue(index) + (1L << shift) - 1;
+        }
+
+        public void record(long value) {
+            value = Math.min(Math.max(value, 0), MAX_VALUE);
+            ++mCounts[index(value)];
+            ++mCount;
+            mTotal += value;
+            mMin = Math.min(mMin, value);
+            mMax = Math.max(mMax, value);
+        }
+
+        public long count() {
+            return mCount;
+        }
+
+        public long total() {
+            return mTotal;
+        }
+
+        /**
+         * @return the smallest value recorded, or 0 if there are none
+         */
+        public long min() {
+            return mCount == 0 ? 0 : mMin;
+        }
+
+        public long max() {
+            return mMax;
+        }
+
+        public double mean() {
+            return mCount == 0 ? 0 : mTotal / (double) mCount;
+        }
+
+        /**
+         * @return a value (the top of its bucket) which at least "percentile" % of the recorded
+         * values are no greater than, or 0 if there are none
+         */
+        public long percentile(double percentile) {
+            if (percentile < 0 || 100 < percentile) {
+                throw new IllegalArgumentException("Bad percentile " + percentile);
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * mCount));
+            long seen = 0;
+            for (int i = 0; i < mCounts.length && seen < mCount; ++i) {
+                seen += mCounts[i];
+                if (rank <= seen) {
+                    return Math.min(highestValue(i), mMax);
+                }
+            }
+            return 0;
+        }
+
+        public void reset() {
+            Arrays.fill(mCounts, 0);
+            mCount = 0;
+            mTotal = 0;
+            mMin = Long.MAX_VALUE;
+            mMax = 0;
+        }
+
+        public void copyFrom(@NotNull Histogram other) {
+            System.arraycopy(other.mCounts, 0, mCounts, 0, mCounts.length);
+            mCount = other.mCount;
+            mTotal = other.mTotal;
+            mMin = other.mMin;
+            mMax = other.mMax;
+        }
+    }
+
+    private final int mSampleInterval;
+    private final Histogram[] mHistograms = new Histogram[PHASES.length];
+    private final long[] mCounts = new long[COUNTERS.length];
+    private long mTicks = 0;
+    private boolean mSampled = false;
+
+    public TickMetrics() {
+        this(1);
+    }
+
+    /**
+     * @param sampleInterval time one tick in every "sampleInterval"
+     */
+    public TickMetrics(int sampleInterval) {
+        if (sampleInterval <= 0) {
+            throw new IllegalArgumentException(
+                    "Sample interval must be positive: " + sampleInterval);
+        }
+        mSampleInterval = sampleInterval;
+        for (int i = 0; i < mHistograms.length; ++i) {
+            mHistograms[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Start a tick.
+     *
+     * @return true if this tick should be timed
+     */
+    boolean sample() {
+        mSampled = mTicks++ % mSampleInterval == 0;
+        return mSampled;
+    }
+
+    /**
+     * @return true if the current tick is being timed
+     */
+    boolean sampled() {
+        return mSampled;
+    }
+
+    void record(Phase phase, long nanos) {
+        mHistograms[phase.ordinal()].record(nanos);
+    }
+
+    void add(Counter counter, long count) {
+        mCounts[counter.ordinal()] += count;
+    }
+
+    public int sampleInterval() {
+        return mSampleInterval;
+    }
+
+    /**
+     * @return the number of ticks run (including those that weren't timed)
+     */
+    public long ticks() {
+        return mTicks;
+    }
+
+    /**
+     * @return the time taken by "phase" in each timed tick, in nanoseconds
+     */
+    public Histogram histogram(Phase phase) {
+        return mHistograms[phase.ordinal()];
+    }
+
+    public long count(Counter counter) {
+        return mCounts[counter.ordinal()];
+    }
+
+    public void reset() {
+        for (Histogram histogram : mHistograms) {
+            histogram.reset();
+        }
+        Arrays.fill(mCounts, 0);
+        mTicks = 0;
+        mSampled = false;
+    }
+
+    public void copyFrom(@NotNull TickMetrics other) {
+        if (other.mSampleInterval != mSampleInterval) {
+            throw new IllegalArgumentException("Sample interval " + other.mSampleInterval
+                    + " doesn't match " + mSampleInterval);
+        }
+        for (int i = 0; i < mHistograms.length; ++i) {
+            mHistograms[i].copyFrom(other.mHistograms[i]);
+        }
+        System.arraycopy(other.mCounts, 0, mCounts, 0, mCounts.length);
+        mTicks = other.mTicks;
+        mSampled = other.mSampled;
+    }
+
+    /**
+     * @return a table of the phases that have been timed (in ns), and the counters
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("ticks %d (1 in %d timed)%n", mTicks, mSampleInterval));
+        sb.append(String.format("%-10s %8s %9s %9s %9s %9s %9s%n",
+                "phase", "count", "mean", "p50", "p90", "p99", "max"));
+        for (Phase phase : PHASES) {
+            Histogram h = histogram(phase);
+            if (h.count() != 0) {
+                sb.append(String.format("%-10s %8d %9.0f %9d %9d %9d %9d%n",
+                        phase.key(), h.count(), h.mean(), h.percentile(50), h.percentile(90),
+                        h.percentile(99), h.max()));
+            }
+        }
+        for (Counter counter : COUNTERS) {
+            sb.append(counter == COUNTERS[0] ? "counters" : "").append(' ')
+                    .append(counter.key()).append('=').append(count(counter));
+        }
+        return sb.append(String.format("%n")).toString();
+    }
+
+    /**
+     * @return all the metrics as a JSON object, e.g. {"ticks": 1, "sampleInterval": 1, "phases":
+     * {"tick": {"count": 1, "min": 900, "mean": 900, "p50": 900, ...}, ...}, "counters": {...}}
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"ticks\": ").append(mTicks)
+                .append(", \"sampleInterval\": ").append(mSampleInterval)
+                .append(", \"phases\": {");
+        for (Phase phase : PHASES) {
+            Histogram h = histogram(phase);
+            sb.append(phase == PHASES[0] ? "" : ", ").append('"').append(phase.key())
+                    .append("\": {\"count\": ").append(h.count())
+                    .append(", \"min\": ").append(h.min())
+                    .append(", \"mean\": ").append(Math.round(h.mean()))
+                    .append(", \"p50\": ").append(h.percentile(50))
+                    .append(", \"p90\": ").append(h.percentile(90))
+                    .append(", \"p99\": ").append(h.percentile(99))
+                    .append(", \"p999\": ").append(h.percentile(99.9))
+                    .append(", \"max\": ").append(h.max())
+                    .append('}');
+        }
+        sb.append("}, \"counters\": {");
+        for (Counter counter : COUNTERS) {
+            sb.append(counter == COUNTERS[0] ? "" : ", ").append('"').append(counter.key())
+                    .append("\": ").append(count(counter));
+        }
+        return sb.append("}}").toString();
+    }
+}
@@ -0,0 +1,138 @@
+package dorr.lanegame.core;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size cache of values (e.g. search results) keyed by game state hashes (see Game.hash),
+ * which doesn't allocate after construction.
+ * <p>
+ * Each entry accumulates the samples added for its state, as a sum & count. The table is
+ * direct-mapped (each hash has a single slot), so when two states collide the new one replaces
+ * the old if the old is from a previous generation (see newGeneration), or has no more samples
+ * than the new one would. So well-sampled entries survive, until they're out of date.
+ * <p>
+ * Not thread-safe - give each thread its own table.
+ */
+public class TranspositionTable {
+    private final int mMask;
+    private final long[] mKeys;
+    private final double[] mSums;
+    private final int[] mCounts;
+    private final int[] mGenerations; // 0 = empty
+    private int mGeneration = 1;
+    private long mHits = 0;
+    private long mMisses = 0;
+
+    /**
+     * @param capacity the number of entries (rounded up to a power of 2)
+     */
+    public TranspositionTable(int capacity) {
+        if (capacity <= 0 || (1 << 30) < capacity) {
+            throw new IllegalArgumentException("Bad transposition table capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mMask = size - 1;
+        mKeys = new long[size];
+        mSums = new double[size];
+        mCounts = new int[size];
+        mGenerations = new int[size];
+    }
+
+    public int capacity() {
+        return mKeys.length;
+    }
+
+    private int slot(long hash) {
+        // The low bits of a mixed hash are as good as any
+        return (int) hash & mMask;
+    }
+
+    /**
+     * @return the slot holding "hash", or -1 if it isn't in the table
+     */
+    public int find(long hash) {
+        int slot = slot(hash);
+        if (mGenerations[slot] != 0 && mKeys[slot] == hash) {
+            ++mHits;
+            return slot;
+        }
+        ++mMisses;
+        return -1;
+    }
+
+    /**
+     * @return the number of samples in "slot" (from find)
+     */
+    public int count(int slot) {
+        return mCounts[slot];
+    }
+
+    /**
+     * @return the mean of the samples in "slot" (from find)
+     */
+    public double mean(int slot) {
+        return mSums[slot] / mCounts[slot];
+    }
+
+    /**
+     * Add a sample "value" for "hash", replacing any other state in its slot if that is out of
+     * date or has at most one sample.
+     *
+     * @return false if the sample wasn't stored, as it would have replaced a better entry
+     */
+    public boolean add(long hash, double value) {
+        int slot = slot(hash);
+        if (mGenerations[slot] != 0 && mKeys[slot] == hash) {
+            mSums[slot] += value;
+            ++mCounts[slot];
+            mGenerations[slot] = mGeneration;
+            return true;
+        }
+        if (mGenerations[slot] == mGeneration && 1 < mCounts[slot]) {
+            return false;
+        }
+        mKeys[slot] = hash;
+        mSums[slot] = value;
+        mCounts[slot] = 1;
+        mGenerations[slot] = mGeneration;
+        return true;
+    }
+
+    /**
+     * Start a new generation, after which any entry that isn't added to is replaceable (the
+     * entries are still found until they are replaced).
+     */
+    public void newGeneration() {
+        ++mGeneration;
+        if (mGeneration == 0) {
+            // Wrapped around (every 2^32 generations) - start again
+            Arrays.fill(mGenerations, 0);
+            mGeneration = 1;
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        Arrays.fill(mGenerations, 0);
+        mGeneration = 1;
+    }
+
+    /**
+     * @return the number of calls to find() which found their hash
+     */
+    public long hits() {
+        return mHits;
+    }
+
+    /**
+     * @return the number of calls to find() which didn't find their hash
+     */
+    public long misses() {
+        return mMisses;
+    }
+}
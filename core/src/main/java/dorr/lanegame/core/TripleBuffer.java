@@ -0,0 +1,68 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free triple buffer, which passes the latest value from a single writer thread to a single
+ * reader thread, without either ever waiting for the other.
+ * <p>
+ * The writer fills back() then calls publish(), the reader calls acquire() then reads front(). Each
+ * buffer is only ever owned by one thread at a time, so the reader's front() is never modified
+ * while the reader holds it.
+ */
+public class TripleBuffer<T> {
+    // mState holds the index of the "middle" buffer (neither front nor back), and a FRESH flag if
+    // it has been published but not yet acquired
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final Object[] mBuffers;
+    private final AtomicInteger mState = new AtomicInteger(2);
+    private int mBack = 0; // owned by the writer
+    private int mFront = 1; // owned by the reader
+
+    public TripleBuffer(@NotNull T a, @NotNull T b, @NotNull T c) {
+        if (a == b || b == c || a == c) {
+            throw new IllegalArgumentException("TripleBuffer requires three distinct buffers");
+        }
+        mBuffers = new Object[] { a, b, c };
+    }
+
+    /**
+     * (Writer) the buffer to write the next value into.
+     */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) mBuffers[mBack];
+    }
+
+    /**
+     * (Writer) publish the contents of back(), and take a new back() buffer.
+     */
+    public void publish() {
+        mBack = mState.getAndSet(mBack | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * (Reader) move the latest published value (if any) into front().
+     *
+     * @return true if front() has changed
+     */
+    public boolean acquire() {
+        if ((mState.get() & FRESH) == 0) {
+            return false;
+        }
+        mFront = mState.getAndSet(mFront) & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * (Reader) the latest acquired value.
+     */
+    @SuppressWarnings("unchecked")
+    public T front() {
+        return (T) mBuffers[mFront];
+    }
+}
@@ -0,0 +1,83 @@
+package dorr.lanegame.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+public class Utility {
+    /**
+     * Where debug() messages go - the default logger writes to System.err.
+     */
+    public interface Logger {
+        void debug(String message);
+    }
+
+    private static Logger sLogger = new Logger() {
+        @Override
+        public void debug(String message) {
+            System.err.println("LaneGame: " + message);
+        }
+    };
+    // Default to the JVM's assertion status (java -ea), so checks are free unless requested
+    private static boolean sChecksEnabled = Utility.class.desiredAssertionStatus();
+
+    /**
+     * Set the logger for debug() (not thread-safe, so call this at startup).
+     */
+    public static void setLogger(@NotNull Logger logger) {
+        sLogger = logger;
+    }
+
+    /**
+     * Enable or disable check() & internal invariant checks (not thread-safe, so call this at
+     * startup).
+     */
+    public static void setChecksEnabled(boolean enabled) {
+        sChecksEnabled = enabled;
+    }
+
+    public static boolean checksEnabled() {
+        return sChecksEnabled;
+    }
+
+    public static void debug(String fmt, Object... args) {
+        sLogger.debug(String.format(fmt, args));
+    }
+    public static void check(boolean condition, String message) {
+        if (sChecksEnabled && !condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+    public static <T> T getOrNull(List<T> items, int index) {
+        return (index < 0 || items.size() <= index) ? null : items.get(index);
+    }
+    public static float clamp(float x, float min, float max) {
+        if (x < min) return min;
+        if (max < x) return max;
+        return x;
+    }
+    public static class FastRandom {
+        private long mRngState;
+        public FastRandom() {
+            this(System.nanoTime());
+        }
+        public FastRandom(long seed) {
+            mRngState = seed;
+        }
+        public float nextFloat() {
+            mRngState ^= (mRngState << 21);
+            mRngState ^= (mRngState >>> 35);
+            mRngState ^= (mRngState << 4);
+            return Math.abs((int) mRngState) / (float) Integer.MAX_VALUE;
+        }
+        /**
+         * @return a random int in [0, bound)
+         */
+        public int nextInt(int bound) {
+            mRngState ^= (mRngState << 21);
+            mRngState ^= (mRngState >>> 35);
+            mRngState ^= (mRngState << 4);
+            return (int) (((mRngState >>> 33) * bound) >>> 31);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package dorr.lanegame.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AsyncAgentTest {
+    /**
+     * An agent which waits for permission to make each decision (placing a sword in lane 0).
+     */
+    private static class SteppedAgent extends Agent {
+        final Semaphore started = new Semaphore(0);
+        final Semaphore permits = new Semaphore(0);
+        @Override
+        public Game.Placement place(Game game) {
+            started.release();
+            permits.acquireUninterruptibly();
+            return new Game.Placement("sword", 0);
+        }
+    }
+
+    private static void awaitDecided(AsyncAgent agent, long decided) throws InterruptedException {
+        for (int i = 0; i < 1000 && agent.decided() < decided; ++i) {
+            Thread.sleep(1);
+        }
+        assertThat(agent.decided(), is(decided));
+    }
+
+    @Test
+    public void decisionsArriveLater() throws InterruptedException {
+        SteppedAgent stepped = new SteppedAgent();
+        AsyncAgent agent = new AsyncAgent(Game.EXAMPLE, stepped, 2);
+        try {
+            Game game = new Game(Game.EXAMPLE);
+            Game.Placements out = new Game.Placements();
+            agent.place(game, out);
+            assertThat(out.size(), is(0));
+            stepped.permits.release();
+            awaitDecided(agent, 1);
+
+            agent.place(game, out);
+            assertThat(out.size(), is(1));
+            assertThat(out.get(0), is(Game.Placements.pack(Game.EXAMPLE.unitIndex("sword"), 0)));
+            assertThat(agent.applied(), is(1L));
+            assertThat(agent.meanLatencyNanos(), greaterThan(0L));
+        } finally {
+            stepped.permits.release(100);
+            agent.close();
+        }
+    }
+
+    @Test
+    public void lateAndDropped() throws InterruptedException {
+        SteppedAgent stepped = new SteppedAgent();
+        AsyncAgent agent = new AsyncAgent(Game.EXAMPLE, stepped, 2);
+        try {
+            Game game = new Game(Game.EXAMPLE);
+            Game.Placements out = new Game.Placements();
+            // The agent takes 5 ticks to decide on the tick 0 state, so misses the window
+            agent.place(game, out);
+            stepped.started.acquire();
+            for (int i = 0; i < 4; ++i) {
+                agent.place(game, out);
+            }
+            stepped.permits.release();
+            awaitDecided(agent, 1);
+            agent.place(game, out); // tick 5
+            assertThat(out.size(), is(0));
+            assertThat(agent.late(), is(1L));
+
+            // It then decides on the tick 5 state & then on the tick 6 state before the next
+            // pickup, so the first of those decisions is dropped
+            stepped.started.acquire();
+            agent.place(game, out); // tick 6
+            stepped.permits.release(2);
+            awaitDecided(agent, 3);
+            agent.place(game, out); // tick 7
+            assertThat(out.size(), is(1));
+            assertThat(agent.applied(), is(1L));
+            assertThat(agent.dropped(), is(1L));
+            assertThat(agent.late(), is(1L));
+        } finally {
+            stepped.permits.release(100);
+            agent.close();
+        }
+    }
+
+    /**
+     * A slow agent doesn't hold up the simulation.
+     */
+    @Test
+    public void simulation() throws InterruptedException {
+        Agent slow = new Agent.RandomAgent(Game.EXAMPLE, 1) {
+            @Override
+            public void place(Game game, Game.Placements out) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.place(game, out);
+            }
+        };
+        AsyncAgent agent = new AsyncAgent(Game.EXAMPLE, slow, 10);
+        Simulation simulation = new Simulation(0.01f, Game.EXAMPLE, agent, null);
+        try {
+            Thread.sleep(500);
+            // ~50 ticks (a synchronous agent would manage <10), & ~10 decisions, all picked up
+            // within 10 ticks
+            assertThat(simulation.ticks(), greaterThan(30L));
+            assertThat(agent.applied(), greaterThan(3L));
+            assertThat(agent.late(), is(0L));
+        } finally {
+            simulation.stop();
+            agent.close();
+        }
+    }
+}
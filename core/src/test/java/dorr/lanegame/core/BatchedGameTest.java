@@ -0,0 +1,135 @@
+package dorr.lanegame.core;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BatchedGameTest {
+    private static final int GAMES = 6;
+
+    private static void assertSameState(BatchedGame batch, int index, Game game) {
+        assertThat(batch.timeMicros(index), is(game.timeMicros));
+        for (Game.Owner owner : Game.Owner.values()) {
+            assertThat(batch.balance(index, owner), is(game.player(owner).balance));
+            assertThat(batch.income(index, owner), is(game.income(owner)));
+        }
+        for (int lane = 0; lane < game.lanes.size(); ++lane) {
+            Game.Lane expected = game.lanes.get(lane);
+            assertThat(batch.size(index, lane), is(expected.size));
+            for (int i = 0; i < expected.size; ++i) {
+                Game.Unit unit = expected.units.get(i);
+                assertThat(batch.unitIndex(index, lane, i), is(expected.specIndex[i]));
+                assertThat(batch.owner(index, lane, i), is(unit.owner));
+                assertThat(batch.position(index, lane, i), is(unit.position));
+                assertThat(batch.health(index, lane, i), is(unit.health));
+            }
+            for (int k = 0; k < expected.objectives.size(); ++k) {
+                assertThat(batch.objectiveOwner(index, lane, k), is(expected.objectives.get(k).owner));
+            }
+        }
+    }
+
+    private static int pack(Game.GameSpec spec, Game.Placement placement) {
+        return placement == null ? BatchedGame.NONE
+                : Game.Placements.pack(spec.unitIndex(placement.unit), placement.lane);
+    }
+
+    @Test
+    public void matchesGame() {
+        Game.GameSpec spec = Game.EXAMPLE;
+        BatchedGame batch = new BatchedGame(spec, GAMES);
+        Game[] games = new Game[GAMES];
+        Agent[] friendly = new Agent[GAMES];
+        Agent[] enemy = new Agent[GAMES];
+        int[] dt = new int[GAMES];
+        for (int g = 0; g < GAMES; ++g) {
+            games[g] = new Game(spec);
+            friendly[g] = new Agent.RandomAgent(spec, 2 * g);
+            enemy[g] = new Agent.RandomAgent(spec, 2 * g + 1);
+            dt[g] = 5000 + 5000 * g; // (different timesteps in each game)
+        }
+        // Start one game mid-match
+        Agent a = new Agent.RandomAgent(spec, 100);
+        Agent b = new Agent.RandomAgent(spec, 101);
+        for (int t = 0; t < 1000; ++t) {
+            games[GAMES - 1].tickMicros(10000, a.place(games[GAMES - 1]), b.place(games[GAMES - 1]));
+        }
+        batch.set(GAMES - 1, games[GAMES - 1]);
+
+        int[] friendlyPlacements = new int[GAMES];
+        int[] enemyPlacements = new int[GAMES];
+        for (int t = 0; t < 3000; ++t) {
+            for (int g = 0; g < GAMES; ++g) {
+                Game.Placement f = friendly[g].place(games[g]);
+                Game.Placement e = enemy[g].place(games[g]);
+                games[g].tickMicros(dt[g], f, e);
+                friendlyPlacements[g] = pack(spec, f);
+                enemyPlacements[g] = pack(spec, e);
+            }
+            batch.tick(dt, friendlyPlacements, enemyPlacements);
+            if (t % 100 == 0) {
+                for (int g = 0; g < GAMES; ++g) {
+                    assertSameState(batch, g, games[g]);
+                }
+            }
+        }
+        for (int g = 0; g < GAMES; ++g) {
+            assertSameState(batch, g, games[g]);
+        }
+
+        batch.reset(0);
+        assertSameState(batch, 0, new Game(spec));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setInvertedGame() {
+        Game game = new Game(Game.EXAMPLE);
+        game.invert();
+        new BatchedGame(Game.EXAMPLE, 1).set(0, game);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badPlacement() {
+        new BatchedGame(Game.EXAMPLE, 2).tick(new int[]{1000, 1000},
+                new int[]{BatchedGame.NONE, Game.Placements.pack(0, Game.EXAMPLE.lanes)}, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badTimestep() {
+        new BatchedGame(Game.EXAMPLE, 2).tick(new int[]{1000, -1}, null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongBatchSize() {
+        new BatchedGame(Game.EXAMPLE, 2).tick(new int[]{1000}, null, null);
+    }
+
+    @Test
+    public void tickDoesNotAllocate() {
+        Game.GameSpec spec = Game.EXAMPLE;
+        BatchedGame batch = new BatchedGame(spec, GAMES);
+        int[] dt = new int[GAMES];
+        int[][] friendly = new int[spec.lanes * spec.units.size()][GAMES];
+        int[][] enemy = new int[friendly.length][GAMES];
+        for (int i = 0; i < friendly.length; ++i) {
+            for (int g = 0; g < GAMES; ++g) {
+                dt[g] = 10000;
+                int p = (i + g) % friendly.length;
+                friendly[i][g] = Game.Placements.pack(p % spec.units.size(), p / spec.units.size());
+                int q = (7 * i + g) % friendly.length;
+                enemy[i][g] = Game.Placements.pack(q % spec.units.size(), q / spec.units.size());
+            }
+        }
+        int t = 0;
+        for (; t < 20000; ++t) {
+            batch.tick(dt, friendly[t % friendly.length], enemy[t % enemy.length]);
+        }
+        long measurementOverhead = -TestUtility.allocatedBytes() + TestUtility.allocatedBytes();
+        long before = TestUtility.allocatedBytes();
+        for (; t < 40000; ++t) {
+            batch.tick(dt, friendly[t % friendly.length], enemy[t % enemy.length]);
+        }
+        assertThat(TestUtility.allocatedBytes() - before, is(measurementOverhead));
+    }
+}
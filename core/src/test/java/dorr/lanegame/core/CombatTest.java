@@ -0,0 +1,88 @@
+package dorr.lanegame.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+
+public class CombatTest {
+    private static final int HEIGHT = 10;
+    private static final int RANGE = 25;
+
+    private static Game.GameSpec spec(int length) {
+        return new Game.GameSpec(
+                1,
+                length,
+                Collections.<Game.ObjectiveSpec>emptyList(),
+                0,
+                0,
+                asList(
+                        new Game.UnitSpec("sword", HEIGHT, 1, 100,
+                                10, 1, 1,
+                                true, 0, false),
+                        new Game.UnitSpec("arrow", HEIGHT, 1, 100,
+                                10, 1, 1,
+                                false, RANGE, false)
+                )
+        );
+    }
+
+    /**
+     * A game with a single lane containing "n" randomly owned & spaced units.
+     */
+    private static Game game(int n, Random random) {
+        Game game = new Game(spec(n * 4 * HEIGHT));
+        Game.Lane lane = game.lanes.get(0);
+        int position = 0;
+        for (int i = 0; i < n; ++i) {
+            position += random.nextInt(3 * HEIGHT);
+            lane.insert(i, random.nextInt(2), i, random.nextInt(2), position, 100);
+            position += HEIGHT;
+        }
+        return game;
+    }
+
+    /**
+     * The reference O(n^2) implementation of Game.findTargets.
+     */
+    private static void scanTargets(Game game, Game.Lane lane, int[] target) {
+        for (int i = 0; i < lane.size; ++i) {
+            Game.UnitSpec spec = game.spec.units.get(lane.specIndex[i]);
+            int closest = -1;
+            int closestDistance = Integer.MAX_VALUE;
+            for (int other = 0; other < lane.size; ++other) {
+                if (Game.Owner.fromFlags(lane.flags[i]) != Game.Owner.fromFlags(lane.flags[other])) {
+                    int distance = Math.max(
+                            lane.position[i] - lane.position[other]
+                                    - game.spec.units.get(lane.specIndex[other]).height,
+                            lane.position[other] - lane.position[i] - spec.height
+                    );
+                    if (distance < closestDistance) {
+                        closest = other;
+                        closestDistance = distance;
+                    }
+                }
+            }
+            target[i] = closestDistance <= spec.range ? closest : -1;
+        }
+    }
+
+    @Test
+    public void matchesScan() {
+        Random random = new Random(1000);
+        for (int n = 0; n < 50; ++n) {
+            for (int repeat = 0; repeat < 20; ++repeat) {
+                Game game = game(n, random);
+                Game.Lane lane = game.lanes.get(0);
+                int[] expected = new int[n];
+                scanTargets(game, lane, expected);
+                game.findTargets(lane);
+                assertArrayEquals(expected, Arrays.copyOf(lane.target, n));
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package dorr.lanegame.core;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CommandQueueTest {
+    @Test
+    public void fifo() {
+        CommandQueue queue = new CommandQueue(Game.EXAMPLE, 3);
+        assertThat(queue.capacity(), is(4));
+        Game.Placements friendly = new Game.Placements();
+        Game.Placements enemy = new Game.Placements();
+        assertThat(queue.drain(friendly, enemy), is(0));
+
+        assertThat(queue.offer(Game.Owner.FRIENDLY, 1, 2), is(true));
+        assertThat(queue.offer(Game.Owner.ENEMY, 2, 4), is(true));
+        assertThat(queue.offer(Game.Owner.FRIENDLY, 0, 0), is(true));
+        assertThat(queue.offer(Game.Owner.FRIENDLY, 2, 1), is(true));
+        // full
+        assertThat(queue.offer(Game.Owner.ENEMY, 0, 0), is(false));
+        assertThat(queue.dropped(), is(1L));
+
+        assertThat(queue.drain(friendly, enemy), is(4));
+        assertThat(friendly.size(), is(3));
+        assertThat(friendly.get(0), is(Game.Placements.pack(1, 2)));
+        assertThat(friendly.get(1), is(Game.Placements.pack(0, 0)));
+        assertThat(friendly.get(2), is(Game.Placements.pack(2, 1)));
+        assertThat(enemy.size(), is(1));
+        assertThat(enemy.get(0), is(Game.Placements.pack(2, 4)));
+
+        // wraps around
+        for (int i = 0; i < 10; ++i) {
+            assertThat(queue.offer(Game.Owner.ENEMY, 0, i % Game.EXAMPLE.lanes), is(true));
+            friendly.clear();
+            enemy.clear();
+            assertThat(queue.drain(friendly, enemy), is(1));
+            assertThat(enemy.get(0), is(Game.Placements.pack(0, i % Game.EXAMPLE.lanes)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badPlacement() {
+        new CommandQueue(Game.EXAMPLE, 16).offer(Game.Owner.FRIENDLY, 0, Game.EXAMPLE.lanes);
+    }
+
+    /**
+     * Several producers racing a consumer - every command arrives exactly once, & each producer's
+     * commands arrive in order.
+     */
+    @Test
+    public void concurrent() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 20000;
+        final int lanes = Game.EXAMPLE.lanes;
+        final CommandQueue queue = new CommandQueue(Game.EXAMPLE, 64);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; ++p) {
+            final int producer = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // Encode (producer, sequence number) in the lane & a (fake) unit index
+                    for (int i = 0; i < perProducer; ++i) {
+                        int unit = i % Game.EXAMPLE.units.size();
+                        Game.Owner owner = producer % 2 == 0 ? Game.Owner.FRIENDLY : Game.Owner.ENEMY;
+                        while (!queue.offer(owner, unit, producer)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        int[] received = new int[producers];
+        Game.Placements friendly = new Game.Placements();
+        Game.Placements enemy = new Game.Placements();
+        int total = 0;
+        while (total < producers * perProducer) {
+            friendly.clear();
+            enemy.clear();
+            int drained = queue.drain(friendly, enemy);
+            if (drained == 0) {
+                Thread.yield(); // let the producers run, on machines with few cores
+            }
+            total += drained;
+            for (Game.Placements placements : new Game.Placements[] { friendly, enemy }) {
+                for (int i = 0; i < placements.size(); ++i) {
+                    int producer = Game.Placements.lane(placements.get(i));
+                    assertThat(producer < lanes, is(true));
+                    assertThat(Game.Placements.unitIndex(placements.get(i)),
+                            is(received[producer]++ % Game.EXAMPLE.units.size()));
+                }
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int p = 0; p < producers; ++p) {
+            assertThat(received[p], is(perProducer));
+        }
+        friendly.clear();
+        enemy.clear();
+        assertThat(queue.drain(friendly, enemy), is(0));
+    }
+}
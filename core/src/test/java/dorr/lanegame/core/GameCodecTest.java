@@ -0,0 +1,194 @@
+package dorr.lanegame.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class GameCodecTest {
+    private static Game play(int ticks, long seed) {
+        Game game = new Game(Game.EXAMPLE);
+        Agent friendly = new Agent.RandomAgent(Game.EXAMPLE, seed);
+        Agent enemy = new Agent.RandomAgent(Game.EXAMPLE, seed + 1);
+        for (int i = 0; i < ticks; ++i) {
+            game.tickMicros(10000, friendly.place(game), enemy.place(game));
+        }
+        return game;
+    }
+
+    private static byte[] encode(GameCodec codec, Game game) {
+        ByteBuffer buffer = ByteBuffer.allocate(codec.maxSize(game));
+        codec.write(game, buffer);
+        assertThat(buffer.position(), lessThanOrEqualTo(codec.maxSize(game)));
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static void assertSameGame(Game actual, Game expected) {
+        assertThat(actual.time, is(expected.time));
+        assertThat(actual.timeMicros, is(expected.timeMicros));
+        for (Game.Owner owner : Game.Owner.values()) {
+            assertThat(actual.player(owner).balance, is(expected.player(owner).balance));
+        }
+        for (int i = 0; i < expected.lanes.size(); ++i) {
+            Game.Lane a = actual.lanes.get(i);
+            Game.Lane b = expected.lanes.get(i);
+            for (int k = 0; k < b.objectives.size(); ++k) {
+                assertThat(a.objectives.get(k).spec, is(b.objectives.get(k).spec));
+                assertThat(a.objectives.get(k).owner, is(b.objectives.get(k).owner));
+                assertThat(a.objectives.get(k).position, is(b.objectives.get(k).position));
+            }
+            assertThat(a.size, is(b.size));
+            for (int k = 0; k < b.size; ++k) {
+                assertThat(a.specIndex[k], is(b.specIndex[k]));
+                assertThat(a.flags[k], is(b.flags[k]));
+                assertThat(a.id[k], is(b.id[k]));
+                assertThat(a.position[k], is(b.position[k]));
+                assertThat(a.health[k], is(b.health[k]));
+            }
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        GameCodec codec = new GameCodec(Game.EXAMPLE);
+        for (int ticks : new int[] { 0, 1, 1000, 10000 }) {
+            Game game = play(ticks, ticks);
+            byte[] bytes = encode(codec, game);
+
+            // Read into a game which already holds a (different) state
+            Game copy = play(500, 42);
+            codec.read(ByteBuffer.wrap(bytes), copy);
+            assertSameGame(copy, game);
+            assertThat(encode(codec, copy), is(bytes));
+
+            // The copy continues identically
+            Agent agent = new Agent.RandomAgent(Game.EXAMPLE, 7);
+            for (int i = 0; i < 1000; ++i) {
+                Game.Placement placement = agent.place(game);
+                game.tickMicros(10000, placement, null);
+                copy.tickMicros(10000, placement, null);
+            }
+            assertSameGame(copy, game);
+        }
+    }
+
+    @Test
+    public void roundTripInverted() {
+        GameCodec codec = new GameCodec(Game.EXAMPLE);
+        Game game = play(3000, 5);
+        game.invert();
+        Game copy = new Game(Game.EXAMPLE);
+        codec.read(ByteBuffer.wrap(encode(codec, game)), copy);
+        assertSameGame(copy, game);
+    }
+
+    // 10 units in each lane, spread out
+    private static Game crowded() {
+        Game game = new Game(Game.EXAMPLE);
+        int id = 0;
+        for (Game.Lane lane : game.lanes) {
+            for (int i = 0; i < 10; ++i) {
+                Game.Owner owner = i < 5 ? Game.Owner.FRIENDLY : Game.Owner.ENEMY;
+                lane.insert(i, i % 3, id++, owner.flag(), 1000 * i, 10000 - i);
+            }
+        }
+        return game;
+    }
+
+    @Test
+    public void compact() {
+        GameCodec codec = new GameCodec(Game.EXAMPLE);
+        Game game = crowded();
+        int units = 0;
+        for (Game.Lane lane : game.lanes) {
+            units += lane.size;
+        }
+        assertThat(encode(codec, game).length, lessThan(100 + 10 * units));
+    }
+
+    @Test
+    public void sequential() {
+        // Several states can be written back-to-back into one buffer
+        GameCodec codec = new GameCodec(Game.EXAMPLE);
+        Game a = play(100, 1);
+        Game b = play(2000, 2);
+        ByteBuffer buffer = ByteBuffer.allocate(codec.maxSize(a) + codec.maxSize(b));
+        codec.write(a, buffer);
+        codec.write(b, buffer);
+        buffer.flip();
+        Game copy = new Game(Game.EXAMPLE);
+        codec.read(buffer, copy);
+        assertSameGame(copy, a);
+        codec.read(buffer, copy);
+        assertSameGame(copy, b);
+        assertThat(buffer.remaining(), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void differentSpec() {
+        Game game = play(10, 1);
+        byte[] bytes = encode(new GameCodec(Game.EXAMPLE), game);
+        Game.GameSpec other = new Game.GameSpec(2, Game.EXAMPLE.length,
+                Arrays.<Game.ObjectiveSpec>asList(), 0, 0, Game.EXAMPLE.units);
+        new GameCodec(other).read(ByteBuffer.wrap(bytes), new Game(other));
+    }
+
+    /**
+     * Reading the state of "corrupt" fails, without changing the target game or the buffer.
+     */
+    private static void assertCorrupt(GameCodec codec, Game corrupt) {
+        ByteBuffer buffer = ByteBuffer.wrap(encode(codec, corrupt));
+        Game game = play(500, 42);
+        try {
+            codec.read(buffer, game);
+            fail("Expected a corrupt state");
+        } catch (IllegalArgumentException e) {
+            assertThat(buffer.position(), is(0));
+            assertSameGame(game, play(500, 42));
+        }
+    }
+
+    @Test
+    public void corrupt() {
+        // (in the last lane, after all the other state has been read)
+        GameCodec codec = new GameCodec(Game.EXAMPLE);
+        Game badFlags = crowded();
+        badFlags.lanes.get(Game.EXAMPLE.lanes - 1).flags[9] |= 0x40;
+        assertCorrupt(codec, badFlags);
+
+        Game misordered = crowded();
+        Game.Lane lane = misordered.lanes.get(Game.EXAMPLE.lanes - 1);
+        lane.position[9] = lane.position[7];
+        assertCorrupt(codec, misordered);
+
+        Game overlapping = crowded();
+        lane = overlapping.lanes.get(Game.EXAMPLE.lanes - 1);
+        lane.position[9] = lane.position[8] + 1;
+        assertCorrupt(codec, overlapping);
+
+        Game truncated = play(1000, 1);
+        byte[] bytes = encode(codec, truncated);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, bytes.length - 1);
+        Game game = play(500, 42);
+        try {
+            codec.read(buffer, game);
+            fail("Expected a truncated state");
+        } catch (IllegalArgumentException e) {
+            assertThat(buffer.position(), is(0));
+            assertSameGame(game, play(500, 42));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncated() {
+        GameCodec codec = new GameCodec(Game.EXAMPLE);
+        byte[] bytes = encode(codec, play(1000, 1));
+        codec.read(ByteBuffer.wrap(bytes, 0, bytes.length - 1), new Game(Game.EXAMPLE));
+    }
+}
@@ -0,0 +1,695 @@
+package dorr.lanegame.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class GameTest {
+    // A simple testing spec
+    private static final Game.GameSpec TEST_SPEC = new Game.GameSpec(
+            3,
+            10000,
+            asList(
+                    new Game.ObjectiveSpec(0, 2000, 200),
+                    new Game.ObjectiveSpec(0, 8000, 200),
+                    new Game.ObjectiveSpec(1, 5000, 200),
+                    new Game.ObjectiveSpec(2, 5000, 200)
+            ),
+            2000,
+            200,
+            asList(
+                    new Game.UnitSpec("sword", 1000, 2000, 10000,
+                            4000, 1000, 1000,
+                            true, 0, false),
+                    new Game.UnitSpec("arrow", 1000, 2000, 10000,
+                            4000, 1000, 1000,
+                            false, 3000, false),
+                    new Game.UnitSpec("horse", 1000, 4000, 10000,
+                            5000, 2000, 1400,
+                            false, 0, true)
+            )
+    );
+
+    private static List<String> noPlacement() {
+        return asList(null, null, null);
+    }
+
+    @Test
+    public void emptyTicks() {
+        Game game = new Game(TEST_SPEC);
+        assertThat(game.spec, sameInstance(TEST_SPEC));
+        assertThat(game.player(Game.Owner.FRIENDLY).balance, is(TEST_SPEC.startingBalance));
+        assertThat(game.player(Game.Owner.ENEMY).balance, is(TEST_SPEC.startingBalance));
+        assertThat(game.lanes.get(0).units, empty());
+
+        // Tick without placement - no change
+        game.tick(0.0f, null, null);
+        assertThat(game.player(Game.Owner.FRIENDLY).balance, is(TEST_SPEC.startingBalance));
+        assertThat(game.player(Game.Owner.ENEMY).balance, is(TEST_SPEC.startingBalance));
+        assertThat(game.lanes.get(0).units, empty());
+    }
+
+    @Test
+    public void income() {
+        Game game = new Game(TEST_SPEC);
+        int balance = game.player(Game.Owner.FRIENDLY).balance;
+        assertThat(game.player(Game.Owner.ENEMY).balance, is(balance));
+
+        game.tick(0.1f, null, null);
+        balance += 20;
+        assertThat(game.player(Game.Owner.FRIENDLY).balance, is(balance));
+        assertThat(game.player(Game.Owner.ENEMY).balance, is(balance));
+
+        // Fake out capturing some objectives
+        game.lanes.get(0).objectives.get(0).owner = Game.Owner.FRIENDLY;
+        game.lanes.get(0).objectives.get(1).owner = Game.Owner.FRIENDLY;
+        game.lanes.get(1).objectives.get(0).owner = Game.Owner.ENEMY;
+        game.tick(0.1f, null, null);
+        assertThat(game.player(Game.Owner.FRIENDLY).balance, is(balance + 60));
+        assertThat(game.player(Game.Owner.ENEMY).balance, is(balance + 40));
+    }
+
+    @Test
+    public void placement() {
+        Game game = new Game(TEST_SPEC);
+        assertThat(game.lanes.get(0).units, empty());
+        assertThat(game.player(Game.Owner.FRIENDLY).balance, is(2000));
+
+        game.tick(0.0f, new Game.Placement("sword", 0), null);
+        assertThat(game.lanes.get(0).units, hasSize(1));
+        assertThat(game.player(Game.Owner.FRIENDLY).balance, is(1000));
+
+        // horse is too expensive
+        game.tick(0.0f, new Game.Placement("horse", 1), null);
+        assertThat(game.lanes.get(1).units, empty());
+        assertThat(game.player(Game.Owner.FRIENDLY).balance, is(1000));
+
+        // cannot stack units (at placement time)
+        game.tick(0.0f, new Game.Placement("sword", 0), null);
+        assertThat(game.lanes.get(0).units, hasSize(1));
+        assertThat(game.player(Game.Owner.FRIENDLY).balance, is(1000));
+
+        // enemy can place (at the other end of the lane
+        game.tick(0.0f, null, new Game.Placement("sword", 0));
+        assertThat(game.lanes.get(0).units, hasSize(2));
+        assertThat(game.player(Game.Owner.ENEMY).balance, is(1000));
+    }
+
+    @Test
+    public void indexedPlacement() {
+        assertThat(Game.Placements.unitIndex(Game.Placements.pack(2, 1)), is(2));
+        assertThat(Game.Placements.lane(Game.Placements.pack(2, 1)), is(1));
+
+        Game game = new Game(TEST_SPEC);
+        Game.Placements friendly = new Game.Placements();
+        Game.Placements enemy = new Game.Placements();
+        // several placements per tick, made in order until the balance runs out
+        friendly.add(TEST_SPEC.unitIndex("sword"), 0);
+        friendly.add(TEST_SPEC.unitIndex("arrow"), 1);
+        friendly.add(TEST_SPEC.unitIndex("sword"), 2);
+        enemy.add(TEST_SPEC.unitIndex("arrow"), 2);
+        game.tickIndexed(0.0f, friendly, enemy);
+        assertThat(game.lanes.get(0).units, hasSize(1));
+        assertThat(game.lanes.get(1).units, hasSize(1));
+        assertThat(game.lanes.get(2).units, hasSize(1));
+        assertThat(game.lanes.get(2).units.get(0).owner, is(Game.Owner.ENEMY));
+        assertThat(game.player(Game.Owner.FRIENDLY).balance, is(0));
+        assertThat(game.player(Game.Owner.ENEMY).balance, is(1000));
+
+        friendly.clear();
+        friendly.add(TEST_SPEC.units.size(), 0);
+        try {
+            game.tickIndexed(0.0f, friendly, null);
+            fail("Expected an exception for a bad unit index");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void indexedTickMatchesPlacementTick() {
+        Game expected = new Game(Game.EXAMPLE);
+        Game actual = new Game(Game.EXAMPLE);
+        Agent expectedFriendly = new Agent.RandomAgent(Game.EXAMPLE, 10);
+        Agent expectedEnemy = new Agent.RandomAgent(Game.EXAMPLE, 11);
+        Agent actualFriendly = new Agent.RandomAgent(Game.EXAMPLE, 10);
+        Agent actualEnemy = new Agent.RandomAgent(Game.EXAMPLE, 11);
+        Game.Placements friendly = new Game.Placements();
+        Game.Placements enemy = new Game.Placements();
+        for (int t = 0; t < 10000; ++t) {
+            expected.tickMicros(10000, expectedFriendly.place(expected),
+                    expectedEnemy.place(expected));
+            friendly.clear();
+            enemy.clear();
+            actualFriendly.place(actual, friendly);
+            actualEnemy.place(actual, enemy);
+            actual.tickMicrosIndexed(10000, friendly, enemy);
+        }
+        assertSameState(actual, expected);
+    }
+
+    @Test
+    public void invert() {
+        Game game = new Game(TEST_SPEC);
+        game.tick(0.0f, new Game.Placement("sword", 0), new Game.Placement("horse", 2));
+        assertThat(game.player(Game.Owner.FRIENDLY).balance, is(1000));
+        assertThat(game.player(Game.Owner.ENEMY).balance, is(600));
+        Game.Unit sword = game.lanes.get(0).units.get(0);
+        assertThat(sword.owner, is(Game.Owner.FRIENDLY));
+        assertThat(sword.position, is(0));
+        Game.Unit horse = game.lanes.get(2).units.get(0);
+        assertThat(horse.owner, is(Game.Owner.ENEMY));
+        assertThat(horse.position, is(8999));
+
+        game.invert();
+        assertThat(game.player(Game.Owner.ENEMY).balance, is(1000));
+        assertThat(game.player(Game.Owner.FRIENDLY).balance, is(600));
+        sword = game.lanes.get(2).units.get(0);
+        assertThat(sword.owner, is(Game.Owner.ENEMY));
+        assertThat(sword.position, is(8999));
+        horse = game.lanes.get(0).units.get(0);
+        assertThat(horse.owner, is(Game.Owner.FRIENDLY));
+        assertThat(horse.position, is(0));
+    }
+
+    @Test
+    public void copyFrom() {
+        Game game = new Game(TEST_SPEC);
+        game.tick(0.5f, new Game.Placement("sword", 0), new Game.Placement("arrow", 0));
+        game.tick(0.5f, new Game.Placement("sword", 1), null);
+        Game copy = new Game(TEST_SPEC);
+        copy.copyFrom(game);
+        assertThat(copy.time, is(game.time));
+        assertThat(copy.player(Game.Owner.FRIENDLY).balance, is(game.player(Game.Owner.FRIENDLY).balance));
+        for (int lane = 0; lane < TEST_SPEC.lanes; ++lane) {
+            List<Game.Unit> expected = game.lanes.get(lane).units;
+            List<Game.Unit> actual = copy.lanes.get(lane).units;
+            assertThat(actual, hasSize(expected.size()));
+            for (int i = 0; i < expected.size(); ++i) {
+                assertThat(actual.get(i).id, is(expected.get(i).id));
+                assertThat(actual.get(i).spec, sameInstance(expected.get(i).spec));
+                assertThat(actual.get(i).owner, is(expected.get(i).owner));
+                assertThat(actual.get(i).position, is(expected.get(i).position));
+                assertThat(actual.get(i).health, is(expected.get(i).health));
+            }
+        }
+
+        // Shrinking lanes are copied correctly
+        copy.copyFrom(new Game(TEST_SPEC));
+        assertThat(copy.lanes.get(0).units, empty());
+        assertThat(copy.time, is(0.0f));
+    }
+
+    @Test
+    public void copyFromSkipsUnchangedLanes() {
+        Game game = new Game(TEST_SPEC);
+        Game snapshot = new Game(TEST_SPEC);
+        snapshot.copyFrom(game);
+        long[] versions = new long[TEST_SPEC.lanes];
+        for (int i = 0; i < versions.length; ++i) {
+            versions[i] = snapshot.lanes.get(i).version;
+            assertThat(versions[i], is(game.lanes.get(i).version));
+        }
+
+        // Only lane 1 has units, so only lane 1 changes
+        game.tick(0.1f, new Game.Placement("sword", 1), new Game.Placement("arrow", 1));
+        for (int i = 0; i < 20; ++i) {
+            game.tick(0.1f, null, null);
+            snapshot.copyFrom(game);
+            assertSameState(snapshot, game);
+        }
+        assertThat(snapshot.lanes.get(0).version, is(versions[0]));
+        assertThat(snapshot.lanes.get(2).version, is(versions[2]));
+        assertThat(snapshot.lanes.get(1).version == versions[1], is(false));
+
+        // Copying from a different game with the same state, or after a change in the snapshot,
+        // still gives the right state
+        Game other = new Game(TEST_SPEC);
+        other.copyFrom(game);
+        other.tick(0.1f, new Game.Placement("horse", 0), null);
+        snapshot.copyFrom(other);
+        assertSameState(snapshot, other);
+        snapshot.tick(0.1f, null, new Game.Placement("horse", 2));
+        snapshot.copyFrom(game);
+        assertSameState(snapshot, game);
+        game.invert();
+        game.tick(0.1f, null, null);
+        game.invert();
+        snapshot.copyFrom(game);
+        assertSameState(snapshot, game);
+    }
+
+    @Test
+    public void copyFromSkipsQuietLanes() {
+        // Stationary units, out of range of each other, never change their lane
+        Game.GameSpec spec = new Game.GameSpec(2, 10000,
+                Collections.<Game.ObjectiveSpec>emptyList(), 2000, 200,
+                asList(new Game.UnitSpec("wall", 1000, 0, 10000, 4000, 1000, 1000, false, 0, false),
+                        TEST_SPEC.units.get(0)));
+        Game game = new Game(spec);
+        game.tick(0.1f, new Game.Placement("wall", 0), new Game.Placement("wall", 0));
+        long version = game.lanes.get(0).version;
+        Game snapshot = new Game(spec);
+        snapshot.copyFrom(game);
+
+        game.tick(0.1f, new Game.Placement("sword", 1), null);
+        for (int i = 0; i < 20; ++i) {
+            game.tick(0.1f, null, null);
+            snapshot.copyFrom(game);
+            assertSameState(snapshot, game);
+        }
+        game.advanceUntil(game.timeMicros + 10 * Game.MICROS_PER_SECOND, 10000);
+        snapshot.copyFrom(game);
+        assertSameState(snapshot, game);
+        assertThat(game.lanes.get(0).units, hasSize(2));
+        assertThat(game.lanes.get(0).version, is(version));
+        assertThat(snapshot.lanes.get(0).version, is(version));
+    }
+
+    @Test
+    public void copyFromEveryTick() {
+        // Copying only changed lanes gives the same state as a full copy, including objectives
+        Game game = new Game(Game.EXAMPLE);
+        Game snapshot = new Game(Game.EXAMPLE);
+        Agent friendly = new Agent.RandomAgent(Game.EXAMPLE, 3);
+        Agent enemy = new Agent.RandomAgent(Game.EXAMPLE, 4);
+        for (int t = 0; t < 3000; ++t) {
+            game.tickMicros(10000, friendly.place(game), enemy.place(game));
+            snapshot.copyFrom(game);
+            assertSameState(snapshot, game);
+            for (int i = 0; i < game.lanes.size(); ++i) {
+                List<Game.Objective> objectives = game.lanes.get(i).objectives;
+                for (int k = 0; k < objectives.size(); ++k) {
+                    assertThat(snapshot.lanes.get(i).objectives.get(k).owner,
+                            is(objectives.get(k).owner));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void copyFromAfterLaneIsEmptied() {
+        // Two identical units kill each other on the same tick, leaving their lane empty
+        Game game = new Game(TEST_SPEC);
+        Game snapshot = new Game(TEST_SPEC);
+        game.tick(0.1f, new Game.Placement("sword", 1), new Game.Placement("sword", 1));
+        snapshot.copyFrom(game);
+        int ticks = 0;
+        while (!game.lanes.get(1).units.isEmpty()) {
+            assertThat("units never fought", ++ticks < 1000, is(true));
+            game.tick(0.1f, null, null);
+            snapshot.copyFrom(game);
+        }
+        Game expected = new Game(TEST_SPEC);
+        expected.copyFrom(game);
+        assertSameState(snapshot, expected);
+        assertSameState(snapshot, game);
+    }
+
+    @Test
+    public void captures() {
+        Game game = new Game(TEST_SPEC);
+        game.recordCaptures(2);
+        Game.Captures captures = game.lanes.get(0).captures;
+        assertThat(captures.count(), is(0L));
+
+        // walk a sword up lane 0, over the objective at 2000
+        game.tick(0.1f, new Game.Placement("sword", 0), null);
+        for (int i = 0; i < 10; ++i) {
+            game.tick(0.1f, null, null);
+        }
+        assertThat(captures.count(), is(1L));
+        assertThat(captures.objective(0), is(0));
+        assertThat(captures.owner(0), is(Game.Owner.FRIENDLY));
+        assertThat(game.lanes.get(0).objectives.get(0).owner, is(Game.Owner.FRIENDLY));
+        // no other lane has seen a capture
+        assertThat(game.lanes.get(1).captures.count(), is(0L));
+
+        // holding an objective is not another capture
+        game.tick(0.1f, null, null);
+        assertThat(captures.count(), is(1L));
+
+        // snapshots & inverted games see the same captures
+        Game copy = new Game(TEST_SPEC);
+        copy.copyFrom(game);
+        assertThat(copy.lanes.get(0).captures.count(), is(1L));
+        copy.invert();
+        Game.Captures inverted = copy.lanes.get(2).captures;
+        assertThat(inverted.objective(0), is(1));
+        assertThat(inverted.owner(0), is(Game.Owner.ENEMY));
+        assertThat(copy.lanes.get(2).objectives.get(1).owner, is(Game.Owner.ENEMY));
+    }
+
+    private static void assertUnit(Game.Unit unit, int id, Game.Owner owner, int position, int health) {
+        assertThat(unit.id, is(id));
+        assertThat(unit.owner, is(owner));
+        assertThat(unit.position, is(position));
+        assertThat(unit.health, is(health));
+    }
+
+    @Test
+    public void combat() {
+        Game game = new Game(TEST_SPEC);
+        game.tick(0.1f, new Game.Placement("sword", 1), new Game.Placement("arrow", 1));
+        for (int i = 0; i < 10; ++i) {
+            game.tick(0.1f, null, null);
+        }
+        game.tick(0.1f, new Game.Placement("arrow", 1), new Game.Placement("sword", 1));
+        for (int i = 0; i < 20; ++i) {
+            game.tick(0.1f, null, null);
+        }
+        List<Game.Unit> units = game.lanes.get(1).units;
+        assertThat(units, hasSize(4));
+        // the friendly arrow is in range of the enemy arrow, which is in range of the sword
+        assertUnit(units.get(0), 2, Game.Owner.FRIENDLY, 2400, 10000);
+        assertThat(units.get(0).state, is(Game.Unit.State.COMBAT));
+        assertUnit(units.get(1), 0, Game.Owner.FRIENDLY, 5399, 3044);
+        assertUnit(units.get(2), 1, Game.Owner.ENEMY, 6399, 5629);
+        assertUnit(units.get(3), 3, Game.Owner.ENEMY, 7399, 10000);
+        assertThat(units.get(3).state, is(Game.Unit.State.MOVEMENT));
+
+        // the sword dies & the enemy arrow is finished off
+        for (int i = 0; i < 20; ++i) {
+            game.tick(0.1f, null, null);
+        }
+        assertThat(units, hasSize(2));
+        assertUnit(units.get(0), 2, Game.Owner.FRIENDLY, 2800, 10000);
+        assertUnit(units.get(1), 3, Game.Owner.ENEMY, 6399, 7200);
+    }
+
+    private static void assertSameState(Game actual, Game expected) {
+        assertThat(actual.timeMicros, is(expected.timeMicros));
+        for (Game.Owner owner : Game.Owner.values()) {
+            assertThat(actual.player(owner).balance, is(expected.player(owner).balance));
+        }
+        for (int i = 0; i < expected.lanes.size(); ++i) {
+            List<Game.Unit> units = expected.lanes.get(i).units;
+            assertThat(actual.lanes.get(i).units, hasSize(units.size()));
+            for (int j = 0; j < units.size(); ++j) {
+                Game.Unit unit = units.get(j);
+                assertUnit(actual.lanes.get(i).units.get(j), unit.id, unit.owner, unit.position,
+                        unit.health);
+            }
+        }
+    }
+
+    @Test
+    public void tickMicrosMatchesTick() {
+        // With an exactly representable dt, integer & floating point modes agree
+        Game floating = new Game(TEST_SPEC);
+        Game integer = new Game(TEST_SPEC);
+        for (int i = 0; i < 200; ++i) {
+            Game.Placement friendly = i % 10 == 0 ? new Game.Placement("sword", i % 3) : null;
+            Game.Placement enemy = i % 15 == 0 ? new Game.Placement("arrow", i % 3) : null;
+            floating.tick(0.25f, friendly, enemy);
+            integer.tickMicros(250000, friendly, enemy);
+            assertSameState(integer, floating);
+        }
+        assertThat(integer.time, is(floating.time));
+    }
+
+    @Test
+    public void tickMicrosTime() {
+        Game game = new Game(TEST_SPEC);
+        for (int i = 0; i < 60000; ++i) {
+            game.tickMicros(16667, null, null);
+        }
+        assertThat(game.timeMicros, is(60000L * 16667));
+        assertThat(game.time, is(60000L * 16667 / 1e6f));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tickMicrosNegative() {
+        new Game(TEST_SPEC).tickMicros(-1, null, null);
+    }
+
+    private static void checkAdvanceUntil(Game.GameSpec spec, int dtMicros) {
+        Game expected = new Game(spec);
+        Game actual = new Game(spec);
+        Agent friendly = new Agent.RandomAgent(spec, 1);
+        Agent enemy = new Agent.RandomAgent(spec, 2);
+        Utility.FastRandom random = new Utility.FastRandom(3);
+        for (int segment = 0; segment < 100; ++segment) {
+            // Some placements, then a stretch without any
+            for (int t = 0; t < 50; ++t) {
+                Game.Placement f = friendly.place(expected);
+                Game.Placement e = enemy.place(expected);
+                expected.tickMicros(dtMicros, f, e);
+                actual.tickMicros(dtMicros, f, e);
+            }
+            long until = expected.timeMicros + random.nextInt(300) * dtMicros + random.nextInt(dtMicros);
+            long ticks = 0;
+            while (expected.timeMicros + dtMicros <= until) {
+                expected.tickMicros(dtMicros, null, null);
+                ++ticks;
+            }
+            assertThat(actual.advanceUntil(until, dtMicros), is(ticks));
+            assertSameState(actual, expected);
+            assertThat(actual.timeMicros, is(expected.timeMicros));
+            assertThat(actual.hash(), is(expected.hash()));
+        }
+    }
+
+    @Test
+    public void advanceUntil() {
+        checkAdvanceUntil(TEST_SPEC, 10000);
+        checkAdvanceUntil(Game.EXAMPLE, 10000);
+        checkAdvanceUntil(Game.EXAMPLE, 33333);
+
+        // A lone unit marches the length of the lane, then is refunded
+        Game game = new Game(TEST_SPEC);
+        game.tickMicros(10000, new Game.Placement("sword", 0), null);
+        assertThat(game.advanceUntil(4000000, 10000), is(399L));
+        assertThat(game.lanes.get(0).units.get(0).position, is(20 * 399 + 20));
+        game.advanceUntil(60000000, 10000);
+        assertThat(game.lanes.get(0).units, empty());
+        assertThat(game.timeMicros, is(60000000L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void advanceUntilZeroTimestep() {
+        new Game(TEST_SPEC).advanceUntil(1000000, 0);
+    }
+
+    @Test
+    public void hash() {
+        Game game = new Game(TEST_SPEC);
+        Game other = new Game(TEST_SPEC);
+        assertThat(game.hash(), is(other.hash()));
+        GameCodec codec = new GameCodec(TEST_SPEC);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        Agent friendly = new Agent.RandomAgent(TEST_SPEC, 1);
+        Agent enemy = new Agent.RandomAgent(TEST_SPEC, 2);
+        for (int i = 0; i < 3000; ++i) {
+            long before = game.hash();
+            game.tickMicros(10000, friendly.place(game), enemy.place(game));
+            assertThat(game.hash(), is(game.recomputeHash()));
+            if (i % 100 == 0) {
+                assertThat(game.hash(), is(not(before)));
+                other.copyFrom(game);
+                assertThat(other.hash(), is(game.hash()));
+                buffer.clear();
+                codec.write(game, buffer);
+                buffer.flip();
+                codec.read(buffer, other);
+                assertThat(other.hash(), is(game.hash()));
+                other.invert();
+                assertThat(other.hash(), is(other.recomputeHash()));
+                assertThat(other.hash(), is(not(game.hash())));
+                other.invert();
+                assertThat(other.hash(), is(game.hash()));
+            }
+        }
+        // Objectives are hashed too
+        game.lanes.get(0).objectives.get(0).owner = Game.Owner.FRIENDLY;
+        long friendlyHash = game.hash();
+        game.lanes.get(0).objectives.get(0).owner = Game.Owner.ENEMY;
+        assertThat(game.hash(), is(not(friendlyHash)));
+    }
+
+    @Test
+    public void parallelMatchesSerial() {
+        final int lanes = 30;
+        List<Game.ObjectiveSpec> objectives = new ArrayList<>();
+        for (int lane = 0; lane < lanes; ++lane) {
+            objectives.add(new Game.ObjectiveSpec(lane, 2000 + (lane * 997) % 6000, 200));
+        }
+        Game.GameSpec spec = new Game.GameSpec(lanes, 10000, objectives, 2000, 200,
+                TEST_SPEC.units);
+        Game serial = new Game(spec);
+        Game parallel = new Game(spec);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        parallel.setPool(pool);
+        try {
+            Agent friendly = new Agent.RandomAgent(spec, 1);
+            Agent enemy = new Agent.RandomAgent(spec, 2);
+            for (int i = 0; i < 5000; ++i) {
+                Game.Placement f = friendly.place(serial);
+                Game.Placement e = enemy.place(serial);
+                serial.tickMicros(10000, f, e);
+                parallel.tickMicros(10000, f, e);
+                if (i % 100 == 0) {
+                    assertSameState(parallel, serial);
+                }
+            }
+            assertSameState(parallel, serial);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void tickDoesNotAllocate() {
+        Game game = new Game(TEST_SPEC);
+        Game.Placement[] placements = new Game.Placement[TEST_SPEC.lanes * TEST_SPEC.units.size()];
+        for (int i = 0; i < placements.length; ++i) {
+            placements[i] = new Game.Placement(TEST_SPEC.units.get(i % TEST_SPEC.units.size()).name,
+                    i / TEST_SPEC.units.size());
+        }
+        int t = 0;
+        // Warm up, so that lane storage reaches its steady-state capacity
+        for (; t < 20000; ++t) {
+            game.tick(0.01f, placements[t % placements.length], placements[(7 * t) % placements.length]);
+        }
+        long measurementOverhead = -TestUtility.allocatedBytes() + TestUtility.allocatedBytes();
+        long before = TestUtility.allocatedBytes();
+        for (; t < 40000; ++t) {
+            game.tick(0.01f, placements[t % placements.length], placements[(7 * t) % placements.length]);
+        }
+        assertThat(TestUtility.allocatedBytes() - before, is(measurementOverhead));
+    }
+
+    @Test
+    public void indexedTickDoesNotAllocate() {
+        Game game = new Game(TEST_SPEC);
+        Game.Placements friendly = new Game.Placements();
+        Game.Placements enemy = new Game.Placements();
+        int combinations = TEST_SPEC.lanes * TEST_SPEC.units.size();
+        int t = 0;
+        // Warm up, so that lane storage reaches its steady-state capacity
+        for (; t < 50000; ++t) {
+            tickIndexed(game, friendly, enemy, t, combinations);
+        }
+        long measurementOverhead = -TestUtility.allocatedBytes() + TestUtility.allocatedBytes();
+        long before = TestUtility.allocatedBytes();
+        for (; t < 100000; ++t) {
+            tickIndexed(game, friendly, enemy, t, combinations);
+        }
+        assertThat(TestUtility.allocatedBytes() - before, is(measurementOverhead));
+    }
+
+    private static void tickIndexed(Game game, Game.Placements friendly, Game.Placements enemy,
+                                    int t, int combinations) {
+        friendly.clear();
+        enemy.clear();
+        for (int k = 0; k < 2; ++k) {
+            int f = (t + k) % combinations;
+            int e = (7 * t + k) % combinations;
+            friendly.add(f % TEST_SPEC.units.size(), f / TEST_SPEC.units.size());
+            enemy.add(e % TEST_SPEC.units.size(), e / TEST_SPEC.units.size());
+        }
+        game.tickIndexed(0.01f, friendly, enemy);
+    }
+
+    /**
+     * Over a 10 minute RandomAgent match, including taking a snapshot & reading every unit each
+     * tick (as the renderer does), allocation stays flat once lanes reach their working size.
+     */
+    @Test
+    public void matchAllocationIsFlat() {
+        Game game = new Game(Game.EXAMPLE);
+        Game snapshot = new Game(Game.EXAMPLE);
+        Agent friendly = new Agent.RandomAgent(Game.EXAMPLE, 1);
+        Agent enemy = new Agent.RandomAgent(Game.EXAMPLE, 2);
+        final int dtMicros = 10000;
+        final int ticksPerMinute = 60 * Game.MICROS_PER_SECOND / dtMicros;
+        long[] allocated = new long[10];
+        long checksum = 0;
+        for (int minute = 0; minute < allocated.length; ++minute) {
+            long before = TestUtility.allocatedBytes();
+            for (int i = 0; i < ticksPerMinute; ++i) {
+                game.tickMicros(dtMicros, friendly.place(game), enemy.place(game));
+                snapshot.copyFrom(game);
+                for (int lane = 0; lane < snapshot.lanes.size(); ++lane) {
+                    List<Game.Unit> units = snapshot.lanes.get(lane).units;
+                    for (int k = 0; k < units.size(); ++k) {
+                        checksum += units.get(k).position;
+                    }
+                }
+            }
+            allocated[minute] = TestUtility.allocatedBytes() - before;
+        }
+        // (Using the positions, so the reads aren't optimized away)
+        assertThat(checksum, greaterThan(0L));
+        // Far less than one object per tick, after the first minute
+        for (int minute = 1; minute < allocated.length; ++minute) {
+            assertThat("bytes allocated in minute " + minute + " of " + Arrays.toString(allocated),
+                    allocated[minute], lessThan((long) ticksPerMinute));
+        }
+    }
+
+    private static String render(Game game) {
+        int height = game.spec.units.get(0).height;
+        char[] row = new char[game.spec.length / height];
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("+");
+        Arrays.fill(row, '-');
+        sb.append(row);
+        sb.append("+\n");
+        for (Game.Lane lane : game.lanes) {
+            Arrays.fill(row, ' ');
+            int n = 0;
+            for (Game.Objective objective : lane.objectives) {
+                row[(objective.spec.position + height / 2) / height] = '\'';
+            }
+            for (Game.Unit unit : lane.units) {
+                char label = unit.owner == Game.Owner.FRIENDLY ? '@' : '#';
+                row[(unit.position + height / 2) / height] = label;
+            }
+            sb.append("|");
+            sb.append(row);
+            sb.append("|\n");
+        }
+        sb.append("+");
+        Arrays.fill(row, '-');
+        sb.append(row);
+        sb.append("+\n");
+        return sb.toString();
+    }
+
+    @Test
+    public void demo() {
+        Game game = new Game(TEST_SPEC);
+        game.tick(0.5f, new Game.Placement("sword", 1), new Game.Placement("sword", 1));
+        for (int i = 0; i < 2; ++i) {
+            System.out.println(render(game));
+            game.tick(0.5f, null, null);
+        }
+        System.out.println(render(game));
+        game.tick(0.5f, new Game.Placement("sword", 1), new Game.Placement("sword", 1));
+        for (int i = 0; i < 10; ++i) {
+            System.out.println(render(game));
+            game.tick(0.5f, null, null);
+        }
+        for (Game.Unit unit : game.lanes.get(1).units) {
+            System.out.println(unit.position + " " + unit.health);
+        }
+    }
+}
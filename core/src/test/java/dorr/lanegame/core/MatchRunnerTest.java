@@ -0,0 +1,55 @@
+package dorr.lanegame.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class MatchRunnerTest {
+    private static final float DT = 0.01f;
+    private static final float MAX_DURATION = 60;
+
+    private static MatchRunner runner() {
+        return new MatchRunner(Game.EXAMPLE, DT, MAX_DURATION,
+                MatchRunner.RANDOM_AGENT, MatchRunner.RANDOM_AGENT);
+    }
+
+    @Test
+    public void play() {
+        MatchRunner.Result result = runner().play(123, 0);
+        assertThat(result.duration, lessThanOrEqualTo(MAX_DURATION + DT));
+        assertThat(result.ticks, greaterThan(0));
+        assertThat(result.meanIncome[0], greaterThan(0f));
+        assertThat(result.meanIncome[1], greaterThan(0f));
+
+        // Deterministic for a given seed & index
+        MatchRunner.Result again = runner().play(123, 0);
+        assertThat(again.winner, is(result.winner));
+        assertThat(again.ticks, is(result.ticks));
+        assertThat(again.meanIncome[0], is(result.meanIncome[0]));
+    }
+
+    @Test
+    public void run() {
+        final int matches = 12;
+        MatchRunner.Summary summary = runner().run(matches, 456);
+        assertThat(summary.matches, is(matches));
+        assertThat(summary.wins(Game.Owner.FRIENDLY) + summary.wins(Game.Owner.ENEMY)
+                + summary.draws, is(matches));
+        assertThat(summary.minDuration, lessThanOrEqualTo(summary.meanDuration()));
+        assertThat(summary.meanDuration(), lessThanOrEqualTo(summary.maxDuration));
+        assertThat(summary.toString(), startsWith("Summary(matches=" + matches + ", "));
+
+        // Results don't depend on parallelism
+        MatchRunner.Summary serial = runner().run(matches, 456, new ForkJoinPool(1));
+        assertThat(serial.wins(Game.Owner.FRIENDLY), is(summary.wins(Game.Owner.FRIENDLY)));
+        assertThat(serial.draws, is(summary.draws));
+        assertThat(serial.totalTicks(), is(summary.totalTicks()));
+        assertThat(serial.meanIncome(Game.Owner.ENEMY), is(summary.meanIncome(Game.Owner.ENEMY)));
+    }
+}
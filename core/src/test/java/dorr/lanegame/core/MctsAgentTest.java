@@ -0,0 +1,116 @@
+package dorr.lanegame.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class MctsAgentTest {
+    private static final int SEARCH_TIMESTEP_MICROS = 100000;
+
+    private static Game midGame() {
+        Game game = new Game(Game.EXAMPLE);
+        Agent friendly = new Agent.RandomAgent(Game.EXAMPLE, 1);
+        Agent enemy = new Agent.RandomAgent(Game.EXAMPLE, 2);
+        for (int i = 0; i < 1000; ++i) {
+            game.tickMicros(10000, friendly.place(game), enemy.place(game));
+        }
+        return game;
+    }
+
+    @Test
+    public void beatsRandom() {
+        // (invariant checks would slow the search down a lot)
+        boolean checks = Utility.checksEnabled();
+        Utility.setChecksEnabled(false);
+        try {
+            // one match on each side
+            assertThat(playRandom(0), is(true));
+            assertThat(playRandom(1), is(true));
+        } finally {
+            Utility.setChecksEnabled(checks);
+        }
+    }
+
+    /**
+     * @return true if MCTS beat a RandomAgent in match "match"
+     */
+    private static boolean playRandom(int match) {
+        Game.Owner owner = match % 2 == 0 ? Game.Owner.FRIENDLY : Game.Owner.ENEMY;
+        MctsAgent mcts = new MctsAgent(Game.EXAMPLE, owner, SEARCH_TIMESTEP_MICROS,
+                Long.MAX_VALUE / 4, 50, match, null);
+        // A fixed number of rollouts per decision, so that the match is reproducible
+        mcts.setMaxRollouts(100);
+        Agent random = new Agent.RandomAgent(Game.EXAMPLE, 100 + match);
+        Game game = new Game(Game.EXAMPLE);
+        Game.Placements ours = new Game.Placements();
+        Game.Placements theirs = new Game.Placements();
+        for (int t = 0; t < 3000; ++t) {
+            ours.clear();
+            theirs.clear();
+            mcts.place(game, ours);
+            random.place(game, theirs);
+            if (owner == Game.Owner.FRIENDLY) {
+                game.tickMicrosIndexed(10000, ours, theirs);
+            } else {
+                game.tickMicrosIndexed(10000, theirs, ours);
+            }
+        }
+        return game.objectives(owner.flip()) < game.objectives(owner);
+    }
+
+    @Test
+    public void searchDoesNotAllocate() {
+        Game game = midGame();
+        MctsAgent agent = new MctsAgent(Game.EXAMPLE, Game.Owner.FRIENDLY, SEARCH_TIMESTEP_MICROS,
+                1, 50, 1, null);
+        // Warm up, so that the searcher's lanes reach their working size
+        for (int i = 0; i < 20; ++i) {
+            agent.search(game, Long.MAX_VALUE, 100);
+        }
+        long measurementOverhead = -TestUtility.allocatedBytes() + TestUtility.allocatedBytes();
+        long before = TestUtility.allocatedBytes();
+        agent.search(game, Long.MAX_VALUE, 100);
+        assertThat(TestUtility.allocatedBytes() - before, is(measurementOverhead));
+        assertThat(agent.lastRollouts(), is(100L));
+    }
+
+    @Test
+    public void deadline() {
+        Game game = midGame();
+        game.player(Game.Owner.ENEMY).balance = 5000;
+        MctsAgent agent = new MctsAgent(Game.EXAMPLE, Game.Owner.ENEMY, SEARCH_TIMESTEP_MICROS,
+                20000000, 50, 1, null);
+        long start = System.nanoTime();
+        agent.place(game);
+        long elapsed = System.nanoTime() - start;
+        assertThat(elapsed, greaterThanOrEqualTo(20000000L));
+        // (one rollout past the deadline, at most)
+        assertThat(elapsed, lessThan(200000000L));
+        assertThat(agent.lastRollouts(), greaterThan(0L));
+    }
+
+    @Test
+    public void parallel() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Game game = midGame();
+            MctsAgent agent = new MctsAgent(Game.EXAMPLE, Game.Owner.FRIENDLY,
+                    SEARCH_TIMESTEP_MICROS, 1, 50, 1, pool);
+            int action = agent.search(game, Long.MAX_VALUE, 50);
+            assertThat(agent.lastRollouts(), is(100L));
+            assertThat(action, greaterThanOrEqualTo(0));
+            assertThat(action, lessThan(1 + Game.EXAMPLE.units.size() * Game.EXAMPLE.lanes));
+            // again, reusing the searchers
+            agent.search(game, Long.MAX_VALUE, 50);
+            assertThat(agent.rollouts(), is(200L));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
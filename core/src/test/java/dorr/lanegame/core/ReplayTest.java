@@ -0,0 +1,180 @@
+package dorr.lanegame.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class ReplayTest {
+    private static final int DT_MICROS = 10000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static byte[] encode(Game game) {
+        GameCodec codec = new GameCodec(game.spec);
+        ByteBuffer buffer = ByteBuffer.allocate(codec.maxSize(game));
+        codec.write(game, buffer);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Record "ticks" ticks of a random game, saving the state every "every" ticks.
+     */
+    private static Map<Long, byte[]> record(File file, int ticks, int every) throws IOException {
+        Map<Long, byte[]> states = new HashMap<>();
+        Game game = new Game(Game.EXAMPLE);
+        Agent friendly = new Agent.RandomAgent(Game.EXAMPLE, 1);
+        Agent enemy = new Agent.RandomAgent(Game.EXAMPLE, 2);
+        ReplayRecorder recorder = new ReplayRecorder(file, Game.EXAMPLE, DT_MICROS, 100);
+        try {
+            for (long tick = 0; tick < ticks; ++tick) {
+                if (tick % every == 0) {
+                    states.put(tick, encode(game));
+                }
+                Game.Placement f = friendly.place(game);
+                Game.Placement e = enemy.place(game);
+                recorder.record(game, f, e);
+                game.tickMicros(DT_MICROS, f, e);
+            }
+            states.put((long) ticks, encode(game));
+            assertThat(recorder.ticks(), is((long) ticks));
+        } finally {
+            recorder.close();
+        }
+        return states;
+    }
+
+    @Test
+    public void seek() throws IOException {
+        // 30 minutes at 100 Hz
+        final int ticks = 180000;
+        File file = mFolder.newFile();
+        Map<Long, byte[]> states = record(file, ticks, 7919);
+        // Mostly placements (a few bytes a tick), with a keyframe every 100 ticks (~7.5 B/tick)
+        assertThat(file.length(), lessThan(16L * ticks));
+
+        Replay replay = new Replay(file, Game.EXAMPLE);
+        assertThat(replay.ticks(), is((long) ticks));
+        assertThat(replay.timestepMicros, is(DT_MICROS));
+        Game game = new Game(Game.EXAMPLE);
+        long t0 = System.nanoTime();
+        for (Map.Entry<Long, byte[]> state : states.entrySet()) {
+            replay.seek(state.getKey(), game);
+            assertThat("tick " + state.getKey(), encode(game), is(state.getValue()));
+        }
+        // Each seek decodes a keyframe & replays under 100 ticks (~1ms), so this is a loose bound
+        assertThat((System.nanoTime() - t0) / states.size(), lessThan(50000000L));
+
+        // Backwards works too
+        replay.seek(0, game);
+        assertThat(encode(game), is(states.get(0L)));
+    }
+
+    @Test
+    public void truncated() throws IOException {
+        File file = mFolder.newFile();
+        Map<Long, byte[]> states = record(file, 2000, 1000);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 2);
+        } finally {
+            raf.close();
+        }
+        Replay replay = new Replay(file, Game.EXAMPLE);
+        assertThat(replay.ticks(), is(1999L));
+        Game game = new Game(Game.EXAMPLE);
+        replay.seek(1000, game);
+        assertThat(encode(game), is(states.get(1000L)));
+    }
+
+    @Test
+    public void indexedTicks() throws IOException {
+        File file = mFolder.newFile();
+        Map<Long, byte[]> states = new HashMap<>();
+        Game game = new Game(Game.EXAMPLE);
+        Agent agent = new Agent.RandomAgent(Game.EXAMPLE, 3);
+        Game.Placements friendly = new Game.Placements();
+        Game.Placements enemy = new Game.Placements();
+        ReplayRecorder recorder = new ReplayRecorder(file, Game.EXAMPLE, DT_MICROS, 50);
+        try {
+            for (long tick = 0; tick < 1000; ++tick) {
+                states.put(tick, encode(game));
+                friendly.clear();
+                enemy.clear();
+                // A mix of zero, one & several placements per player
+                for (int i = 0; i < tick % 3; ++i) {
+                    agent.place(game, friendly);
+                }
+                for (int i = 0; i < tick % 4; ++i) {
+                    agent.place(game, enemy);
+                }
+                if (tick % 5 == 0) {
+                    // & some old-style ticks, in the same replay
+                    Game.Placement placement = agent.place(game);
+                    recorder.record(game, placement, null);
+                    game.tickMicros(DT_MICROS, placement, null);
+                } else {
+                    recorder.recordIndexed(game, friendly, enemy);
+                    game.tickMicrosIndexed(DT_MICROS, friendly, enemy);
+                }
+            }
+            states.put(1000L, encode(game));
+        } finally {
+            recorder.close();
+        }
+        Replay replay = new Replay(file, Game.EXAMPLE);
+        assertThat(replay.ticks(), is(1000L));
+        Game replayed = new Game(Game.EXAMPLE);
+        for (long tick : new long[] { 1000, 0, 49, 50, 51, 777, 999 }) {
+            replay.seek(tick, replayed);
+            assertThat(Arrays.equals(encode(replayed), states.get(tick)), is(true));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notAReplay() throws IOException {
+        File file = mFolder.newFile();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.writeInt(1234);
+        } finally {
+            raf.close();
+        }
+        new Replay(file, Game.EXAMPLE);
+    }
+
+    @Test
+    public void simulation() throws IOException, InterruptedException {
+        File file = mFolder.newFile();
+        Simulation simulation = new Simulation(0.01f, Game.EXAMPLE,
+                new Agent.RandomAgent(Game.EXAMPLE, 1), new Agent.RandomAgent(Game.EXAMPLE, 2));
+        ReplayRecorder recorder = new ReplayRecorder(file, Game.EXAMPLE,
+                simulation.timestepMicros(), 100);
+        try {
+            simulation.record(recorder);
+            Thread.sleep(300);
+            simulation.record(null);
+        } finally {
+            simulation.stop();
+            recorder.close();
+        }
+        Replay replay = new Replay(file, Game.EXAMPLE);
+        assertThat(replay.ticks(), greaterThan(0L));
+        Game game = new Game(Game.EXAMPLE);
+        replay.seek(replay.ticks(), game);
+        assertThat(game.timeMicros, greaterThan(0L));
+    }
+}
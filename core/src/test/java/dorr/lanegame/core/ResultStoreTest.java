@@ -0,0 +1,246 @@
+package dorr.lanegame.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ResultStoreTest {
+    private static final float DT = 0.01f;
+    private static final float MAX_DURATION = 60;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * Only places a single type of unit.
+     */
+    private static MatchRunner.AgentFactory only(final int unit) {
+        return new MatchRunner.AgentFactory() {
+            @Override
+            public Agent create(final Game.GameSpec spec, long seed) {
+                final Agent random = new Agent.RandomAgent(spec, seed);
+                return new Agent() {
+                    @Override
+                    public Game.Placement place(Game game) {
+                        Game.Placement placement = random.place(game);
+                        return new Game.Placement(spec.units.get(unit).name, placement.lane);
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    public void run() throws IOException {
+        File file = mFolder.newFile();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        MatchRunner.Result first;
+        try (ResultStore store = ResultStore.create(file, Game.EXAMPLE, 100, 8)) {
+            MatchRunner runner = new MatchRunner(Game.EXAMPLE, DT, MAX_DURATION,
+                    MatchRunner.RANDOM_AGENT, only(1));
+            runner.run(10, 123, pool, store, 7, 8);
+            new MatchRunner(Game.EXAMPLE, DT, MAX_DURATION, only(0), only(2))
+                    .run(5, 456, pool, store, 9, 10);
+            assertThat(store.count(), is(15));
+            first = runner.play(123, 0);
+        } finally {
+            pool.shutdown();
+        }
+
+        try (ResultStore store = ResultStore.open(file)) {
+            assertThat(store.count(), is(15));
+            assertThat(store.capacity, is(100));
+            assertThat(store.samples, is(8));
+            for (int i = 0; i < store.count(); ++i) {
+                assertThat(store.specHash(i), is(ResultStore.specHash(Game.EXAMPLE)));
+                assertThat(store.agent(i, Game.Owner.FRIENDLY), is(i < 10 ? 7 : 9));
+                assertThat(store.agent(i, Game.Owner.ENEMY), is(i < 10 ? 8 : 10));
+                assertThat(store.unitMix(i, Game.Owner.ENEMY), is(i < 10 ? 2 : 4));
+            }
+            // Records are in match order
+            assertThat(store.winner(0), is(first.winner));
+            assertThat(store.ticks(0), is(first.ticks));
+
+            // The final sample is the final ownership, which decides the winner
+            for (int i = 0; i < store.count(); ++i) {
+                long ownership = store.ownership(i, store.samples - 1);
+                int friendly = 0, enemy = 0;
+                for (int k = 0; k < store.objectives; ++k) {
+                    Game.Owner owner = ResultStore.owner(ownership, k);
+                    friendly += owner == Game.Owner.FRIENDLY ? 1 : 0;
+                    enemy += owner == Game.Owner.ENEMY ? 1 : 0;
+                }
+                Game.Owner winner = friendly == enemy ? null
+                        : friendly < enemy ? Game.Owner.ENEMY : Game.Owner.FRIENDLY;
+                assertThat(store.winner(i), is(winner));
+            }
+
+            float[] winRate = store.winRateByUnitMix(Game.Owner.ENEMY);
+            assertThat(winRate.length, is(8));
+            assertThat(Float.isNaN(winRate[2]), is(false));
+            assertThat(Float.isNaN(winRate[4]), is(false));
+            assertThat(Float.isNaN(winRate[1]), is(true));
+            assertThat(winRate[2], lessThanOrEqualTo(1f));
+        }
+    }
+
+    @Test
+    public void uncommitted() throws IOException {
+        File file = mFolder.newFile();
+        try (ResultStore store = ResultStore.create(file, Game.EXAMPLE, 10, 1)) {
+            int record = store.reserve(2);
+            store.setResult(record, 1, 2, 3, Game.Owner.ENEMY, 4, 5, 6);
+        }
+        try (ResultStore store = ResultStore.open(file)) {
+            assertThat(store.count(), is(0));
+            int record = store.reserve(1);
+            store.setResult(record, 1, 2, 3, null, 4, 5, 6);
+            store.commit(record, 1);
+            assertThat(store.count(), is(1));
+            assertThat(store.winner(0), nullValue());
+            assertThat(store.balance(0, Game.Owner.ENEMY), is(6));
+        }
+    }
+
+    @Test
+    public void commitOutOfOrder() throws IOException {
+        File file = mFolder.newFile();
+        try (ResultStore store = ResultStore.create(file, Game.EXAMPLE, 10, 1)) {
+            int first = store.reserve(2);
+            int second = store.reserve(3);
+            int third = store.reserve(1);
+            store.commit(second, 3);
+            assertThat(store.count(), is(0));
+            store.commit(first, 2);
+            assertThat(store.count(), is(5));
+            store.commit(third, 1);
+            assertThat(store.count(), is(6));
+        }
+        try (ResultStore store = ResultStore.open(file)) {
+            assertThat(store.count(), is(6));
+        }
+    }
+
+    @Test
+    public void abandon() throws IOException {
+        File file = mFolder.newFile();
+        try (ResultStore store = ResultStore.create(file, Game.EXAMPLE, 10, 1)) {
+            // The last reservation is reused
+            store.abandon(store.reserve(3), 3);
+            assertThat(store.reserve(1), is(0));
+            store.commit(0, 1);
+
+            // Otherwise the records are void
+            int first = store.reserve(2);
+            int second = store.reserve(1);
+            store.setResult(first, 1, 2, 3, Game.Owner.ENEMY, 4, 5, 6);
+            store.setPlacements(first, Game.Owner.FRIENDLY, 1, 1);
+            store.setResult(second, 1, 2, 3, Game.Owner.FRIENDLY, 4, 5, 6);
+            store.setPlacements(second, Game.Owner.FRIENDLY, 1, 1);
+            store.commit(second, 1);
+            store.abandon(first, 2);
+            assertThat(store.count(), is(4));
+            assertThat(store.isVoid(first), is(true));
+            assertThat(store.isVoid(first + 1), is(true));
+            assertThat(store.winner(first), nullValue());
+            assertThat(store.isVoid(second), is(false));
+            assertThat(store.winRateByUnitMix(Game.Owner.FRIENDLY)[2], is(1f));
+        }
+        try (ResultStore store = ResultStore.open(file)) {
+            assertThat(store.count(), is(4));
+            assertThat(store.isVoid(1), is(true));
+        }
+    }
+
+    @Test
+    public void failedRun() throws IOException {
+        MatchRunner.AgentFactory failing = new MatchRunner.AgentFactory() {
+            @Override
+            public Agent create(Game.GameSpec spec, long seed) {
+                return new Agent() {
+                    @Override
+                    public Game.Placement place(Game game) {
+                        throw new IllegalStateException("Agent failed");
+                    }
+                };
+            }
+        };
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (ResultStore store = ResultStore.create(mFolder.newFile(), Game.EXAMPLE, 100, 8)) {
+            try {
+                new MatchRunner(Game.EXAMPLE, DT, MAX_DURATION, MatchRunner.RANDOM_AGENT, failing)
+                        .run(10, 1, pool, store, 1, 2);
+                fail("Expected the run to fail");
+            } catch (IllegalStateException e) {
+                assertThat(store.count(), is(0));
+            }
+            // Later runs are still recorded
+            new MatchRunner(Game.EXAMPLE, DT, MAX_DURATION, MatchRunner.RANDOM_AGENT, only(1))
+                    .run(5, 2, pool, store, 3, 4);
+            assertThat(store.count(), is(5));
+            for (int i = 0; i < store.count(); ++i) {
+                assertThat(store.isVoid(i), is(false));
+                assertThat(store.agent(i, Game.Owner.FRIENDLY), is(3));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void commitUnreserved() throws IOException {
+        try (ResultStore store = ResultStore.create(mFolder.newFile(), Game.EXAMPLE, 10, 1)) {
+            store.commit(store.reserve(2), 3);
+        }
+    }
+
+    @Test
+    public void wideRecords() throws IOException {
+        // 256 MB of ownership samples per record, so each segment only holds 4 records
+        int samples = ResultStore.MAX_SAMPLES / 4;
+        try (ResultStore store = ResultStore.create(mFolder.newFile(), Game.EXAMPLE, 6, samples)) {
+            int first = store.reserve(6);
+            for (int i = first; i < first + 6; ++i) {
+                store.setOwnership(i, 0, i);
+                store.setOwnership(i, samples - 1, -i);
+            }
+            for (int i = first; i < first + 6; ++i) {
+                assertThat(store.ownership(i, 0), is((long) i));
+                assertThat(store.ownership(i, samples - 1), is((long) -i));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManySamples() throws IOException {
+        ResultStore.create(mFolder.newFile(), Game.EXAMPLE, 1, ResultStore.MAX_SAMPLES + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void full() throws IOException {
+        try (ResultStore store = ResultStore.create(mFolder.newFile(), Game.EXAMPLE, 10, 1)) {
+            store.reserve(8);
+            store.reserve(3);
+        }
+    }
+
+    @Test
+    public void specHash() {
+        assertThat(ResultStore.specHash(Game.EXAMPLE), is(ResultStore.specHash(Game.EXAMPLE)));
+        Game.GameSpec other = new Game.GameSpec(Game.EXAMPLE.lanes, Game.EXAMPLE.length + 1,
+                Game.EXAMPLE.objectives, Game.EXAMPLE.startingBalance, Game.EXAMPLE.income,
+                Game.EXAMPLE.units);
+        assertThat(ResultStore.specHash(other), not(ResultStore.specHash(Game.EXAMPLE)));
+    }
+}
@@ -0,0 +1,181 @@
+package dorr.lanegame.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class SimulationTest {
+    @Test
+    public void getState() throws InterruptedException {
+        Simulation simulation = new Simulation(0.01f, Game.EXAMPLE,
+                new Agent.RandomAgent(Game.EXAMPLE, 1), new Agent.RandomAgent(Game.EXAMPLE, 2));
+        try {
+            float time = simulation.getState().time;
+            Thread.sleep(200);
+            Game state = simulation.getState();
+            assertThat(state.time, greaterThan(time));
+
+            // The simulation never writes to the snapshot we're holding
+            Game copy = new Game(state.spec);
+            copy.copyFrom(state);
+            Thread.sleep(50);
+            assertThat(state.time, is(copy.time));
+            assertThat(state.player(Game.Owner.FRIENDLY).balance,
+                    is(copy.player(Game.Owner.FRIENDLY).balance));
+        } finally {
+            simulation.stop();
+        }
+    }
+
+    @Test
+    public void previousState() throws InterruptedException {
+        Simulation simulation = new Simulation(0.01f, Game.EXAMPLE,
+                new Agent.RandomAgent(Game.EXAMPLE, 1), new Agent.RandomAgent(Game.EXAMPLE, 2));
+        try {
+            Thread.sleep(100);
+            for (int i = 0; i < 10; ++i) {
+                Game state = simulation.getState();
+                Game previous = simulation.getPreviousState();
+                // Exactly one tick apart, however many ticks were published in between
+                assertThat(state.timeMicros - previous.timeMicros,
+                        is((long) simulation.timestepMicros()));
+                float alpha = simulation.alpha();
+                assertThat(alpha, greaterThanOrEqualTo(0f));
+                assertThat(alpha, lessThanOrEqualTo(1f));
+                Thread.sleep(7);
+            }
+        } finally {
+            simulation.stop();
+        }
+    }
+
+    @Test
+    public void stopWaitsForTheLoop() throws InterruptedException {
+        Simulation simulation = new Simulation(0.001f, Game.EXAMPLE,
+                new Agent.RandomAgent(Game.EXAMPLE, 1), new Agent.RandomAgent(Game.EXAMPLE, 2));
+        for (int i = 0; i < 5; ++i) {
+            Thread.sleep(20);
+            simulation.stop();
+            // No tick runs after stop() returns, so restarting never runs two loops at once
+            long ticks = simulation.ticks();
+            Thread.sleep(20);
+            assertThat(simulation.ticks(), is(ticks));
+            simulation.start();
+        }
+        simulation.stop();
+    }
+
+    @Test
+    public void submit() throws InterruptedException {
+        final Simulation simulation = new Simulation(0.01f, Game.EXAMPLE, null, null);
+        try {
+            final AtomicInteger accepted = new AtomicInteger();
+            // Commands from several threads all land, at the start of the next tick
+            Thread[] threads = new Thread[3];
+            for (int i = 0; i < threads.length; ++i) {
+                final int lane = i;
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (simulation.submit(Game.Owner.FRIENDLY, 0, lane)) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                });
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertThat(accepted.get(), is(threads.length));
+            Thread.sleep(100);
+            Game state = simulation.getState();
+            for (int lane = 0; lane < threads.length; ++lane) {
+                assertThat(state.lanes.get(lane).size, is(1));
+            }
+            assertThat(simulation.droppedCommands(), is(0L));
+        } finally {
+            simulation.stop();
+        }
+    }
+
+    /**
+     * An agent which stalls the simulation once.
+     */
+    private static class StallingAgent extends Agent {
+        private final int mStallTick;
+        private final long mStallMillis;
+        private int mTick = 0;
+        StallingAgent(int stallTick, long stallMillis) {
+            mStallTick = stallTick;
+            mStallMillis = stallMillis;
+        }
+        @Override
+        public Game.Placement place(Game game) {
+            if (mTick++ == mStallTick) {
+                try {
+                    Thread.sleep(mStallMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return null;
+        }
+    }
+
+    @Test
+    public void catchUp() throws InterruptedException {
+        final float dt = 0.01f;
+        Simulation simulation = new Simulation(dt, Game.EXAMPLE,
+                new StallingAgent(5, 300), new Agent.RandomAgent(Game.EXAMPLE, 3));
+        try {
+            Thread.sleep(600);
+            float alpha = simulation.alpha();
+            assertThat(alpha, greaterThanOrEqualTo(0f));
+            assertThat(alpha, lessThanOrEqualTo(1f));
+
+            // A 300ms stall is 30 ticks behind, more than we can catch up, so some are skipped
+            assertThat(simulation.maxLagNanos(), greaterThanOrEqualTo(250000000L));
+            assertThat(simulation.skippedTicks(), greaterThan(0L));
+            assertThat(simulation.skippedTicks(), lessThanOrEqualTo(30L));
+            // ... but it keeps to schedule otherwise
+            assertThat(simulation.ticks() + simulation.skippedTicks(), greaterThan(40L));
+        } finally {
+            simulation.stop();
+        }
+    }
+
+    @Test
+    public void metrics() throws InterruptedException {
+        Simulation simulation = new Simulation(0.01f, Game.EXAMPLE,
+                new Agent.RandomAgent(Game.EXAMPLE, 1), new Agent.RandomAgent(Game.EXAMPLE, 2));
+        try {
+            TickMetrics snapshot = new TickMetrics();
+            assertThat(simulation.metrics(snapshot, false), is(false));
+            simulation.setMetrics(new TickMetrics());
+            Thread.sleep(200);
+            assertThat(simulation.metrics(snapshot, true), is(true));
+            long ticks = snapshot.ticks();
+            assertThat(ticks, greaterThan(5L));
+            assertThat(snapshot.histogram(TickMetrics.Phase.AGENTS).count(), is(ticks));
+            assertThat(snapshot.histogram(TickMetrics.Phase.TICK).count(), is(ticks));
+            assertThat(snapshot.histogram(TickMetrics.Phase.PUBLISH).count(), is(ticks));
+            assertThat(snapshot.count(TickMetrics.Counter.PLACED), greaterThan(0L));
+
+            // (reset by the last snapshot)
+            simulation.metrics(snapshot, false);
+            assertThat(snapshot.ticks(), lessThanOrEqualTo(ticks));
+
+            simulation.setMetrics(null);
+            assertThat(simulation.metrics(snapshot, false), is(false));
+        } finally {
+            simulation.stop();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package dorr.lanegame.core;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SpecLoaderTest {
+    private static final String HEADER = "lanes 2\nlength 1000\nstartingBalance 100\nincome 10\n";
+    private static final String UNIT =
+            "unit a height=100 speed=100 health=100 attack=10 minAttack=1 cost=10\n";
+
+    private static void assertInvalid(String text, String message) {
+        try {
+            SpecLoader.parse(text);
+            fail("Expected an invalid spec: " + text);
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString(message));
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        Game.GameSpec spec = SpecLoader.parse(SpecLoader.format(Game.EXAMPLE));
+        assertThat(spec.lanes, is(Game.EXAMPLE.lanes));
+        assertThat(spec.length, is(Game.EXAMPLE.length));
+        assertThat(spec.startingBalance, is(Game.EXAMPLE.startingBalance));
+        assertThat(spec.income, is(Game.EXAMPLE.income));
+        assertThat(spec.objectives.size(), is(Game.EXAMPLE.objectives.size()));
+        assertThat(spec.units.size(), is(Game.EXAMPLE.units.size()));
+        assertThat(SpecLoader.format(spec), is(SpecLoader.format(Game.EXAMPLE)));
+    }
+
+    @Test
+    public void parse() {
+        Game.GameSpec spec = SpecLoader.parse("# A small spec\n" + HEADER
+                + "  objective lane=1 position=500 income=5  # middle\n\n"
+                + UNIT
+                + "unit b height=50 speed=0 health=1 attack=0 minAttack=0 cost=0 range=200"
+                + " swapLanes=true\n");
+        assertThat(spec.lanes, is(2));
+        assertThat(spec.length, is(1000));
+        assertThat(spec.objectives.get(0).lane, is(1));
+        assertThat(spec.objectives.get(0).position, is(500));
+        assertThat(spec.units.get(0).merge, is(false));
+        assertThat(spec.units.get(0).range, is(0));
+        assertThat(spec.units.get(1).name, is("b"));
+        assertThat(spec.units.get(1).range, is(200));
+        assertThat(spec.units.get(1).swapLanes, is(true));
+        assertThat(spec.table.unitIndex("b"), is(1));
+        assertThat(spec.table.height[1], is(50));
+    }
+
+    @Test
+    public void invalid() {
+        assertInvalid(HEADER + UNIT + "bogus 1\n", "line 6: unknown keyword");
+        assertInvalid(HEADER + "lanes 3\n" + UNIT, "line 5: duplicate");
+        assertInvalid(HEADER + "unit a height=x speed=1 health=1 attack=1 minAttack=1 cost=1\n",
+                "line 5: \"height\" should be an integer");
+        assertInvalid(HEADER + "unit a height=1 speed=1 health=1 attack=1 minAttack=1\n",
+                "missing property \"cost\"");
+        assertInvalid(HEADER + "unit a height=1 speed=1 health=1 attack=1 minAttack=1 cost=1 x=1\n",
+                "unknown property \"x\"");
+        assertInvalid(HEADER + UNIT.replace("cost=10", "cost=10 merge=yes"), "true or false");
+        assertInvalid(HEADER + UNIT + UNIT, "Duplicate unit name");
+        assertInvalid(HEADER, "at least one unit");
+        assertInvalid("lanes 2\nlength 1000\nincome 10\n" + UNIT, "Missing \"startingBalance\"");
+        assertInvalid(HEADER.replace("lanes 2", "lanes 0") + UNIT, "line 1: \"lanes\" should be");
+        assertInvalid(HEADER.replace("lanes 2", "lanes -1") + UNIT, "line 1: \"lanes\" should be");
+        assertInvalid(HEADER.replace("lanes 2", "lanes 65536") + UNIT,
+                "line 1: \"lanes\" should be in [1, 65535]");
+        assertInvalid(HEADER.replace("length 1000", "length -1") + UNIT,
+                "line 2: \"length\" should be positive");
+        assertInvalid(HEADER + UNIT + "objective lane=2 position=0 income=0\n", "off the map");
+        assertInvalid(HEADER + UNIT + "objective lane=0 position=1000 income=0\n", "off the map");
+        assertInvalid(HEADER + UNIT.replace("height=100", "height=0"), "height");
+        assertInvalid(HEADER + UNIT.replace("health=100", "health=0"), "positive health");
+        assertInvalid(HEADER + UNIT.replace("speed=100", "speed=-1"), "non-negative");
+    }
+
+    @Test
+    public void badLanes() {
+        for (int lanes : new int[] { -1, Game.GameSpec.MAX_LANES + 1 }) {
+            try {
+                new Game.GameSpec(lanes, 1000, Game.EXAMPLE.objectives.subList(0, 0), 0, 0,
+                        Game.EXAMPLE.units);
+                fail("Expected a bad spec with " + lanes + " lanes");
+            } catch (IllegalArgumentException e) {
+                assertThat(e.getMessage(), containsString("lanes"));
+            }
+        }
+    }
+
+    @Test
+    public void loadedSpecPlaysTheSame() {
+        Game.GameSpec spec = SpecLoader.parse(SpecLoader.format(Game.EXAMPLE));
+        Game expected = new Game(Game.EXAMPLE);
+        Game actual = new Game(spec);
+        Agent expectedFriendly = new Agent.RandomAgent(Game.EXAMPLE, 1);
+        Agent expectedEnemy = new Agent.RandomAgent(Game.EXAMPLE, 2);
+        Agent actualFriendly = new Agent.RandomAgent(spec, 1);
+        Agent actualEnemy = new Agent.RandomAgent(spec, 2);
+        for (int i = 0; i < 5000; ++i) {
+            expected.tickMicros(10000, expectedFriendly.place(expected), expectedEnemy.place(expected));
+            actual.tickMicros(10000, actualFriendly.place(actual), actualEnemy.place(actual));
+        }
+        assertThat(actual.player(Game.Owner.FRIENDLY).balance,
+                is(expected.player(Game.Owner.FRIENDLY).balance));
+        assertThat(actual.player(Game.Owner.ENEMY).balance,
+                is(expected.player(Game.Owner.ENEMY).balance));
+        for (int i = 0; i < spec.lanes; ++i) {
+            Game.Lane a = actual.lanes.get(i);
+            Game.Lane b = expected.lanes.get(i);
+            assertThat(a.size, is(b.size));
+            for (int k = 0; k < b.size; ++k) {
+                assertThat(a.specIndex[k], is(b.specIndex[k]));
+                assertThat(a.position[k], is(b.position[k]));
+                assertThat(a.health[k], is(b.health[k]));
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package dorr.lanegame.core;
+
+import java.lang.management.ManagementFactory;
+
+class TestUtility {
+    /**
+     * @return the total number of bytes allocated by the current thread so far (HotSpot only),
+     * for "doesn't allocate" tests - compare the difference over the code under test with the
+     * difference between two back-to-back calls
+     */
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,148 @@
+package dorr.lanegame.core;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class TickMetricsTest {
+    @Test
+    public void histogram() {
+        TickMetrics.Histogram h = new TickMetrics.Histogram();
+        assertThat(h.percentile(50), is(0L));
+        assertThat(h.min(), is(0L));
+        for (int i = 1; i <= 100; ++i) {
+            h.record(i);
+        }
+        // Small values are exact
+        assertThat(h.count(), is(100L));
+        assertThat(h.min(), is(1L));
+        assertThat(h.max(), is(100L));
+        assertThat(h.mean(), is(50.5));
+        assertThat(h.percentile(0), is(1L));
+        assertThat(h.percentile(50), is(50L));
+        assertThat(h.percentile(99), is(99L));
+        assertThat(h.percentile(100), is(100L));
+
+        // Large values are within 1/64 (the top of their bucket), and clamped to MAX_VALUE
+        h.reset();
+        assertThat(h.count(), is(0L));
+        h.record(1000000);
+        h.record(1000001);
+        h.record(-1);
+        h.record(Long.MAX_VALUE);
+        assertThat(h.percentile(25), is(0L));
+        assertThat(h.percentile(50), greaterThanOrEqualTo(1000001L));
+        assertThat(h.percentile(50), lessThanOrEqualTo(1000000L + 1000000L / 64));
+        assertThat(h.percentile(100), is(TickMetrics.Histogram.MAX_VALUE));
+    }
+
+    @Test
+    public void histogramBuckets() {
+        // Buckets tile the values, in order
+        long next = 0;
+        for (int i = 0; i <= TickMetrics.Histogram.index(TickMetrics.Histogram.MAX_VALUE); ++i) {
+            long lowest = TickMetrics.Histogram.lowestValue(i);
+            long highest = TickMetrics.Histogram.highestValue(i);
+            assertThat(lowest, is(next));
+            assertThat(TickMetrics.Histogram.index(lowest), is(i));
+            assertThat(TickMetrics.Histogram.index(highest), is(i));
+            assertThat((highest - lowest) * 64, lessThanOrEqualTo(Math.max(64, lowest)));
+            next = highest + 1;
+        }
+        assertThat(next - 1, is(TickMetrics.Histogram.MAX_VALUE));
+    }
+
+    private static int units(Game game) {
+        int units = 0;
+        for (Game.Lane lane : game.lanes) {
+            units += lane.units.size();
+        }
+        return units;
+    }
+
+    @Test
+    public void game() {
+        Game game = new Game(Game.EXAMPLE);
+        Game unmetered = new Game(Game.EXAMPLE);
+        Agent friendly = new Agent.RandomAgent(Game.EXAMPLE, 1);
+        Agent enemy = new Agent.RandomAgent(Game.EXAMPLE, 2);
+        TickMetrics metrics = new TickMetrics(4);
+        game.setMetrics(metrics);
+        for (int t = 0; t < 3000; ++t) {
+            Game.Placement f = friendly.place(game);
+            Game.Placement e = enemy.place(game);
+            game.tickMicros(10000, f, e);
+            unmetered.tickMicros(10000, f, e);
+        }
+        assertThat(game.hash(), is(unmetered.hash()));
+
+        assertThat(metrics.ticks(), is(3000L));
+        assertThat(metrics.histogram(TickMetrics.Phase.TICK).count(), is(750L));
+        assertThat(metrics.histogram(TickMetrics.Phase.COMBAT).count(), is(750L));
+        assertThat(metrics.histogram(TickMetrics.Phase.AGENTS).count(), is(0L));
+        assertThat(metrics.histogram(TickMetrics.Phase.TICK).max(),
+                greaterThanOrEqualTo(metrics.histogram(TickMetrics.Phase.MOVEMENT).max()));
+        assertThat(metrics.count(TickMetrics.Counter.PLACED), greaterThan(0L));
+        assertThat(metrics.count(TickMetrics.Counter.KILLED), greaterThan(0L));
+        // Every unit placed is still there, or was removed in one of these ways
+        assertThat(metrics.count(TickMetrics.Counter.PLACED)
+                        - metrics.count(TickMetrics.Counter.KILLED)
+                        - metrics.count(TickMetrics.Counter.MERGED)
+                        - metrics.count(TickMetrics.Counter.REFUNDED),
+                is((long) units(game)));
+
+        TickMetrics copy = new TickMetrics(4);
+        copy.copyFrom(metrics);
+        assertThat(copy.toJson(), is(metrics.toJson()));
+        assertThat(copy.toJson(),
+                startsWith("{\"ticks\": 3000, \"sampleInterval\": 4, \"phases\": {"));
+        assertThat(copy.toJson(), containsString(
+                "\"killed\": " + metrics.count(TickMetrics.Counter.KILLED)));
+        assertThat(copy.toString(), startsWith("ticks 3000 (1 in 4 timed)"));
+        assertThat(copy.toString(), containsString("swap_lanes"));
+
+        // Stop recording
+        game.setMetrics(null);
+        game.tickMicros(10000, friendly.place(game), enemy.place(game));
+        assertThat(metrics.ticks(), is(3000L));
+        metrics.reset();
+        assertThat(metrics.count(TickMetrics.Counter.PLACED), is(0L));
+        assertThat(metrics.histogram(TickMetrics.Phase.TICK).count(), is(0L));
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        Game game = new Game(Game.EXAMPLE);
+        game.setMetrics(new TickMetrics());
+        Game.Placements[] placements = new Game.Placements[Game.EXAMPLE.units.size()];
+        for (int i = 0; i < placements.length; ++i) {
+            placements[i] = new Game.Placements();
+            placements[i].add(i, i % Game.EXAMPLE.lanes);
+        }
+        int t = 0;
+        // Warm up for long enough that the JIT has settled (as the tick path is only partly
+        // compiled after 20000 ticks, when this test is run on its own)
+        for (; t < 50000; ++t) {
+            game.tickMicrosIndexed(10000, placements[t % placements.length],
+                    placements[(7 * t) % placements.length]);
+        }
+        long measurementOverhead = -TestUtility.allocatedBytes() + TestUtility.allocatedBytes();
+        long before = TestUtility.allocatedBytes();
+        for (; t < 100000; ++t) {
+            game.tickMicrosIndexed(10000, placements[t % placements.length],
+                    placements[(7 * t) % placements.length]);
+        }
+        assertThat(TestUtility.allocatedBytes() - before, is(measurementOverhead));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badSampleInterval() {
+        new TickMetrics(0);
+    }
+}
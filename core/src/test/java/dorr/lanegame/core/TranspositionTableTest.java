@@ -0,0 +1,50 @@
+package dorr.lanegame.core;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TranspositionTableTest {
+    @Test
+    public void addAndFind() {
+        TranspositionTable table = new TranspositionTable(100);
+        assertThat(table.capacity(), is(128));
+        assertThat(table.find(42), is(-1));
+        assertThat(table.add(42, 1.0), is(true));
+        assertThat(table.add(42, 0.0), is(true));
+        int slot = table.find(42);
+        assertThat(slot, is(42));
+        assertThat(table.count(slot), is(2));
+        assertThat(table.mean(slot), is(0.5));
+        assertThat(table.find(43), is(-1));
+        assertThat(table.hits(), is(1L));
+        assertThat(table.misses(), is(2L));
+        table.clear();
+        assertThat(table.find(42), is(-1));
+    }
+
+    @Test
+    public void replacement() {
+        TranspositionTable table = new TranspositionTable(16);
+        // 3, 19 & 35 collide
+        table.add(3, 1.0);
+        table.add(19, 0.0); // a single sample is replaced
+        assertThat(table.find(3), is(-1));
+        table.add(19, 0.0);
+        assertThat(table.add(35, 1.0), is(false)); // but a better sampled one isn't...
+        assertThat(table.find(35), is(-1));
+        assertThat(table.count(table.find(19)), is(2));
+
+        table.newGeneration();
+        assertThat(table.find(19), is(3)); // (still found)
+        assertThat(table.add(35, 1.0), is(true)); // ...until it's out of date
+        assertThat(table.find(19), is(-1));
+        assertThat(table.mean(table.find(35)), is(1.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badCapacity() {
+        new TranspositionTable(0);
+    }
+}
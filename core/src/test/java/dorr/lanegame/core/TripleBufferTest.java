@@ -0,0 +1,96 @@
+package dorr.lanegame.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TripleBufferTest {
+    @Test
+    public void singleThreaded() {
+        TripleBuffer<int[]> buffer = new TripleBuffer<>(new int[1], new int[1], new int[1]);
+        assertThat(buffer.acquire(), is(false));
+
+        buffer.back()[0] = 1;
+        buffer.publish();
+        buffer.back()[0] = 2;
+        assertThat(buffer.acquire(), is(true));
+        assertThat(buffer.front()[0], is(1));
+        assertThat(buffer.acquire(), is(false));
+
+        // Only the latest value is seen
+        buffer.publish();
+        buffer.back()[0] = 3;
+        buffer.publish();
+        assertThat(buffer.acquire(), is(true));
+        assertThat(buffer.front()[0], is(3));
+    }
+
+    private static long median(long[] latencies, int count) {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return sorted[count / 2];
+    }
+
+    /**
+     * Hammer the buffer from a writer & reader thread, checking that every value read is complete
+     * and recent (i.e. no torn reads), and that neither thread is held up by the other.
+     */
+    @Test
+    public void stress() throws InterruptedException {
+        final int writes = 200000;
+        final int width = 256;
+        final TripleBuffer<long[]> buffer = new TripleBuffer<>(
+                new long[width], new long[width], new long[width]);
+        final long[] writeLatency = new long[writes];
+        final long[] readLatency = new long[10 * writes];
+        final int[] reads = new int[1];
+        final AtomicReference<String> error = new AtomicReference<>();
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long last = 0;
+                while (last < writes && reads[0] < readLatency.length) {
+                    long t0 = System.nanoTime();
+                    buffer.acquire();
+                    long[] value = buffer.front();
+                    readLatency[reads[0]++] = System.nanoTime() - t0;
+                    for (int i = 1; i < width; ++i) {
+                        if (value[i] != value[0]) {
+                            error.compareAndSet(null, "Torn read: " + value[0] + " vs " + value[i]);
+                        }
+                    }
+                    if (value[0] < last) {
+                        error.compareAndSet(null, "Went backwards: " + value[0] + " after " + last);
+                    }
+                    last = value[0];
+                }
+            }
+        });
+        reader.start();
+        for (int n = 1; n <= writes; ++n) {
+            long t0 = System.nanoTime();
+            Arrays.fill(buffer.back(), n);
+            buffer.publish();
+            writeLatency[n - 1] = System.nanoTime() - t0;
+        }
+        reader.join();
+
+        assertThat(error.get(), nullValue());
+        assertThat(reads[0], greaterThan(0));
+        assertThat(reads[0], lessThanOrEqualTo(readLatency.length));
+        // Neither side ever waits for the other, so a typical publish (including filling the
+        // buffer) or acquire takes well under a microsecond - this bound leaves plenty of room for
+        // slow or busy machines
+        assertThat(median(writeLatency, writes), lessThan(100000L));
+        assertThat(median(readLatency, reads[0]), lessThan(100000L));
+    }
+}
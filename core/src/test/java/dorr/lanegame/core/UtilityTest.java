@@ -55,4 +55,16 @@ public class UtilityTest {
         assertThat((double) mean, Matchers.closeTo(0.5, 0.01));
         assertThat((double) std, Matchers.closeTo(Math.sqrt(1./12), 0.01));
     }
+
+    @Test
+    public void fastRandomInt() {
+        Utility.FastRandom random = new Utility.FastRandom(1234567890L);
+        int[] counts = new int[7];
+        for (int i = 0; i < 7000; ++i) {
+            ++counts[random.nextInt(counts.length)];
+        }
+        for (int count : counts) {
+            assertThat(count, Matchers.both(Matchers.greaterThan(850)).and(Matchers.lessThan(1150)));
+        }
+    }
 }